@@ -22,6 +22,7 @@ import java.util.List;
 
 import com.fridai.json.JsonAbilityObject;
 import com.fridai.util.FridayUtil;
+import com.fridai.util.ZobristHash;
 
 /**
  * When fighting against a hazard, some abilities (for example, EXCHANGE_X2, SORT_3_CARDS, CARDS_DRAW_2)
@@ -39,12 +40,23 @@ public final class AbilityObject {
 	
 	private final boolean copied;
 	
+	/** Zobrist hash of the contents of this object, see ZobristHash */
+	private final long zobristHash;
+	
 	public AbilityObject(Card activeCard, int numberOfCardsDrawn, int stage, List<Card> drawnSortCards, boolean isCopied) {
 		this.activeCard = activeCard;
 		this.numberOfCardsDrawn = numberOfCardsDrawn;
 		this.stage = stage;
 		this.drawnSortCards = drawnSortCards;
 		this.copied = isCopied;
+		
+		long hash = ZobristHash.card(activeCard) ^ ZobristHash.value(stage*4096 + numberOfCardsDrawn*2 + (isCopied ? 1 : 0));
+		if(drawnSortCards != null) {
+			for(int x = 0; x < drawnSortCards.size(); x++) {
+				hash ^= ZobristHash.cardAtPosition(drawnSortCards.get(x), x);
+			}
+		}
+		this.zobristHash = hash;
 	}
 	
 	public Card getActiveCard() {
@@ -71,6 +83,10 @@ public final class AbilityObject {
 		return copied;
 	}
 	
+	public long getZobristHash() {
+		return zobristHash;
+	}
+	
 	public JsonAbilityObject toJson() {
 		JsonAbilityObject result = new JsonAbilityObject();
 		
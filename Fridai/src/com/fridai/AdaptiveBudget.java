@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import com.fridai.util.FridayUtil;
+
+/**
+ * Allocates the search budget of each decision of a single game (see devMain), and counts the game states that 
+ * the searches of the game expanded.
+ * 
+ * When FridayUtil.ADAPTIVE_BUDGET is set, game states that are not used by a decision are saved in a per-game bank.
+ * Each decision is given a sliced budget (see SearchBudget) of FridayUtil.QUEUE_TO_PROCESS game states, plus a loan 
+ * from the bank of up to another QUEUE_TO_PROCESS game states (as many as the bank holds), which is withdrawn from
+ * the bank when the budget is created. The search stops at the end of the first slice at which one root action 
+ * leads the others by more than FridayUtil.ADAPTIVE_BUDGET_MARGIN, so:
+ * 
+ * - a clear decision stops early: the whole loan, and the unused part of its QUEUE_TO_PROCESS, go back to the bank
+ * - a close decision continues past QUEUE_TO_PROCESS into the loan: the unused part of the loan goes back to the bank
+ * 
+ * A search may overshoot its budget slightly (it only checks the budget between game states); the overshoot is 
+ * charged to the bank, which never goes below 0.
+ * 
+ * When the search re-uses the search tree of the previous decision (see FridayUtil.REUSE_SEARCH_TREE), the re-used
+ * game states count against its budget (see SearchBudget.getNodesReused()), so they are not refunded to the bank;
+ * they were already counted by the decision that expanded them, so they are not added to getGameNodes().
+ * 
+ * Otherwise (or when the budget is a deadline, see FridayUtil.NANOS_PER_DECISION), each decision is given the 
+ * default budget, SearchBudget.createDefault().
+ * 
+ * This class is not thread safe.
+ **/
+public final class AdaptiveBudget {
+
+	/** Game states saved by the previous decisions, not yet spent by a close decision */
+	private long bank = 0;
+	
+	private long gameNodes = 0;
+	
+	public AdaptiveBudget() {
+	}
+	
+	/** Return the budget of the next decision, withdrawing its loan from the bank; once the search is complete, 
+	 * pass it to decisionComplete(...) */
+	public SearchBudget createBudget() {
+		if(!isAdaptive()) {
+			return SearchBudget.createDefault();
+		}
+		
+		long base = FridayUtil.QUEUE_TO_PROCESS;
+		
+		long loan = Math.min(bank, base);
+		bank -= loan;
+		
+		long sliceNodes = Math.max(1, base / FridayUtil.ADAPTIVE_BUDGET_SLICES);
+		
+		return SearchBudget.createSliced(base + loan, sliceNodes, FridayUtil.ADAPTIVE_BUDGET_MARGIN);
+	}
+	
+	/** Account for the game states used by the search of a decision: the game states of its budget that it did not 
+	 * use, or re-use, (including those of its loan) are added to the bank. */
+	public void decisionComplete(SearchBudget budget) {
+		long used = budget.getNodesUsed();
+		long reused = budget.getNodesReused();
+		
+		gameNodes += used;
+		
+		if(isAdaptive() && !budget.hasDeadline()) {
+			// getMaxNodes() is QUEUE_TO_PROCESS plus the loan, see createBudget()
+			bank = Math.max(0, bank + budget.getMaxNodes() - used - reused);
+		}
+	}
+	
+	private static boolean isAdaptive() {
+		return FridayUtil.ADAPTIVE_BUDGET && FridayUtil.NANOS_PER_DECISION <= 0;
+	}
+	
+	/** The total number of game states expanded by the searches of the game so far */
+	public long getGameNodes() {
+		return gameNodes;
+	}
+	
+	public long getBank() {
+		return bank;
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+
+/**
+ * Verifies the bank arithmetic of AdaptiveBudget, by simulating the decisions of a game (with QUEUE_TO_PROCESS of 
+ * 1000): each step creates the budget of a decision, checks its size and the bank, and then completes the decision
+ * as if the search had used a given number of game states. The sequence covers a decision that stops early, a 
+ * close decision that spends its loan (in full, and in part), a loan that is capped at QUEUE_TO_PROCESS, a search 
+ * that overshoots its budget, and an overshoot with an empty bank (the bank must never go below 0).
+ * 
+ * It then plays a game with the best-first search and FridayUtil.REUSE_SEARCH_TREE, and checks that the game states 
+ * re-used from the previous decision are charged to the bank, rather than refunded to it, and are not counted as 
+ * game nodes.
+ * 
+ * Usage: AdaptiveBudgetCheck
+ **/
+public class AdaptiveBudgetCheck {
+
+	private static int failures = 0;
+	
+	public static void main(String[] args) throws IOException {
+		
+		FridayUtil.ADAPTIVE_BUDGET = true;
+		FridayUtil.NANOS_PER_DECISION = 0;
+		FridayUtil.QUEUE_TO_PROCESS = 1000;
+		FridayUtil.ADAPTIVE_BUDGET_SLICES = 8;
+		
+		AdaptiveBudget budgets = new AdaptiveBudget();
+		
+		// Each row: game states used by the search; then the expected budget (max nodes), bank while the search runs, 
+		// and bank after the decision is complete
+		long[][] decisions = new long[][] {
+			// Clear decision: stops after the second slice, saving 750
+			{  250,  1000,   0,  750 },
+			// Close decision: spends the whole loan of 750
+			{ 1750,  1750,   0,    0 },
+			// Clear decision, with an empty bank
+			{  125,  1000,   0,  875 },
+			// Close decision: spends 400 of its loan of 875, the other 475 is refunded
+			{ 1400,  1875,   0,  475 },
+			// Clear decision: the whole loan is refunded, plus the 875 that it saved
+			{  125,  1475,   0, 1350 },
+			// The loan is capped at QUEUE_TO_PROCESS; the search overshoots its budget by 3
+			{ 2003,  2000, 350,  347 },
+			// Close decision, which overshoots by more than the bank holds: the bank stops at 0
+			{ 1360,  1347,   0,    0 },
+			// Overshoot with an empty bank
+			{ 1010,  1000,   0,    0 },
+		};
+		
+		long totalUsed = 0;
+		
+		for(int x = 0; x < decisions.length; x++) {
+			long used = decisions[x][0];
+			
+			SearchBudget budget = budgets.createBudget();
+			check(x, "budget", budget.getMaxNodes(), decisions[x][1]);
+			check(x, "bank during the search", budgets.getBank(), decisions[x][2]);
+			
+			budget.addNodesUsed(used);
+			totalUsed += used;
+			
+			budgets.decisionComplete(budget);
+			check(x, "bank after the decision", budgets.getBank(), decisions[x][3]);
+			check(x, "game nodes", budgets.getGameNodes(), totalUsed);
+		}
+		
+		// Without ADAPTIVE_BUDGET, each decision gets the default budget, and the bank is not used
+		FridayUtil.ADAPTIVE_BUDGET = false;
+		budgets = new AdaptiveBudget();
+		SearchBudget budget = budgets.createBudget();
+		check(decisions.length, "default budget", budget.getMaxNodes(), FridayUtil.QUEUE_TO_PROCESS);
+		budget.addNodesUsed(10);
+		budgets.decisionComplete(budget);
+		check(decisions.length, "bank without ADAPTIVE_BUDGET", budgets.getBank(), 0);
+		
+		InputStream fridayGameTxtInputStream = FridayUtil.readFridayGameDataFile();
+		if(fridayGameTxtInputStream == null) { FridayUtil.throwErr("Unable to find Friday data file."); return; }
+		
+		CardReader cr = new CardReader(fridayGameTxtInputStream);
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+		
+		checkReuse();
+		
+		System.out.println(failures == 0 ? "AdaptiveBudget: ok" : "AdaptiveBudget: "+failures+" failures");
+		
+		if(failures > 0) {
+			FridayUtil.throwErr("AdaptiveBudget bank arithmetic failed "+failures+" checks");
+		}
+		
+		System.exit(0);
+	}
+	
+	/** Play a game (from a fixed seed) with search tree reuse, and check the bank after each decision */
+	private static void checkReuse() {
+		FridayUtil.ADAPTIVE_BUDGET = true;
+		FridayUtil.REUSE_SEARCH_TREE = true;
+		FridayUtil.USE_TRANSPOSITION_TABLE = true;
+		FridayUtil.SEARCH_THREADS = 1;
+		FridayUtil.initializeRandomSeed(1, 0);
+		
+		AdaptiveBudget budgets = new AdaptiveBudget();
+		SearchEngine engine = new BestFirstSearchEngine();
+		
+		GameStateContainer gsc = new GameStateContainer(Main.initializeGameState(FridayUtil.ALL_CARDS));
+		
+		long totalUsed = 0;
+		long totalReused = 0;
+		
+		for(int decision = 0; decision < 40 && gsc != null; ) {
+			List<Action> actions = Main.calculateAvailableActions(gsc);
+			if(actions.size() == 0) {
+				break;
+			}
+			
+			Action best = actions.get(0);
+			
+			if(actions.size() > 1) {
+				SearchBudget budget = budgets.createBudget();
+				long bankDuringSearch = budgets.getBank();
+				
+				Map<Action, Integer> scores = engine.evaluateBestAction(gsc, budget);
+				
+				long used = budget.getNodesUsed();
+				long reused = budget.getNodesReused();
+				totalUsed += used;
+				totalReused += reused;
+				
+				budgets.decisionComplete(budget);
+				
+				String name = "reuse (used "+used+", reused "+reused+")";
+				check(decision, name+" bank", budgets.getBank(), 
+						Math.max(0, bankDuringSearch + budget.getMaxNodes() - used - reused));
+				check(decision, name+" game nodes", budgets.getGameNodes(), totalUsed);
+				
+				Integer bestScore = null;
+				for(Map.Entry<Action, Integer> e : scores.entrySet()) {
+					if(bestScore == null || e.getValue() > bestScore) {
+						best = e.getKey();
+						bestScore = e.getValue();
+					}
+				}
+				decision++;
+			}
+			
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(best), gsc);
+			gsc = wgsc.isWin() ? null : wgsc.getGsc();
+		}
+		
+		if(totalReused == 0) {
+			System.out.println("FAIL - the game did not re-use any game states");
+			failures++;
+		}
+	}
+	
+	private static void check(int decision, String name, long actual, long expected) {
+		if(actual != expected) {
+			System.out.println("#"+decision+": FAIL - "+name+": "+actual+", expected "+expected);
+			failures++;
+		}
+	}
+}
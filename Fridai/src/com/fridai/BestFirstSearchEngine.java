@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.Map;
+
+import com.fridai.Main.RetainedSearchTree;
+import com.fridai.actions.Action;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.FridayUtil.ParallelSearchMode;
+
+/**
+ * The best-first search of Main.evaluateBestAction(...): game states are expanded in order of Main.score(...), 
+ * and each action is scored by the best game state that is reachable from it.
+ * 
+ * When FridayUtil.SEARCH_THREADS is greater than 1, the search is split between threads as specified by 
+ * FridayUtil.PARALLEL_SEARCH_MODE. Otherwise, if FridayUtil.REUSE_SEARCH_TREE is set, the searched subtree of
+ * each decision is carried over to the next decision of the game.
+ **/
+public final class BestFirstSearchEngine implements SearchEngine {
+
+	/** The search tree of the previous decision, or null if search trees are not reused */
+	private final RetainedSearchTree retained;
+	
+	public BestFirstSearchEngine() {
+		retained = FridayUtil.REUSE_SEARCH_TREE && FridayUtil.USE_TRANSPOSITION_TABLE ? new RetainedSearchTree() : null;
+	}
+	
+	@Override
+	public Map<Action, Integer> evaluateBestAction(GameStateContainer gsc, SearchBudget budget) {
+		
+		if(FridayUtil.SEARCH_THREADS > 1) {
+			
+			if(FridayUtil.PARALLEL_SEARCH_MODE == ParallelSearchMode.MULTI_QUEUE) {
+				return MultiQueueSearch.evaluateBestAction(gsc, budget, FridayUtil.SEARCH_THREADS);
+				
+			} else if(FridayUtil.PARALLEL_SEARCH_MODE == ParallelSearchMode.HASH_DISTRIBUTED) {
+				return HashDistributedSearch.evaluateBestAction(gsc, budget, FridayUtil.SEARCH_THREADS);
+				
+			} else {
+				return ParallelRootSearch.evaluateBestAction(gsc, budget);
+			}
+		}
+		
+		return Main.evaluateBestAction(gsc, budget, retained);
+	}
+	
+}
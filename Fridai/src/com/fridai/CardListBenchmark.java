@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.ImmutableGrowableListCards;
+import com.fridai.util.ZobristHash;
+
+/**
+ * Compares ImmutableGrowableListCards (which stores one byte physical card id per card, see CardTable) with
+ * CardArrayList, a copy of its previous implementation (which stored a Card reference per card), on:
+ *
+ * - read: summing the fighting values of the cards of each list (as Main.score(...) and the
+ *   calculateRemainingHazardValue(...) methods do)
+ * - add: building each list with mutateAdd(...), with a second child added to each parent list (as sibling
+ *   game states do), so that shared arrays are copied
+ * - memory: the heap that is retained by the lists
+ *
+ * This repo has no JMH dependency, so each workload is timed directly: it is run a number of times to warm up
+ * the JVM, and the best of the remaining runs is reported.
+ *
+ * Usage: CardListBenchmark [lists] [runs] (default: 200000 10)
+ **/
+public class CardListBenchmark {
+
+	public static void main(String[] args) throws IOException {
+
+		int numLists = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		CardReader cr = new CardReader(FridayUtil.readFridayGameDataFile());
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		// The contents of each list: a random subset of the fighting cards, of the sizes of the lists of a game state
+		Random r = new Random(0);
+		List<Card> fightingCards = FridayUtil.ALL_CARDS.getFightingCards();
+		Card[][] contents = new Card[numLists][];
+		for(int x = 0; x < numLists; x++) {
+			List<Card> shuffled = new ArrayList<>(fightingCards);
+			Collections.shuffle(shuffled, r);
+			contents[x] = shuffled.subList(0, r.nextInt(12)+1).toArray(new Card[0]);
+		}
+
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(1);
+
+		long[] bestAdd = new long[] { Long.MAX_VALUE, Long.MAX_VALUE };
+		long[] bestRead = new long[] { Long.MAX_VALUE, Long.MAX_VALUE };
+		long checksum = 0;
+
+		for(int run = 0; run < runs; run++) {
+
+			// Ids
+			long start = System.nanoTime();
+			ImmutableGrowableListCards[] lists = new ImmutableGrowableListCards[numLists];
+			for(int x = 0; x < numLists; x++) {
+				ImmutableGrowableListCards l = new ImmutableGrowableListCards(6);
+				for(Card c : contents[x]) {
+					checksum += l.mutateAdd(c).size(); // sibling
+					l = l.mutateAdd(c);
+				}
+				lists[x] = l;
+			}
+			bestAdd[0] = Math.min(bestAdd[0], System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for(ImmutableGrowableListCards l : lists) {
+				for(int y = 0; y < l.size(); y++) {
+					checksum += l.get(y).getFightingValue();
+				}
+			}
+			bestRead[0] = Math.min(bestRead[0], System.nanoTime() - start);
+
+			// References
+			start = System.nanoTime();
+			CardArrayList[] refLists = new CardArrayList[numLists];
+			for(int x = 0; x < numLists; x++) {
+				CardArrayList l = new CardArrayList(6);
+				for(Card c : contents[x]) {
+					checksum -= l.mutateAdd(c).size(); // sibling
+					l = l.mutateAdd(c);
+				}
+				refLists[x] = l;
+			}
+			bestAdd[1] = Math.min(bestAdd[1], System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for(CardArrayList l : refLists) {
+				for(int y = 0; y < l.size(); y++) {
+					checksum -= l.get(y).getFightingValue();
+				}
+			}
+			bestRead[1] = Math.min(bestRead[1], System.nanoTime() - start);
+		}
+
+		if(checksum != 0) { FridayUtil.throwErr("Lists did not match: "+checksum); }
+
+		// Memory
+		long[] bytesPerList = new long[2];
+		for(int type = 0; type < 2; type++) {
+			long before = usedHeap();
+			Object[] lists = new Object[numLists];
+			for(int x = 0; x < numLists; x++) {
+				if(type == 0) {
+					ImmutableGrowableListCards l = new ImmutableGrowableListCards(6);
+					for(Card c : contents[x]) { l = l.mutateAdd(c); }
+					lists[x] = l;
+				} else {
+					CardArrayList l = new CardArrayList(6);
+					for(Card c : contents[x]) { l = l.mutateAdd(c); }
+					lists[x] = l;
+				}
+			}
+			bytesPerList[type] = (usedHeap() - before) / numLists;
+			if(lists[numLists-1] == null) { return; } // Keep the lists reachable until they are measured
+		}
+
+		String[] names = new String[] { "byte ids:", "Card[]:  " };
+		for(int type = 0; type < 2; type++) {
+			System.out.println(names[type]+"  add: "+nf.format(bestAdd[type] / (double)numLists)+" ns/list,  read: "
+					+nf.format(bestRead[type] / (double)numLists)+" ns/list,  memory: "+bytesPerList[type]+" bytes/list");
+		}
+
+		System.exit(0);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int x = 0; x < 3; x++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** The previous implementation of ImmutableGrowableListCards (the mutateAdd(...) and get(...) methods), which
+	 * stored a Card reference per card. */
+	private static final class CardArrayList {
+
+		private final Card[] cards;
+
+		private final int endPos;
+
+		private final long zobristHash;
+
+		CardArrayList(int maxSize) {
+			this(new Card[maxSize], -1, 0);
+		}
+
+		private CardArrayList(Card[] cards, int endPos, long zobristHash) {
+			this.cards = cards;
+			this.endPos = endPos;
+			this.zobristHash = zobristHash;
+		}
+
+		Card get(int x) {
+			if(x > endPos) {
+				throw new ArrayIndexOutOfBoundsException();
+			}
+			return cards[x];
+		}
+
+		int size() {
+			return endPos+1;
+		}
+
+		CardArrayList mutateAdd(Card c) {
+			Card[] newCards = cards;
+
+			if(cards.length == endPos+2) {
+				newCards = new Card[cards.length*2];
+				System.arraycopy(cards, 0, newCards, 0, cards.length);
+
+			} else if(cards[endPos+1] != null) {
+				newCards = new Card[cards.length];
+				System.arraycopy(cards, 0, newCards, 0, cards.length);
+			}
+
+			newCards[(endPos+1)] = c;
+
+			return new CardArrayList(newCards, endPos+1, zobristHash ^ ZobristHash.cardAtPosition(c, endPos+1));
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.fridai.Card.Difficulty;
+import com.fridai.GameState.State;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.ListCards;
+
+/**
+ * Creates determinizations of a game state: copies of the game state in which the order of each stack that the 
+ * player cannot see has been replaced by a random order. Searching a determinization, rather than the game state 
+ * itself, prevents the search from 'seeing' the true order of the cards that will be drawn.
+ * 
+ * The hidden stacks are the fighting card stack, the hazard card stack and the aging card stack. The aging card 
+ * stack is only shuffled within each difficulty, as the normal aging cards are always above the difficult ones.
+ * 
+ * Face-up cards keep their position: in SELECT_A_HAZARD_CARD, the top two hazard cards are the ones that the player 
+ * is choosing between (see GameState.selectAHazardCard_selectFromTwoHazardCards(...), which selects by position), so 
+ * only the hazard cards below them are shuffled. Otherwise the root actions of each determinization would refer 
+ * to a different pair of cards.
+ * 
+ * Note: a stack is shuffled in full, so a known order of some of its cards (for example, cards that were put 
+ * back on top of the fighting card stack by SORT_3_CARDS) is not preserved.
+ **/
+public final class Determinization {
+
+	private Determinization() {
+	}
+
+	/** Return a copy of gsc with the hidden stacks shuffled by 'random' (and not by FridayUtil.UNIVERAL_RANDOM). */
+	public static GameStateContainer sample(GameStateContainer gsc, Random random) {
+		
+		if(gsc.isGameState()) {
+			GameState gs = gsc.getGameState();
+			
+			GameState result = new GameState(gs.getState(), shuffle(gs.getYourFightingCards(), random), 
+					shuffle(gs.getHazardCards(), getNumberOfFaceUpHazardCards(gs), random), gs.getDiscardHazards(), 
+					shuffleAgingCards(gs.getSlowGameState(), random), gs.getActiveHazardCard(), gs.getDiscardFightCards(), 
+					gs.getLhsOrRhsFightingCardUsed(), gs.getLifePoints(), gs.getLhsFightCards(), gs.getRhsFightCards(),
+					gs.getLhsOrRhsFightingCardDoubled(), gs.getAbilityObject(), gs, null);
+			
+			if(FridayUtil.RUNTIME_CHECK) {
+				for(int x = 0; x < getNumberOfFaceUpHazardCards(gs); x++) {
+					if(result.getHazardCards().get(x) != gs.getHazardCards().get(x)) {
+						FridayUtil.throwErr("Determinization moved a face-up hazard card: "+gs.getHazardCards().get(x));
+					}
+				}
+			}
+			
+			return new GameStateContainer(result);
+			
+		} else {
+			PirateGameState pgs = gsc.getPirateGameState();
+			
+			PirateGameState result = new PirateGameState(pgs.getState(), shuffle(pgs.getYourFightingCards(), random), 
+					shuffleAgingCards(pgs.getSlowGameState(), random), pgs.getActivePirateCard(), pgs.getPirateCardInfo(), 
+					pgs.getDiscardFightCards(), pgs.getLhsOrRhsFightingCardUsed(), pgs.getLifePoints(), 
+					pgs.getLhsFightCards(), pgs.getRhsFightCards(), pgs.getLhsOrRhsFightingCardDoubled(), 
+					pgs.getAbilityObject(), pgs, null);
+			
+			return new GameStateContainer(result);
+		}
+	}
+	
+	/** The number of cards at the top of the hazard stack that the player can see */
+	static int getNumberOfFaceUpHazardCards(GameState gs) {
+		if(gs.getState() == State.SELECT_A_HAZARD_CARD) {
+			return Math.min(2, gs.getHazardCards().size());
+		}
+		return 0;
+	}
+	
+	private static ListCards shuffle(ListCards cards, Random random) {
+		return shuffle(cards, 0, random);
+	}
+	
+	/** Shuffle all but the top 'numFaceUp' cards, which keep their position. */
+	private static ListCards shuffle(ListCards cards, int numFaceUp, Random random) {
+		List<Card> list = cards.asList();
+		Collections.shuffle(list.subList(numFaceUp, list.size()), random);
+		return new ListCards(list.toArray(new Card[list.size()]), 0);
+	}
+	
+	private static SlowGameState shuffleAgingCards(SlowGameState sgs, Random random) {
+		
+		List<Card> agingCards = sgs.getAgingCards().asList();
+		
+		// Shuffle the cards of each difficulty, and put them back into the positions of that difficulty
+		for(Difficulty difficulty : Difficulty.values()) {
+			List<Integer> positions = new ArrayList<>();
+			List<Card> cards = new ArrayList<>();
+			for(int x = 0; x < agingCards.size(); x++) {
+				if(agingCards.get(x).getDifficulty() == difficulty) {
+					positions.add(x);
+					cards.add(agingCards.get(x));
+				}
+			}
+			
+			Collections.shuffle(cards, random);
+			
+			for(int x = 0; x < positions.size(); x++) {
+				agingCards.set(positions.get(x), cards.get(x));
+			}
+		}
+		
+		return new SlowGameState(new ListCards(agingCards.toArray(new Card[agingCards.size()]), 0), sgs.getGameLevel(),
+				sgs.getActivePirates(), sgs.getActiveRoundCards(), sgs.getPhaseNumber(), sgs.getWildCardPirate());
+	}
+}
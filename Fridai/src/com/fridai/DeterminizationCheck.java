@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.fridai.GameState.State;
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.actions.SelectFromTwoHazardCardsAction;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.ListCards;
+
+/**
+ * Verifies that Determinization.sample(...) only shuffles the cards that the player cannot see: for each 
+ * SELECT_A_HAZARD_CARD game state (generated by playing random actions from fixed seeds), a number of seeded
+ * determinizations are created, and each must:
+ * 
+ * - keep the two face-up hazard cards at the top of the hazard stack, in the same order
+ * - contain the same hazard cards below them (in any order)
+ * - select the same hazard card for SelectFromTwoHazardCardsAction ZERO and ONE as the game state itself
+ * 
+ * The hidden hazard cards must also actually be shuffled, in at least one determinization of each game state.
+ * 
+ * Usage: DeterminizationCheck [game states] [samples per game state] (default: 20 20)
+ **/
+public class DeterminizationCheck {
+
+	public static void main(String[] args) throws IOException {
+
+		int numPositions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int samples = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		
+		InputStream fridayGameTxtInputStream = FridayUtil.readFridayGameDataFile();
+		if(fridayGameTxtInputStream == null) { FridayUtil.throwErr("Unable to find Friday data file."); return; }
+
+		CardReader cr = new CardReader(fridayGameTxtInputStream);
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		List<GameState> positions = createPositions(numPositions);
+		
+		int failures = 0;
+		
+		for(int x = 0; x < positions.size(); x++) {
+			GameState gs = positions.get(x);
+			
+			int[] hazards = asIds(gs.getHazardCards());
+			int[] hiddenHazards = sortedHidden(hazards);
+			
+			Card selectedZero = select(gs, SelectFromTwoHazardCardsAction.INSTANCE_ZERO);
+			Card selectedOne = select(gs, SelectFromTwoHazardCardsAction.INSTANCE_ONE);
+			
+			Random random = new Random(x);
+			boolean shuffled = false;
+			String failure = null;
+			
+			for(int y = 0; y < samples && failure == null; y++) {
+				GameState sample = Determinization.sample(new GameStateContainer(gs), random).getGameState();
+				
+				int[] sampleHazards = asIds(sample.getHazardCards());
+				
+				if(sampleHazards[0] != hazards[0] || sampleHazards[1] != hazards[1]) {
+					failure = "face-up hazard cards moved";
+					
+				} else if(!Arrays.equals(sortedHidden(sampleHazards), hiddenHazards)) {
+					failure = "hidden hazard cards changed";
+					
+				} else if(select(sample, SelectFromTwoHazardCardsAction.INSTANCE_ZERO) != selectedZero
+						|| select(sample, SelectFromTwoHazardCardsAction.INSTANCE_ONE) != selectedOne) {
+					failure = "a different hazard card was selected";
+				}
+				
+				shuffled |= !Arrays.equals(sampleHazards, hazards);
+			}
+			
+			if(failure == null && !shuffled && hiddenHazards.length > 2) {
+				failure = "hidden hazard cards were not shuffled";
+			}
+
+			System.out.println("#"+x+": "+(failure == null ? "ok" : "FAIL - "+failure)+"  hazard cards: "+hazards.length);
+			
+			if(failure != null) {
+				failures++;
+			}
+		}
+		
+		System.out.println();
+		System.out.println("game states: "+positions.size()+"  failures: "+failures);
+		
+		if(positions.size() < numPositions) {
+			FridayUtil.throwErr("Only "+positions.size()+" game states were generated");
+		}
+		
+		if(failures > 0) {
+			FridayUtil.throwErr("Determinization changed the face-up hazard cards of "+failures+" game states");
+		}
+		
+		System.exit(0);
+	}
+	
+	/** The active hazard card after the given choice */
+	private static Card select(GameState gs, SelectFromTwoHazardCardsAction action) {
+		WinnableGameStateContainer result = Main.doAction(Main.convertActionToResponse(action), new GameStateContainer(gs));
+		return result.getGsc().getGameState().getActiveHazardCard();
+	}
+	
+	private static int[] asIds(ListCards cards) {
+		int[] result = new int[cards.size()];
+		for(int x = 0; x < result.length; x++) {
+			result[x] = cards.get(x).getPhysicalCardId();
+		}
+		return result;
+	}
+	
+	/** The ids below the two face-up cards, sorted */
+	private static int[] sortedHidden(int[] ids) {
+		int[] result = Arrays.copyOfRange(ids, 2, ids.length);
+		Arrays.sort(result);
+		return result;
+	}
+	
+	/** Play random actions from fixed seeds, to find SELECT_A_HAZARD_CARD game states with two hazard cards to 
+	 * choose between. */
+	private static List<GameState> createPositions(int numPositions) {
+
+		List<GameState> result = new ArrayList<>();
+
+		for(long seed = 0; result.size() < numPositions && seed < 100000; seed++) {
+
+			FridayUtil.initializeRandomSeed(seed, 0);
+			Random walk = new Random(seed);
+
+			GameStateContainer gsc = new GameStateContainer(Main.initializeGameState(FridayUtil.ALL_CARDS));
+			
+			// Skip ahead by a random number of actions, so that game states are taken from different points in the game
+			int skip = walk.nextInt(60);
+
+			for(int step = 0; step < 400 && gsc != null; step++) {
+				
+				if(step >= skip && gsc.isGameState() && gsc.getGameState().getState() == State.SELECT_A_HAZARD_CARD
+						&& Determinization.getNumberOfFaceUpHazardCards(gsc.getGameState()) == 2) {
+					result.add(gsc.getGameState());
+					break;
+				}
+				
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				if(actions.size() == 0) {
+					gsc = null;
+					break;
+				}
+
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(actions.get(walk.nextInt(actions.size()))), gsc);
+				gsc = wgsc.isWin() ? null : wgsc.getGsc();
+			}
+		}
+
+		return result;
+	}
+}
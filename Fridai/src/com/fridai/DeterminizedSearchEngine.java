@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.RandomAdvanced;
+
+/**
+ * An information set search: rather than searching the game state itself (which would let the search see the true
+ * order of the hidden stacks), search FridayUtil.DETERMINIZATION_SAMPLES determinizations of it (see Determinization),
+ * and score each action by its average score over the determinizations.
+ * 
+ * Each determinization is created and searched (by the best-first search) with its own RandomAdvanced, seeded from
+ * the caller's random number generator and the index of the determinization, so the search does not consume any 
+ * numbers from the game's random number stream, and the scores are deterministic for a given seed (when the search
+ * budget is a number of game states). The determinizations are searched in parallel when FridayUtil.SEARCH_THREADS 
+ * is greater than 1, and each receives an even share of the search budget.
+ **/
+public final class DeterminizedSearchEngine implements SearchEngine {
+
+	public DeterminizedSearchEngine() {
+	}
+	
+	@Override
+	public Map<Action, Integer> evaluateBestAction(GameStateContainer gsc, SearchBudget budget) {
+		
+		final int samples = FridayUtil.DETERMINIZATION_SAMPLES;
+		
+		List<Action> rootActions = Main.calculateAvailableActions(gsc);
+		
+		SearchBudget sampleBudget = budget.split(samples);
+		
+		RandomAdvanced random = FridayUtil.UNIVERAL_RANDOM.get();
+		long baseSeed = random.getRandomAdvancedSeed() * 1000003L + random.getNumbersGenerated();
+		
+		List<Callable<int[]>> tasks = new ArrayList<>();
+		for(int x = 0; x < samples; x++) {
+			final long seed = baseSeed * 31L + x;
+			tasks.add( () -> {
+				return search(gsc, rootActions, sampleBudget, seed);
+			});
+		}
+		
+		List<int[]> sampleScores = new ArrayList<>();
+		if(FridayUtil.SEARCH_THREADS > 1) {
+			for(Future<int[]> future : ParallelRootSearch.getPool(FridayUtil.SEARCH_THREADS).invokeAll(tasks)) {
+				try {
+					sampleScores.add(future.get());
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		} else {
+			for(Callable<int[]> task : tasks) {
+				try {
+					sampleScores.add(task.call());
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		
+		Map<Action, Integer> result = new HashMap<>();
+		for(int x = 0; x < rootActions.size(); x++) {
+			long total = 0;
+			for(int[] scores : sampleScores) {
+				total += scores[x];
+			}
+			result.put(rootActions.get(x), (int)(total / samples));
+		}
+		
+		return result;
+	}
+	
+	/** Search a single determinization of gsc, with the thread's random number generator temporarily replaced by 
+	 * one with the given seed, and return the score of each of the root actions (in the same order). */
+	private static int[] search(GameStateContainer gsc, List<Action> rootActions, SearchBudget budget, long seed) {
+		
+		RandomAdvanced previous = FridayUtil.UNIVERAL_RANDOM.get();
+		RandomAdvanced random = new RandomAdvanced(seed, 0);
+		FridayUtil.UNIVERAL_RANDOM.set(random);
+		
+		try {
+			GameStateContainer sample = Determinization.sample(gsc, random);
+			
+			// The available actions only depend on the visible cards, so they are the same (and in the same order)
+			// for every determinization.
+			List<Action> sampleActions = Main.calculateAvailableActions(sample);
+			
+			if(FridayUtil.RUNTIME_CHECK) {
+				if(sampleActions.size() != rootActions.size()) {
+					FridayUtil.throwErr("Determinization has different actions: "+sampleActions.size()+" "+rootActions.size());
+				}
+				for(int x = 0; x < sampleActions.size(); x++) {
+					if(!sampleActions.get(x).prettyPrint().equals(rootActions.get(x).prettyPrint())) {
+						FridayUtil.throwErr("Determinization has different actions: "+sampleActions.get(x).prettyPrint());
+					}
+				}
+			}
+			
+			List<WinnableGameStateContainer> rootResults = new ArrayList<>();
+			for(Action action : sampleActions) {
+				rootResults.add(Main.doAction(Main.convertActionToResponse(action), sample));
+			}
+			
+			return Main.searchRoots(rootResults, budget, null);
+			
+		} finally {
+			FridayUtil.UNIVERAL_RANDOM.set(previous);
+		}
+	}
+}
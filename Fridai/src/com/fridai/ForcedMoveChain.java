@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.List;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.FridayUtil;
+
+/**
+ * Applies the forced moves that follow a game state (see FridayUtil.CHAIN_FORCED_MOVES): while the game state has
+ * only a single action, that action is applied, so that a search only needs to hold the game state at the end of
+ * the chain. Each forced move counts as one game state against the search budget, as it would if the search had
+ * expanded it as a separate game state.
+ *
+ * A chain ends at a game state with more than one action (or none), at a win, after MAX_LENGTH forced moves (the
+ * search then expands the remaining forced moves as usual), or when it returns to one of its own game states: the
+ * game states of such a cycle have no other actions, so the chain would never end.
+ *
+ * An instance is reused for each chain of a search, and is not thread safe.
+ **/
+final class ForcedMoveChain {
+
+	/** The maximum number of forced moves in a chain */
+	static final int MAX_LENGTH = 64;
+
+	private final boolean enabled;
+
+	private final boolean partialOrderReduction;
+
+	/** The fingerprints (see GameStateContainer.getZobristHash()) of the game states of the chain, including the
+	 * game state that it started from */
+	private final long[] fingerprints = new long[MAX_LENGTH+1];
+
+	private GameStateContainer end;
+
+	private List<Action> actions;
+
+	private int orderFloor;
+
+	private int length;
+
+	private boolean cycle;
+
+	private boolean win;
+
+	/** A chain of the search flags in FridayUtil (CHAIN_FORCED_MOVES and PARTIAL_ORDER_REDUCTION) */
+	ForcedMoveChain() {
+		this.enabled = FridayUtil.CHAIN_FORCED_MOVES;
+		this.partialOrderReduction = FridayUtil.PARTIAL_ORDER_REDUCTION;
+	}
+
+	/** Apply the forced moves that follow 'start', whose order floor (see PartialOrderReduction) is 'orderFloor', and
+	 * whose actions (as returned by Main.getSearchActions(...)) are 'actions'. The chain is empty if chaining is
+	 * disabled. */
+	void apply(GameStateContainer start, List<Action> actions, int orderFloor) {
+		this.end = start;
+		this.actions = actions;
+		this.orderFloor = orderFloor;
+		this.length = 0;
+		this.cycle = false;
+		this.win = false;
+
+		if(!enabled) { return; }
+
+		fingerprints[0] = start.getZobristHash();
+
+		while(this.actions != null && this.actions.size() == 1 && length < MAX_LENGTH) {
+			Action forced = this.actions.get(0);
+			WinnableGameStateContainer result = Main.doAction(Main.convertActionToResponse(forced), end);
+			length++;
+
+			if(result.isWin()) {
+				this.actions = null;
+				win = true;
+				return;
+			}
+
+			end = result.getGsc();
+
+			final long fingerprint = end.getZobristHash();
+			for(int x = 0; x < length; x++) {
+				if(fingerprints[x] == fingerprint) {
+					cycle = true;
+				}
+			}
+			fingerprints[length] = fingerprint;
+
+			this.orderFloor = partialOrderReduction ? PartialOrderReduction.getOrderFloor(forced) : PartialOrderReduction.NO_FLOOR;
+
+			if(cycle) { return; }
+
+			this.actions = Main.getSearchActions(end, this.orderFloor);
+		}
+	}
+
+	/** The game state at the end of the chain (the start of the chain, if it is empty); if the chain ends in a win,
+	 * the game state before the winning move. */
+	GameStateContainer getEnd() {
+		return end;
+	}
+
+	/** The actions of the game state at the end of the chain, or null if it has none (or the chain ends in a win).
+	 * Not meaningful if the chain is a cycle. */
+	List<Action> getActions() {
+		return actions;
+	}
+
+	/** The order floor of the game state at the end of the chain */
+	int getOrderFloor() {
+		return orderFloor;
+	}
+
+	/** The number of forced moves applied */
+	int getLength() {
+		return length;
+	}
+
+	/** Whether the chain returned to one of its own game states */
+	boolean isCycle() {
+		return cycle;
+	}
+
+	/** Whether the last forced move of the chain won the game */
+	boolean isWin() {
+		return win;
+	}
+
+}
@@ -34,7 +34,9 @@ import com.fridai.ui.ansi.AnsiCards;
 import com.fridai.util.FridayUtil;
 import com.fridai.util.ImmutableGrowableListCards;
 import com.fridai.util.ListCards;
-import com.fridai.util.MapCards;
+import com.fridai.util.CardSet;
+import com.fridai.util.CardTable;
+import com.fridai.util.ZobristHash;
 
 /** An encapsulation of the full state of the game after each player action (each 'round'), except when
  * the player is fighting pirates -- the pirate phase is handled by PirateGameState. 
@@ -66,10 +68,10 @@ public final class GameState {
 	private final ImmutableGrowableListCards discardFightCards;
 
 	// Nullable
-	private final MapCards/*<Integer - physical card id, Boolean>*/ lhsOrRhsFightingCardUsed;
+	private final CardSet lhsOrRhsFightingCardUsed;
 	
 	// Nullable
-	private final MapCards/*<Integer - physical card id, Boolean>*/ lhsOrRhsFightingCardDoubled;
+	private final CardSet lhsOrRhsFightingCardDoubled;
 	
 	// ------------------------
 	
@@ -82,12 +84,25 @@ public final class GameState {
 	// Nullable
 	private final AbilityObject abilityObject;
 	
+	/** Zobrist hash of the full game state, combined from the incrementally maintained hashes of its fields. */
+	private final long zobristHash;
+	
+	/** The sum of the fighting values of the LHS and RHS cards (doubled cards count twice); like the Zobrist hash, this 
+	 * is combined from the incrementally maintained sums of the lists, see calculateRemainingHazardValue() */
+	private final int fightingValueTotal;
+	
+	/** The highest (not doubled) fighting value of the LHS and RHS cards (Integer.MIN_VALUE if there are none) */
+	private final int highestFightingValue;
+	
+	/** The number of LHS and RHS cards with the PHASE_MINUS_1 ability */
+	private final int numberOfPhaseMinusCards;
+	
 	// ------------------------
 		
 	public GameState(State state, ListCards yourFightingCards, ListCards hazardCards, ImmutableGrowableListCards discardHazards, 
 			SlowGameState slowGameState, Card activeHazardCard, ImmutableGrowableListCards discardFightCards, 
-			MapCards lhsOrRhsFightingCardUsed, int lifePoints, ImmutableGrowableListCards lhs_fightCards,
-			ImmutableGrowableListCards rhs_fightCards, MapCards lhsOrRhsFightingCardDoubled, 
+			CardSet lhsOrRhsFightingCardUsed, int lifePoints, ImmutableGrowableListCards lhs_fightCards,
+			ImmutableGrowableListCards rhs_fightCards, CardSet lhsOrRhsFightingCardDoubled, 
 			AbilityObject abilityObject, GameState previousGameState, RuntimeObject newRuntimeObject) {
 		
 		this.state = state;
@@ -137,6 +152,14 @@ public final class GameState {
 		
 		this.abilityObject = abilityObject;
 		
+		this.zobristHash = calculateZobristHash();
+		
+		this.fightingValueTotal = lhs_fightCards.getFightingValueSum() + rhs_fightCards.getFightingValueSum()
+				+ calculateDoubledFightingValue(lhs_fightCards, rhs_fightCards, lhsOrRhsFightingCardDoubled);
+		this.highestFightingValue = Math.max(lhs_fightCards.getHighestFightingValue(), rhs_fightCards.getHighestFightingValue());
+		this.numberOfPhaseMinusCards = Long.bitCount((lhs_fightCards.getCardBits() | rhs_fightCards.getCardBits()) 
+				& CardTable.getCardBits(Ability.PHASE_MINUS_1));
+		
 		if(FridayUtil.RUNTIME_CHECK) {
 			
 			if(newRuntimeObject != null) {
@@ -147,6 +170,50 @@ public final class GameState {
 		}
 	}
 	
+	/** The fighting value that is added by the doubled cards: the sum of the fighting values of the doubled cards 
+	 * that are on the LHS or RHS. This only visits the doubled cards, of which there are few (usually none). */
+	static int calculateDoubledFightingValue(ImmutableGrowableListCards lhs_fightCards, 
+			ImmutableGrowableListCards rhs_fightCards, CardSet lhsOrRhsFightingCardDoubled) {
+		
+		if(lhsOrRhsFightingCardDoubled == null) { return 0; }
+		
+		final int[] fightingValues = CardTable.getFightingValues();
+		int result = 0;
+		
+		long doubledBits = lhsOrRhsFightingCardDoubled.getBits() & (lhs_fightCards.getCardBits() | rhs_fightCards.getCardBits());
+		for(long remaining = doubledBits; remaining != 0; remaining &= remaining-1) {
+			result += fightingValues[Long.numberOfTrailingZeros(remaining)];
+		}
+		
+		return result;
+	}
+	
+	/** Combine the hashes that are maintained by each of the fields; this is O(1) in the number of cards. */
+	private long calculateZobristHash() {
+		long hash = ZobristHash.zone(ZobristHash.value(state.ordinal()), ZobristHash.ZONE_STATE);
+		hash ^= ZobristHash.zone(ZobristHash.value(lifePoints), ZobristHash.ZONE_LIFE_POINTS);
+		hash ^= ZobristHash.zone(yourFightingCards.getZobristHash(), ZobristHash.ZONE_YOUR_FIGHTING_CARDS);
+		hash ^= ZobristHash.zone(hazardCards.getZobristHash(), ZobristHash.ZONE_HAZARD_CARDS);
+		hash ^= ZobristHash.zone(discardHazards.getZobristHash(), ZobristHash.ZONE_DISCARD_HAZARDS);
+		hash ^= ZobristHash.zone(discardFightCards.getZobristHash(), ZobristHash.ZONE_DISCARD_FIGHT_CARDS);
+		hash ^= ZobristHash.zone(lhs_fightCards.getZobristHash(), ZobristHash.ZONE_LHS_FIGHT_CARDS);
+		hash ^= ZobristHash.zone(rhs_fightCards.getZobristHash(), ZobristHash.ZONE_RHS_FIGHT_CARDS);
+		hash ^= ZobristHash.zone(ZobristHash.card(activeHazardCard), ZobristHash.ZONE_ACTIVE_CARD);
+		hash ^= ZobristHash.zone(slowGameState.getZobristHash(), ZobristHash.ZONE_SLOW_GAME_STATE);
+		
+		if(lhsOrRhsFightingCardUsed != null) {
+			hash ^= ZobristHash.zone(lhsOrRhsFightingCardUsed.getZobristHash(), ZobristHash.ZONE_USED);
+		}
+		if(lhsOrRhsFightingCardDoubled != null) {
+			hash ^= ZobristHash.zone(lhsOrRhsFightingCardDoubled.getZobristHash(), ZobristHash.ZONE_DOUBLED);
+		}
+		if(abilityObject != null) {
+			hash ^= ZobristHash.zone(abilityObject.getZobristHash(), ZobristHash.ZONE_ABILITY_OBJECT);
+		}
+		
+		return hash;
+	}
+	
 	
 	public static void validate(GameState gs, RuntimeObject newRuntimeObject, GameState previousGameState) {
 		if(!FridayUtil.RUNTIME_CHECK) { return; }
@@ -398,8 +465,8 @@ public final class GameState {
 		
 		ListCards newHazardCards = hazardCards.mutateRemoveFromFront(2);
 		
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards();
-		MapCards newLhsOrRhsFightingCardDoubled = new MapCards();
+		CardSet newLhsOrRhsFightingCardUsed = CardSet.EMPTY;
+		CardSet newLhsOrRhsFightingCardDoubled = CardSet.EMPTY;
 
 		if(newActiveHazardCard == null) {
 			FridayUtil.throwErr("nahc ic null");
@@ -429,8 +496,8 @@ public final class GameState {
 
 			newState = State.DRAW_FREE_CARDS;
 			newActiveHazardCard = card;
-			MapCards newLhsOrRhsFightingCardUsed = new MapCards();
-			MapCards newLhsOrRhsFightingCardDoubled = new MapCards();
+			CardSet newLhsOrRhsFightingCardUsed = CardSet.EMPTY;
+			CardSet newLhsOrRhsFightingCardDoubled = CardSet.EMPTY;
 
 			ListCards newHazardCards = hazardCards.mutateRemoveFromFront(1);
 
@@ -540,48 +607,79 @@ public final class GameState {
 	
 	@SuppressWarnings("unused")
 	public int calculateRemainingHazardValue() {
+		
+		// The fighting value total, highest card, and PHASE_MINUS_1 count are maintained by the constructor, and the 
+		// ability summaries of the lists answer HIGHEST_CARD_IS_0, so this does not look at each card.
+		
+		int numberOfPhaseMinusCards = this.numberOfPhaseMinusCards;
+		if(slowGameState.getActiveRoundCards() != null) {
+			numberOfPhaseMinusCards += slowGameState.getActiveRoundCards().size();
+		}
 
-		int numberOfPhaseMinusCards = 0;
-		int currHazardVal = 0;
-
-		MapCards isDoubled = lhsOrRhsFightingCardDoubled;
-
-		boolean containsHighestFightCardEquals0 = false;
-		Card highestCard = null;
-
-		for (Card c : getLhsFightCards().getAsList()) {
-			if(c.getAbility() == Ability.PHASE_MINUS_1) { numberOfPhaseMinusCards++; }
-			if(c.getAbility() == Ability.HIGHEST_CARD_IS_0) { containsHighestFightCardEquals0 = true; }
-
-			int fightingVal = c.getFightingValue();
+		int phaseNumber = Math.min(2, getPhaseNumber() + numberOfPhaseMinusCards);
 
-			if(isDoubled.get(c.getPhysicalCardId()) == Boolean.TRUE) {
-				fightingVal *= 2;
-			}
+		if (FridayUtil.RUNTIME_CHECK && phaseNumber != calculateEffectivePhase()) {
+			FridayUtil.throwErr("Phase calcuation methods should produce the same value.");
+		}
 
-			if(highestCard == null || c.getFightingValue() > highestCard.getFightingValue()) {
-				highestCard = c;
-			}
+		int currHazardVal = CardTable.getHazardValuesByPhase()[getActiveHazardCard().getPhysicalCardId()][phaseNumber] 
+				- fightingValueTotal;
 
-			currHazardVal -= fightingVal;
+		boolean containsHighestFightCardEquals0 = lhs_fightCards.containsAbility(Ability.HIGHEST_CARD_IS_0)
+				|| rhs_fightCards.containsAbility(Ability.HIGHEST_CARD_IS_0);
+		
+		if(containsHighestFightCardEquals0 && highestFightingValue > 0) {
+			currHazardVal += highestFightingValue; // Yes this is correct as '+='
+		}
+		
+		if(FridayUtil.RUNTIME_CHECK && currHazardVal != calculateRemainingHazardValue_full()) {
+			FridayUtil.throwErr("Remaining hazard value does not match the full calculation: "+currHazardVal);
 		}
 
-		for(Card c : getRhsFightCards().getAsList()) {
-			if(c.getAbility() == Ability.PHASE_MINUS_1) { numberOfPhaseMinusCards++; }
-			if(c.getAbility() == Ability.HIGHEST_CARD_IS_0) { containsHighestFightCardEquals0 = true; }
+		return currHazardVal;
+	}
+	
+	private static final byte PHASE_MINUS_1_ORDINAL = CardTable.ordinal(Ability.PHASE_MINUS_1);
+	
+	private static final byte HIGHEST_CARD_IS_0_ORDINAL = CardTable.ordinal(Ability.HIGHEST_CARD_IS_0);
+	
+	/** Calculate the remaining hazard value from each of the LHS and RHS cards; used to verify 
+	 * calculateRemainingHazardValue() when RUNTIME_CHECK is enabled. */
+	private int calculateRemainingHazardValue_full() {
 
-			int fightingVal = c.getFightingValue();
+		int numberOfPhaseMinusCards = 0;
+		int currHazardVal = 0;
 
-			if(isDoubled.get(c.getPhysicalCardId()) == Boolean.TRUE) {
-				fightingVal *= 2;
-			}
+		final long isDoubled = lhsOrRhsFightingCardDoubled.getBits();
+		final int[] fightingValues = CardTable.getFightingValues();
+		final byte[] abilityOrdinals = CardTable.getAbilityOrdinals();
 
-			currHazardVal -= fightingVal;
+		boolean containsHighestFightCardEquals0 = false;
+		
+		// The highest (not doubled) fighting value of the LHS and RHS cards
+		int highestFightingValue = Integer.MIN_VALUE;
 
-			if(highestCard == null || c.getFightingValue() > highestCard.getFightingValue()) {
-				highestCard = c;
+		for(int side = 0; side < 2; side++) {
+			ImmutableGrowableListCards list = side == 0 ? lhs_fightCards : rhs_fightCards;
+			
+			for(int x = 0; x < list.size(); x++) {
+				int id = list.getPhysicalCardId(x);
+				
+				if(abilityOrdinals[id] == PHASE_MINUS_1_ORDINAL) { numberOfPhaseMinusCards++; }
+				if(abilityOrdinals[id] == HIGHEST_CARD_IS_0_ORDINAL) { containsHighestFightCardEquals0 = true; }
+	
+				int fightingVal = fightingValues[id];
+	
+				if(CardSet.contains(isDoubled, id)) {
+					fightingVal *= 2;
+				}
+	
+				if(fightingValues[id] > highestFightingValue) {
+					highestFightingValue = fightingValues[id];
+				}
+	
+				currHazardVal -= fightingVal;
 			}
-
 		}
 
 		if(slowGameState.getActiveRoundCards() != null) {
@@ -590,14 +688,10 @@ public final class GameState {
 
 		int phaseNumber = Math.min(2, getPhaseNumber() + numberOfPhaseMinusCards);
 
-		if (FridayUtil.RUNTIME_CHECK && phaseNumber != calculateEffectivePhase()) {
-			FridayUtil.throwErr("Phase calcuation methods should produce the same value.");
-		}
+		currHazardVal += CardTable.getHazardValuesByPhase()[getActiveHazardCard().getPhysicalCardId()][phaseNumber];
 
-		currHazardVal += getActiveHazardCard().getHazardValues()[phaseNumber];
-
-		if(containsHighestFightCardEquals0 && highestCard != null && highestCard.getFightingValue() > 0) {
-			currHazardVal += highestCard.getFightingValue(); // Yes this is correct as '+='
+		if(containsHighestFightCardEquals0 && highestFightingValue > 0) {
+			currHazardVal += highestFightingValue; // Yes this is correct as '+='
 		}
 
 		return currHazardVal;
@@ -710,10 +804,9 @@ public final class GameState {
 		// We only flag a card as used if:
 		// - the exchange is not part of a copy action
 		// - the exchange is not in the second step from a copy action
-		MapCards newLhsOrRhsFightCardsUsed = gs.lhsOrRhsFightingCardUsed;
+		CardSet newLhsOrRhsFightCardsUsed = gs.lhsOrRhsFightingCardUsed;
 		if(!isCopiedAbility && (newAbilityObject == null || !newAbilityObject.isCopied())) {
-			newLhsOrRhsFightCardsUsed = new MapCards(gs.lhsOrRhsFightingCardUsed);
-			newLhsOrRhsFightCardsUsed.put((Integer) c.getPhysicalCardId(), true);
+			newLhsOrRhsFightCardsUsed = gs.lhsOrRhsFightingCardUsed.with(c.getPhysicalCardId());
 		}
 
 		if(c.getAbility() == Ability.CARDS_DRAW_1) {
@@ -978,10 +1071,9 @@ public final class GameState {
 		
 		if(ucawta.getCard().getAbility() == Ability.DESTROY_1x) {
 			
-			MapCards newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
+			CardSet newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
 			if(!isCopiedAction) {
-				newLhsOrRhsFightingCardUsed = new MapCards(lhsOrRhsFightingCardUsed);
-				newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
+				newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 			}
 			
 			Card cardToDestroy = ucawta.getTarget();
@@ -1019,19 +1111,16 @@ public final class GameState {
 			
 		} else if(ucawta.getCard().getAbility() == Ability.DOUBLE_1x) {
 
-			MapCards newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
+			CardSet newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
 			
 			if(!isCopiedAction) {
-				newLhsOrRhsFightingCardUsed = new MapCards(lhsOrRhsFightingCardUsed);
-				newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
-				
+				newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 			}
 			
 			// Flag the target card as doubled
 			Card targetCard = ucawta.getTarget();
-			if(FridayUtil.RUNTIME_CHECK && lhsOrRhsFightingCardDoubled.get(targetCard.getPhysicalCardId()) == true) { FridayUtil.throwErr("Target card is already doubled: "+targetCard); }				
-			MapCards newLhsOrRhsFightingCardDoubled = new MapCards(lhsOrRhsFightingCardDoubled);
-			newLhsOrRhsFightingCardDoubled.put(targetCard.getPhysicalCardId(), true);
+			if(FridayUtil.RUNTIME_CHECK && lhsOrRhsFightingCardDoubled.contains(targetCard.getPhysicalCardId())) { FridayUtil.throwErr("Target card is already doubled: "+targetCard); }				
+			CardSet newLhsOrRhsFightingCardDoubled = lhsOrRhsFightingCardDoubled.with(targetCard.getPhysicalCardId());
 			
 			if(OUT_ENABLED) {
 				out("Card "+AnsiCards.asFightingCard(targetCard, this)+" has been doubled.", this);
@@ -1061,13 +1150,13 @@ public final class GameState {
 		// Flag the exchange as used, but only if:
 		// - the exchange is not part of a copy action
 		// - the exchange is not in the second step from a copy action
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards(gs.lhsOrRhsFightingCardUsed);
+		CardSet newLhsOrRhsFightingCardUsed = gs.lhsOrRhsFightingCardUsed;
 		if(!isCopiedAction && (gs.getAbilityObject() == null || !gs.getAbilityObject().isCopied())) {
-			newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
+			newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 		}
 		
 		// Mark the target card as unused, in case we happen to pull it again after a reshuffle
-		newLhsOrRhsFightingCardUsed.put(ucawta.getTarget().getPhysicalCardId(), false);
+		newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.without(ucawta.getTarget().getPhysicalCardId());
 		
 		Card cardToDiscard = ucawta.getTarget();
 		
@@ -1132,10 +1221,10 @@ public final class GameState {
 		}
 
 		// Mark BTP card as used
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards(gs.lhsOrRhsFightingCardUsed);
+		CardSet newLhsOrRhsFightingCardUsed = gs.lhsOrRhsFightingCardUsed;
 		
 		if(!isCopiedAction) {
-			newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
+			newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 		}
 
 		if(OUT_ENABLED) {
@@ -1143,7 +1232,7 @@ public final class GameState {
 		}
 		
 		// The card we are burying gets marked as unused, as if we see it again it will be from a redraw.
-		newLhsOrRhsFightingCardUsed.put(cardToBury.getPhysicalCardId(), false);
+		newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.without(cardToBury.getPhysicalCardId());
 		
 		// If a BTP is replacing a card on the LHS, then draw a replacement to the LHS
 		if(isCardToBuryOnLhs) {
@@ -1194,8 +1283,7 @@ public final class GameState {
 
 	public GameState sacrificeLifeToDraw_flagCopyAbilityAsUsed(UseCopyAbilityAction action) {
 		
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards(lhsOrRhsFightingCardUsed);
-		newLhsOrRhsFightingCardUsed.put( action.getCard().getPhysicalCardId(), true);
+		CardSet newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed.with(action.getCard().getPhysicalCardId());
 		
 		GameState result = new GameState(this.state, yourFightingCards, hazardCards, discardHazards, 
 				slowGameState, activeHazardCard, discardFightCards, newLhsOrRhsFightingCardUsed, 
@@ -1270,12 +1358,7 @@ public final class GameState {
 			FridayUtil.throwErr("Fighting card used map is null");
 		}
 		
-		Boolean val = lhsOrRhsFightingCardUsed.get(c.getPhysicalCardId());
-		if(val == null || val == false) {
-			return false;
-		}
-		
-		return true;
+		return lhsOrRhsFightingCardUsed.contains(c.getPhysicalCardId());
 	}
 	
 	public boolean isFightingCardDoubled(Card c) {
@@ -1283,13 +1366,7 @@ public final class GameState {
 			FridayUtil.throwErr("Fighting card doubled map is null");
 		}
 		
-		Boolean val = lhsOrRhsFightingCardDoubled.get(c.getPhysicalCardId());
-		if(val == null || val == false) {
-			return false;
-		}
-		
-		return true;
-		
+		return lhsOrRhsFightingCardDoubled.contains(c.getPhysicalCardId());
 	}
 	
 	// ------------------------------------------------------------------------
@@ -1408,12 +1485,16 @@ public final class GameState {
 		return discardFightCards;
 	}
 	
-	public final MapCards getLhsOrRhsFightingCardDoubled() {
+	public final CardSet getLhsOrRhsFightingCardDoubled() {
 		return lhsOrRhsFightingCardDoubled;
 	}
 	
-	public final MapCards getLhsOrRhsFightingCardUsed() {
+	public final CardSet getLhsOrRhsFightingCardUsed() {
 		return lhsOrRhsFightingCardUsed;
 	}
+	
+	public final long getZobristHash() {
+		return zobristHash;
+	}
 
 }
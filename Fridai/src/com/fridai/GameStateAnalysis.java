@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fridai.actions.Action;
+import com.fridai.json.JsonGameStatePersistence;
+import com.fridai.json.JsonPersistenceUtil;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.FridayUtil.PackedStateStorage;
+
+/**
+ * Runs a single (large) best-first search on a saved game state (eg the 'fail-state.json' written by devMain), and
+ * reports the score of each action, along with the search throughput and the garbage collection time.
+ *
+ * The game states of the search are packed (see FridayUtil.PACKED_SEARCH_STATES) and held in the given storage:
+ * with DIRECT or MAPPED, the game states are outside of the Java heap, so the heap (and the GC cost) of the search
+ * is mostly that of the search tree and the frontier queue, which are primitive arrays. OBJECTS disables packing,
+ * for comparison.
+ *
+ * Usage: GameStateAnalysis (JSON game state file) [nodes] [HEAP|DIRECT|MAPPED|OBJECTS] [scratch directory]
+ * (default: 1000000 HEAP)
+ **/
+public class GameStateAnalysis {
+
+	public static void main(String[] args) throws IOException {
+
+		if(args.length == 0) {
+			System.out.println("Usage: GameStateAnalysis (JSON game state file) [nodes] [HEAP|DIRECT|MAPPED|OBJECTS] [scratch directory]");
+			return;
+		}
+
+		File stateFile = new File(args[0]);
+		long nodes = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+		String storage = args.length > 2 ? args[2] : PackedStateStorage.HEAP.name();
+
+		if(storage.equals("OBJECTS")) {
+			FridayUtil.PACKED_SEARCH_STATES = false;
+		} else {
+			FridayUtil.PACKED_SEARCH_STATES = true;
+			FridayUtil.PACKED_STATE_STORAGE = PackedStateStorage.valueOf(storage);
+		}
+
+		if(args.length > 3) {
+			FridayUtil.PACKED_STATE_DIRECTORY = new File(args[3]);
+		}
+
+		InputStream fridayGameTxtInputStream = FridayUtil.readFridayGameDataFile();
+		if(fridayGameTxtInputStream == null) { FridayUtil.throwErr("Unable to find Friday data file."); return; }
+
+		CardReader cr = new CardReader(fridayGameTxtInputStream);
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		FridayUtil.initializeRandomSeed(0, 0);
+		JsonGameStatePersistence jgsp = new ObjectMapper().readValue(stateFile, JsonGameStatePersistence.class);
+		GameStateContainer gsc = JsonPersistenceUtil.fromJson(jgsp);
+
+		long gcCountBefore = getGcCount();
+		long gcMillisBefore = getGcMillis();
+
+		SearchBudget budget = new SearchBudget(nodes, false, 0);
+		long start = System.nanoTime();
+		Map<Action, Integer> scores = Main.evaluateBestAction(gsc, budget);
+		long nanos = System.nanoTime() - start;
+
+		NumberFormat nf = NumberFormat.getInstance();
+
+		List<Map.Entry<Action, Integer>> sorted = new ArrayList<>(scores.entrySet());
+		sorted.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+		for(Map.Entry<Action, Integer> e : sorted) {
+			System.out.println(nf.format(e.getValue())+"  "+e.getKey().prettyPrint());
+		}
+
+		System.out.println();
+		System.out.println("Storage: "+storage+"  game states: "+nf.format(budget.getNodesUsed())+"  time: "
+				+nf.format(nanos/1000000)+" ms  ("+nf.format((long)(budget.getNodesUsed() / (nanos / 1000000000d)))+" per second)");
+		System.out.println("GC: "+nf.format(getGcCount() - gcCountBefore)+" collections, "
+				+nf.format(getGcMillis() - gcMillisBefore)+" ms");
+
+		System.exit(0);
+	}
+
+	private static long getGcCount() {
+		long result = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			result += Math.max(0, gc.getCollectionCount());
+		}
+		return result;
+	}
+
+	private static long getGcMillis() {
+		long result = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			result += Math.max(0, gc.getCollectionTime());
+		}
+		return result;
+	}
+
+}
@@ -54,4 +54,8 @@ public final class GameStateContainer {
 		return gameState;
 	}
 	
+	public final long getZobristHash() {
+		return isGameState ? gameState.getZobristHash() : pirateGameState.getZobristHash();
+	}
+	
 }
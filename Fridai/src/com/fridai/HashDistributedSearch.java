@@ -0,0 +1,454 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.BucketPriorityQueue;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.RandomAdvanced;
+import com.fridai.util.SpscMailbox;
+import com.fridai.util.TranspositionTable;
+
+/**
+ * A hash distributed (HDA*-style) parallel version of Main.evaluateBestAction(...): each game state is owned by
+ * one thread, chosen by the game state's hash. Each thread has its own frontier and its own duplicate detection
+ * tables, and only ever expands the game states that it owns; a child game state that is owned by another thread
+ * is sent to that thread through a lock-free single producer/single consumer mailbox (one for each pair of
+ * threads). Since all copies of a game state are sent to the same thread, duplicates are eliminated across
+ * threads without any shared table or lock.
+ *
+ * No search tree is kept: a root action's score is the highest score of the leaves (unexpanded game states,
+ * game states without actions, and wins) below it, which each thread tracks per root action as it goes. For this
+ * reason, duplicates are detected per root action (a game state that is reachable from two root actions is
+ * searched under both), whereas the sequential search shares them between root actions. As each root action's table
+ * holds every game state seen below it, a game state that repeats one of its ancestors (a cycle of actions) is also
+ * a duplicate.
+ * 
+ * As in the sequential search, the actions of a game state are generated by Main.getSearchActions(...) (so each
+ * message carries the order floor of its game state, see PartialOrderReduction), and forced moves are applied by a 
+ * ForcedMoveChain of each thread, with each forced move counting against the budget. A duplicate that arrives with a
+ * lower order floor than the copy that was seen (and so may take activations that the copy skipped) is searched 
+ * again. The game state at the end of a forced move chain is not checked for duplicates, as it is owned by the 
+ * thread of its hash, not by the thread that applied the chain.
+ *
+ * The results are not deterministic, as the order in which game states are expanded depends on thread scheduling.
+ **/
+public final class HashDistributedSearch {
+
+	/** Must be a power of 2 */
+	private static final int MAILBOX_CAPACITY = 1024;
+
+	private HashDistributedSearch() {
+	}
+
+	/** Score all of the available actions of gsParam, using 'threads' threads. */
+	public static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam, SearchBudget budget, int threads) {
+
+		List<Action> rootActions = Main.calculateAvailableActions(gsParam);
+
+		SpscMailbox[][] mailboxes = new SpscMailbox[threads][threads];
+		for(int from = 0; from < threads; from++) {
+			for(int to = 0; to < threads; to++) {
+				if(from != to) {
+					mailboxes[from][to] = new SpscMailbox(MAILBOX_CAPACITY);
+				}
+			}
+		}
+
+		final AtomicLong pending = new AtomicLong(0);
+		final AtomicLong processed = new AtomicLong(0);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+
+		final Worker[] workers = new Worker[threads];
+		for(int x = 0; x < threads; x++) {
+			workers[x] = new Worker(x, rootActions.size(), workers, mailboxes, pending, processed, stop, budget);
+		}
+
+		int[] rootScores = new int[rootActions.size()];
+
+		// The root game states are added to the frontier of their owner before the threads are started
+		for(int x = 0; x < rootActions.size(); x++) {
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(rootActions.get(x)), gsParam);
+
+			if(wgsc.isWin()) {
+				rootScores[x] = Integer.MAX_VALUE;
+			} else {
+				GameStateContainer ngs = wgsc.getGsc();
+				rootScores[x] = Main.score(ngs);
+				pending.incrementAndGet();
+				workers[owner(ngs, threads)].handle(x, rootScores[x], PartialOrderReduction.NO_FLOOR, ngs);
+			}
+		}
+
+		RandomAdvanced random = FridayUtil.UNIVERAL_RANDOM.get();
+		long baseSeed = random.getRandomAdvancedSeed() * 1000003L + random.getNumbersGenerated();
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for(int x = 0; x < threads; x++) {
+			final Worker worker = workers[x];
+			final long seed = baseSeed * 31L + x;
+			tasks.add( () -> {
+				worker.work(seed);
+				return null;
+			});
+		}
+
+		for(Future<Void> future : ParallelRootSearch.getPool(threads).invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		budget.addNodesUsed(processed.get());
+
+		// The threads have stopped: the game states that remain in the frontiers and mailboxes are leaves.
+		int[] leafScores = new int[rootActions.size()];
+		Arrays.fill(leafScores, Integer.MIN_VALUE);
+		for(Worker worker : workers) {
+			worker.collectLeafScores(leafScores);
+		}
+
+		Map<Action, Integer> result = new HashMap<>();
+		for(int x = 0; x < rootActions.size(); x++) {
+			// A root action without leaves is one whose game states only lead back to game states already seen
+			int score = rootScores[x] == Integer.MAX_VALUE || leafScores[x] == Integer.MIN_VALUE ? rootScores[x] : leafScores[x];
+			result.put(rootActions.get(x), score);
+		}
+
+		return result;
+	}
+
+	/** The thread that owns a game state */
+	private static int owner(GameStateContainer gsc, int threads) {
+		return (int)Math.floorMod(gsc.getZobristHash(), (long)threads);
+	}
+
+	/** The frontier, duplicate detection tables and leaf scores of one thread. */
+	private static final class Worker implements SpscMailbox.MessageHandler {
+
+		private final int id;
+
+		private final Worker[] workers;
+
+		/** mailboxes[from][to] */
+		private final SpscMailbox[][] mailboxes;
+
+		/** The number of game states that are in a frontier, in a mailbox (or outbox), or being expanded; once
+		 * this is 0, no thread has any work left, nor can any thread be given any more. */
+		private final AtomicLong pending;
+
+		private final AtomicLong processed;
+
+		private final AtomicBoolean stop;
+
+		private final SearchBudget budget;
+
+		/** Entries are slots of the frontier arrays, below */
+		private final BucketPriorityQueue frontier = new BucketPriorityQueue();
+
+		private GameStateContainer[] frontierStates = new GameStateContainer[1024];
+
+		private int[] frontierRoots = new int[1024];
+
+		private int[] frontierScores = new int[1024];
+
+		private int[] frontierOrderFloors = new int[1024];
+
+		private int frontierSlotsUsed = 0;
+
+		/** Slots of the frontier arrays that have been expanded, and may be reused */
+		private int[] freeSlots = new int[1024];
+
+		private int freeSlotsSize = 0;
+
+		/** The game states seen by this thread, by root action (null if USE_TRANSPOSITION_TABLE is false). The value
+		 * of each entry is the lowest order floor that the game state has been seen with, relative to NO_FLOOR (so 
+		 * that it is never NOT_FOUND). */
+		private final TranspositionTable[] seen;
+
+
+		/** Applies the forced moves of the game states that this thread expands */
+		private final ForcedMoveChain chain = new ForcedMoveChain();
+
+		/** The highest leaf score seen by this thread, by root action */
+		private final int[] leafScores;
+
+		/** Messages that did not fit in the mailbox of the destination thread, by destination */
+		private final List<ArrayDeque<Message>> outboxes = new ArrayList<>();
+
+		private final SpscMailbox.MessageHandler leafCollector;
+
+		Worker(int id, int numRoots, Worker[] workers, SpscMailbox[][] mailboxes, AtomicLong pending,
+				AtomicLong processed, AtomicBoolean stop, SearchBudget budget) {
+			this.id = id;
+			this.workers = workers;
+			this.mailboxes = mailboxes;
+			this.pending = pending;
+			this.processed = processed;
+			this.stop = stop;
+			this.budget = budget;
+
+			this.seen = FridayUtil.USE_TRANSPOSITION_TABLE ? new TranspositionTable[numRoots] : null;
+
+			this.leafScores = new int[numRoots];
+			Arrays.fill(leafScores, Integer.MIN_VALUE);
+
+			for(int x = 0; x < mailboxes.length; x++) {
+				outboxes.add(new ArrayDeque<>());
+			}
+
+			this.leafCollector = (root, score, orderFloor, gsc) -> { addLeafScore(root, score); };
+		}
+
+		/** Runs on the pool thread of this worker: expand game states until the budget is exhausted, or until no
+		 * thread has any work left. */
+		void work(long seed) {
+
+			RandomAdvanced previous = FridayUtil.UNIVERAL_RANDOM.get();
+			FridayUtil.UNIVERAL_RANDOM.set(new RandomAdvanced(seed, 0));
+
+			try {
+				while(!stop.get()) {
+
+					int received = 0;
+					for(int from = 0; from < mailboxes.length; from++) {
+						if(from != id) {
+							received += mailboxes[from][id].drainTo(this);
+						}
+					}
+
+					flushOutboxes();
+
+					if(frontier.size() > 0) {
+						int expanded = expand(frontier.poll());
+
+						long now = processed.addAndGet(expanded);
+						if(budget.isExhausted(now - expanded, now)) {
+							stop.set(true);
+						}
+
+					} else if(pending.get() == 0) {
+						break;
+
+					} else if(received == 0) {
+						Thread.yield();
+					}
+				}
+
+			} finally {
+				FridayUtil.UNIVERAL_RANDOM.set(previous);
+			}
+		}
+
+		/** A game state has arrived at its owner: add it to the frontier, unless it is a duplicate. */
+		@Override
+		public void handle(int root, int score, int orderFloor, GameStateContainer gsc) {
+
+			if(seen != null) {
+				TranspositionTable table = seen[root];
+				if(table == null) {
+					table = new TranspositionTable(1024);
+					seen[root] = table;
+				}
+
+				int value = orderFloor - PartialOrderReduction.NO_FLOOR;
+				int existing = table.putIfAbsent(gsc, value);
+				if(existing != TranspositionTable.NOT_FOUND) {
+					if(existing <= value) {
+						pending.decrementAndGet();
+						return;
+					}
+					
+					// The copy that was seen skips activations that this one may not, see Main.isTransposition(...)
+					table.remove(gsc);
+					table.putIfAbsent(gsc, value);
+				}
+			}
+
+			int slot;
+			if(freeSlotsSize > 0) {
+				slot = freeSlots[--freeSlotsSize];
+			} else {
+				slot = frontierSlotsUsed++;
+				if(slot == frontierStates.length) {
+					frontierStates = Arrays.copyOf(frontierStates, slot*2);
+					frontierRoots = Arrays.copyOf(frontierRoots, slot*2);
+					frontierScores = Arrays.copyOf(frontierScores, slot*2);
+					frontierOrderFloors = Arrays.copyOf(frontierOrderFloors, slot*2);
+				}
+			}
+
+			frontierStates[slot] = gsc;
+			frontierRoots[slot] = root;
+			frontierScores[slot] = score;
+			frontierOrderFloors[slot] = orderFloor;
+
+			frontier.offer(slot, score);
+		}
+
+		/** Expand the game state of the frontier slot, and return the number of game states that count against the
+		 * budget: the game state, plus the forced moves that were applied to it. */
+		private int expand(int slot) {
+
+			GameStateContainer currGs = frontierStates[slot];
+			int root = frontierRoots[slot];
+			int currScore = frontierScores[slot];
+			int currOrderFloor = frontierOrderFloors[slot];
+
+			frontierStates[slot] = null;
+			if(freeSlotsSize == freeSlots.length) {
+				freeSlots = Arrays.copyOf(freeSlots, freeSlotsSize*2);
+			}
+			freeSlots[freeSlotsSize++] = slot;
+
+			List<Action> actions = Main.getSearchActions(currGs, currOrderFloor);
+
+			// As in Main.searchRoots(...), the forced moves that follow the game state are applied here, and the score
+			// of the game state is that of the end of the chain
+			chain.apply(currGs, actions, currOrderFloor);
+			
+			if(chain.isWin()) {
+				addLeafScore(root, Integer.MAX_VALUE);
+				actions = null;
+			} else {
+				currGs = chain.getEnd();
+				actions = chain.isCycle() ? null : chain.getActions();
+				if(chain.getLength() > 0) {
+					currScore = Main.score(currGs);
+				}
+				
+				if(actions == null) {
+					addLeafScore(root, currScore);
+				}
+			}
+
+			if(actions != null) {
+				for(Action action : actions) {
+					WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), currGs);
+
+					if(wgsc.isWin()) {
+						addLeafScore(root, Integer.MAX_VALUE);
+					} else {
+						GameStateContainer newGameState = wgsc.getGsc();
+						int orderFloor = FridayUtil.PARTIAL_ORDER_REDUCTION ? PartialOrderReduction.getOrderFloor(action) 
+								: PartialOrderReduction.NO_FLOOR;
+						pending.incrementAndGet();
+						send(owner(newGameState, workers.length), root, Main.score(newGameState), orderFloor, newGameState);
+					}
+				}
+			}
+
+			// Only after the children have been counted, so that 'pending' does not reach 0 in between
+			pending.decrementAndGet();
+			
+			return 1 + chain.getLength();
+		}
+
+		private void send(int to, int root, int score, int orderFloor, GameStateContainer gsc) {
+			if(to == id) {
+				handle(root, score, orderFloor, gsc);
+				return;
+			}
+
+			// Messages to a thread must be delivered in order, so once one is in the outbox, the rest follow it
+			ArrayDeque<Message> outbox = outboxes.get(to);
+			if(!outbox.isEmpty() || !mailboxes[id][to].offer(root, score, orderFloor, gsc)) {
+				outbox.add(new Message(root, score, orderFloor, gsc));
+			}
+		}
+
+		private void flushOutboxes() {
+			for(int to = 0; to < outboxes.size(); to++) {
+				ArrayDeque<Message> outbox = outboxes.get(to);
+
+				while(!outbox.isEmpty()) {
+					Message m = outbox.peek();
+					if(!mailboxes[id][to].offer(m.root, m.score, m.orderFloor, m.gsc)) {
+						break;
+					}
+					outbox.poll();
+				}
+			}
+		}
+
+		private void addLeafScore(int root, int score) {
+			if(score > leafScores[root]) {
+				leafScores[root] = score;
+			}
+		}
+
+		/** Called (on the calling thread) once all of the threads have stopped: the game states that were not
+		 * expanded are leaves, so add their scores, and merge this thread's leaf scores into 'result'. */
+		void collectLeafScores(int[] result) {
+
+			while(frontier.size() > 0) {
+				int slot = frontier.poll();
+				addLeafScore(frontierRoots[slot], frontierScores[slot]);
+				frontierStates[slot] = null;
+			}
+
+			for(ArrayDeque<Message> outbox : outboxes) {
+				for(Message m : outbox) {
+					addLeafScore(m.root, m.score);
+				}
+				outbox.clear();
+			}
+
+			for(int from = 0; from < mailboxes.length; from++) {
+				if(from != id) {
+					mailboxes[from][id].drainTo(leafCollector);
+				}
+			}
+
+			for(int x = 0; x < result.length; x++) {
+				result[x] = Math.max(result[x], leafScores[x]);
+			}
+		}
+	}
+
+	/** A game state that is waiting to be sent to its owner */
+	private static final class Message {
+		final int root;
+		final int score;
+		final int orderFloor;
+		final GameStateContainer gsc;
+
+		Message(int root, int score, int orderFloor, GameStateContainer gsc) {
+			this.root = root;
+			this.score = score;
+			this.orderFloor = orderFloor;
+			this.gsc = gsc;
+		}
+	}
+
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.json.JsonGameStatePersistence;
+import com.fridai.json.JsonPersistenceUtil;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.RandomAdvanced;
+
+/**
+ * Cross-checks and benchmarks the iterative deepening depth-first search (IterativeDeepeningSearchEngine, using 
+ * SearchPath):
+ * 
+ * - Cross-check: for each game state, and for each depth limit up to CHECK_DEPTH, the action scores of the iterative
+ *   deepening engine must equal those of a straightforward recursive search that calls Main.doAction(...) on the 
+ *   immutable game states directly. So that both searches draw the same cards regardless of the order in which they
+ *   search, the random number generator is replaced by one that never reorders a shuffled list.
+ *   
+ * - Benchmark: game states expanded per second on a single thread, by the iterative deepening engine and by the 
+ *   best-first search (Main.evaluateBestAction(...)), with the same node budget. Both create a new game state per
+ *   action, so this compares the search strategies (a depth-first path, versus a tree with a frontier and a 
+ *   transposition table), and not the cost of the game state transitions.
+ *   
+ * - Transition cost: Main.doAction(...) calls per second, and the bytes allocated per call (where the JVM can measure
+ *   them), on the actions of the same game states. There is no mutable (make/unmake) game state to compare against:
+ *   this is the cost that both searches pay per action.
+ * 
+ * The game states are read from the JSON files given as arguments (eg the 'fail-state.json' written by devMain), 
+ * or, without arguments, generated by playing random actions from fixed seeds.
+ * 
+ * Usage: IterativeDeepeningCheck [JSON game state files] (default: 20 generated game states)
+ **/
+public class IterativeDeepeningCheck {
+
+	private static final int CHECK_DEPTH = 3;
+	
+	private static final int GENERATED_POSITIONS = 20;
+	
+	private static final int BENCHMARK_NODES = 20000;
+	
+	/** The number of times each action is applied by the transition benchmark */
+	private static final int TRANSITION_REPEATS = 2000;
+	
+	public static void main(String[] args) throws IOException {
+
+		InputStream fridayGameTxtInputStream = FridayUtil.readFridayGameDataFile();
+		if(fridayGameTxtInputStream == null) { FridayUtil.throwErr("Unable to find Friday data file."); return; }
+
+		CardReader cr = new CardReader(fridayGameTxtInputStream);
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		List<GameStateContainer> positions = new ArrayList<>();
+		if(args.length > 0) {
+			for(String arg : args) {
+				FridayUtil.initializeRandomSeed(0, 0);
+				JsonGameStatePersistence jgsp = new ObjectMapper().readValue(new File(arg), JsonGameStatePersistence.class);
+				positions.add(JsonPersistenceUtil.fromJson(jgsp));
+			}
+		} else {
+			positions.addAll(createPositions(GENERATED_POSITIONS));
+		}
+		
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(0);
+		
+		// Cross-check
+		FridayUtil.UNIVERAL_RANDOM.set(new UnshuffledRandom());
+		
+		int mismatched = 0;
+		for(int x = 0; x < positions.size(); x++) {
+			GameStateContainer gsc = positions.get(x);
+			
+			for(int depthLimit = 1; depthLimit <= CHECK_DEPTH; depthLimit++) {
+				
+				List<Action> rootActions = Main.calculateAvailableActions(gsc);
+				
+				SearchBudget budget = new SearchBudget(Long.MAX_VALUE, false, 0);
+				Map<Action, Integer> engineScores = new IterativeDeepeningSearchEngine(depthLimit).evaluateBestAction(gsc, budget);
+				
+				// The engine's actions are different Action instances, so they are matched by name
+				int[] expected = new int[rootActions.size()];
+				int[] actual = new int[rootActions.size()];
+				for(int y = 0; y < rootActions.size(); y++) {
+					WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(rootActions.get(y)), gsc);
+					expected[y] = wgsc.isWin() ? Integer.MAX_VALUE : referenceSearch(wgsc.getGsc(), depthLimit, 
+							orderFloorAfter(rootActions.get(y)), new long[0]);
+					
+					actual[y] = Integer.MIN_VALUE;
+					for(Map.Entry<Action, Integer> e : engineScores.entrySet()) {
+						if(e.getKey().prettyPrint().equals(rootActions.get(y).prettyPrint())) {
+							actual[y] = Math.max(actual[y], e.getValue());
+						}
+					}
+					
+					if(expected[y] != actual[y]) {
+						System.out.println("#"+x+" depth "+depthLimit+": MISMATCH on "+rootActions.get(y).prettyPrint()
+								+ " expected: "+expected[y]+" actual: "+actual[y]);
+						mismatched++;
+					}
+				}
+			}
+		}
+		
+		System.out.println("Cross-check: "+positions.size()+" game states, depth limits 1 to "+CHECK_DEPTH+", mismatches: "+mismatched);
+		
+		// Benchmark
+		long iddfsNodes = 0;
+		long iddfsNanos = 0;
+		long bestFirstNodes = 0;
+		long bestFirstNanos = 0;
+		
+		for(int pass = 0; pass < 2; pass++) {
+			// The first pass warms up the JVM 
+			boolean measure = pass == 1;
+			
+			for(int x = 0; x < positions.size(); x++) {
+				FridayUtil.initializeRandomSeed(x, 0);
+				SearchBudget budget = new SearchBudget(BENCHMARK_NODES, false, 0);
+				long start = System.nanoTime();
+				new IterativeDeepeningSearchEngine().evaluateBestAction(positions.get(x), budget);
+				if(measure) {
+					iddfsNanos += System.nanoTime() - start;
+					iddfsNodes += budget.getNodesUsed();
+				}
+				
+				FridayUtil.initializeRandomSeed(x, 0);
+				budget = new SearchBudget(BENCHMARK_NODES, false, 0);
+				start = System.nanoTime();
+				Main.evaluateBestAction(positions.get(x), budget);
+				if(measure) {
+					bestFirstNanos += System.nanoTime() - start;
+					bestFirstNodes += budget.getNodesUsed();
+				}
+			}
+		}
+		
+		System.out.println("Iterative deepening (depth-first): "+nf.format(iddfsNodes / (iddfsNanos / 1000000000d))+" game states/sec");
+		System.out.println("Best-first: "+nf.format(bestFirstNodes / (bestFirstNanos / 1000000000d))+" game states/sec");
+		
+		benchmarkTransitions(positions, nf);
+		
+		if(mismatched > 0) {
+			FridayUtil.throwErr("The iterative deepening engine disagreed with the reference search "+mismatched+" times");
+		}
+		
+		System.exit(0);
+	}
+	
+	/** Measure Main.doAction(...) on each action of each game state, see class description */
+	private static void benchmarkTransitions(List<GameStateContainer> positions, NumberFormat nf) {
+		
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean 
+				&& ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported() 
+				? (com.sun.management.ThreadMXBean)threads : null;
+		
+		long transitions = 0;
+		long nanos = 0;
+		long bytes = 0;
+		
+		for(int pass = 0; pass < 2; pass++) {
+			// The first pass warms up the JVM 
+			boolean measure = pass == 1;
+			
+			for(int x = 0; x < positions.size(); x++) {
+				FridayUtil.initializeRandomSeed(x, 0);
+				GameStateContainer gsc = positions.get(x);
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				
+				long startBytes = allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+				long start = System.nanoTime();
+				
+				for(int repeat = 0; repeat < TRANSITION_REPEATS; repeat++) {
+					for(Action action : actions) {
+						Main.doAction(Main.convertActionToResponse(action), gsc);
+					}
+				}
+				
+				if(measure) {
+					nanos += System.nanoTime() - start;
+					if(allocations != null) {
+						bytes += allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes;
+					}
+					transitions += (long)TRANSITION_REPEATS * actions.size();
+				}
+			}
+		}
+		
+		System.out.println("Transitions (Main.doAction): "+nf.format(transitions / (nanos / 1000000000d))+" per sec"
+				+ (allocations != null ? ", "+nf.format(bytes / transitions)+" bytes allocated per transition" : ""));
+	}
+	
+	/** The search of IterativeDeepeningSearchEngine for a single depth limit, on immutable game states; 
+	 * 'forcedMoves' holds the fingerprints of the game states of the run of forced moves that reached 'gsc'. */
+	private static int referenceSearch(GameStateContainer gsc, int depthLeft, int orderFloor, long[] forcedMoves) {
+		for(long fingerprint : forcedMoves) {
+			if(fingerprint == gsc.getZobristHash()) {
+				return Main.score(gsc);
+			}
+		}
+		
+		if(depthLeft == 0) {
+			return Main.score(gsc);
+		}
+		
+		List<Action> actions = Main.getSearchActions(gsc, orderFloor);
+		if(actions == null) {
+			return Main.score(gsc);
+		}
+		
+		boolean forced = FridayUtil.CHAIN_FORCED_MOVES && actions.size() == 1 && forcedMoves.length < ForcedMoveChain.MAX_LENGTH;
+		
+		int childDepthLeft = forced ? depthLeft : depthLeft-1;
+		long[] childForcedMoves = new long[0];
+		if(forced) {
+			childForcedMoves = Arrays.copyOf(forcedMoves, forcedMoves.length+1);
+			childForcedMoves[forcedMoves.length] = gsc.getZobristHash();
+		}
+		
+		int best = Integer.MIN_VALUE;
+		for(Action action : actions) {
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), gsc);
+			if(wgsc.isWin()) {
+				return Integer.MAX_VALUE;
+			}
+			best = Math.max(best, referenceSearch(wgsc.getGsc(), childDepthLeft, orderFloorAfter(action), childForcedMoves));
+		}
+		
+		return best;
+	}
+	
+	private static int orderFloorAfter(Action action) {
+		return FridayUtil.PARTIAL_ORDER_REDUCTION ? PartialOrderReduction.getOrderFloor(action) : PartialOrderReduction.NO_FLOOR;
+	}
+	
+	/** Play random actions from fixed seeds, to find game states with more than one available action. */
+	private static List<GameStateContainer> createPositions(int numPositions) {
+
+		List<GameStateContainer> result = new ArrayList<>();
+
+		for(long seed = 0; result.size() < numPositions; seed++) {
+
+			FridayUtil.initializeRandomSeed(seed, 0);
+			Random walk = new Random(seed);
+
+			GameStateContainer gsc = new GameStateContainer(Main.initializeGameState(FridayUtil.ALL_CARDS));
+
+			int steps = walk.nextInt(60);
+			for(int step = 0; step < steps && gsc != null; step++) {
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				if(actions.size() == 0) {
+					gsc = null;
+					break;
+				}
+
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(actions.get(walk.nextInt(actions.size()))), gsc);
+				gsc = wgsc.isWin() ? null : wgsc.getGsc();
+			}
+
+			if(gsc != null && Main.calculateAvailableActions(gsc).size() > 1) {
+				result.add(gsc);
+			}
+		}
+
+		return result;
+	}
+	
+	/** A random number generator for which Collections.shuffle(...) leaves the list unchanged, so that drawing from
+	 * a reshuffled stack does not depend on how many shuffles came before it. */
+	private static final class UnshuffledRandom extends RandomAdvanced {
+		private static final long serialVersionUID = 1L;
+
+		UnshuffledRandom() {
+			super(0, 0);
+		}
+		
+		@Override
+		public int nextInt(int bound) {
+			// Collections.shuffle(...) swaps element i-1 with element nextInt(i)
+			return bound-1;
+		}
+	}
+	
+}
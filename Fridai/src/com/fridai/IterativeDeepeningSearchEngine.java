@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fridai.actions.Action;
+import com.fridai.util.FridayUtil;
+
+/**
+ * An iterative deepening depth-first search engine: each action is scored by a depth-first search of its game 
+ * state, to a depth limit that increases by one with each iteration, until the search budget is exhausted (or an 
+ * iteration reaches no game state at the depth limit, in which case every game state has been searched).
+ * 
+ * As with the best-first search, the score of an action is the best Main.score(...) of the game states at the 
+ * depth limit (or of game states without actions) below it, or Integer.MAX_VALUE if it wins the game. The score of
+ * an action is that of the deepest iteration that completed; an iteration that was stopped by the budget part way
+ * through is discarded.
+ * 
+ * The search holds only the current path (see SearchPath). Each action still creates a new game state, as in the
+ * best-first search, but no other memory is kept per game state: there are no tree nodes, no frontier and no 
+ * transposition table. The price is that a game state that is reachable by multiple paths is
+ * searched once per path, and that each iteration searches the game states of the previous iterations again.
+ * 
+ * A forced move (a game state with a single action, see FridayUtil.CHAIN_FORCED_MOVES) does not count towards the 
+ * depth limit, up to ForcedMoveChain.MAX_LENGTH consecutive forced moves (after which the next one does); as with 
+ * ForcedMoveChain, a run of forced moves that returns to one of its own game states is searched no further. Each game
+ * state whose actions are searched counts as one game state against the search budget.
+ **/
+public final class IterativeDeepeningSearchEngine implements SearchEngine {
+
+	/** Upper bound on the depth limit, in case the budget never runs out */
+	private static final int MAX_DEPTH_LIMIT = 256;
+	
+	private final int maxDepthLimit;
+	
+	private SearchPath path;
+	
+	private SearchBudget budget;
+	
+	private long processed;
+	
+	/** Whether the current iteration was stopped by the budget */
+	private boolean exhausted;
+	
+	/** Whether the current iteration reached a game state at the depth limit (so a deeper iteration would search 
+	 * more game states) */
+	private boolean depthLimitReached;
+	
+	/** The fingerprints of the game states of the current run of forced moves, see search(...) */
+	private final long[] forcedMoveFingerprints = new long[ForcedMoveChain.MAX_LENGTH];
+	
+	public IterativeDeepeningSearchEngine() {
+		this(MAX_DEPTH_LIMIT);
+	}
+	
+	/** Engine that stops deepening after the given depth limit (used by IterativeDeepeningCheck) */
+	IterativeDeepeningSearchEngine(int maxDepthLimit) {
+		this.maxDepthLimit = maxDepthLimit;
+	}
+	
+	@Override
+	public Map<Action, Integer> evaluateBestAction(GameStateContainer gsc, SearchBudget budget) {
+		
+		List<Action> rootActions = Main.calculateAvailableActions(gsc);
+		
+		if(path == null) {
+			path = new SearchPath(gsc);
+		} else {
+			path.reset(gsc);
+		}
+		
+		this.budget = budget;
+		this.processed = 0;
+		this.exhausted = false;
+		
+		// Scores of the deepest completed iteration; before the first iteration, the game state of each action
+		int[] scores = new int[rootActions.size()];
+		boolean[] wins = new boolean[rootActions.size()];
+		for(int x = 0; x < rootActions.size(); x++) {
+			wins[x] = path.apply(rootActions.get(x));
+			if(wins[x]) {
+				scores[x] = Integer.MAX_VALUE;
+			} else {
+				scores[x] = Main.score(path.get());
+				path.undo();
+			}
+		}
+		
+		int[] iterationScores = new int[rootActions.size()];
+		
+		for(int depthLimit = 1; depthLimit <= maxDepthLimit; depthLimit++) {
+			
+			depthLimitReached = false;
+			
+			for(int x = 0; x < rootActions.size() && !exhausted; x++) {
+				if(wins[x]) {
+					iterationScores[x] = Integer.MAX_VALUE;
+					continue;
+				}
+				
+				path.apply(rootActions.get(x));
+				iterationScores[x] = search(depthLimit, orderFloorAfter(rootActions.get(x)), 0);
+				path.undo();
+			}
+			
+			if(exhausted) { break; }
+			
+			System.arraycopy(iterationScores, 0, scores, 0, scores.length);
+			
+			if(!depthLimitReached) { break; }
+		}
+		
+		budget.addNodesUsed(processed);
+		
+		if(FridayUtil.RUNTIME_CHECK && path.getDepth() != 0) { FridayUtil.throwErr("Search did not return to the root: "+path.getDepth()); }
+		
+		Map<Action, Integer> result = new HashMap<>();
+		for(int x = 0; x < rootActions.size(); x++) {
+			result.put(rootActions.get(x), scores[x]);
+		}
+		
+		return result;
+	}
+	
+	/** Return the best score below the current game state of 'path', searching at most 'depthLeft' (non-forced)
+	 * actions deep, where the game state was reached by a run of 'forcedMoves' forced moves (whose game states are in
+	 * forcedMoveFingerprints). Returns Integer.MIN_VALUE if the budget was exhausted. */
+	private int search(int depthLeft, int orderFloor, int forcedMoves) {
+		
+		final GameStateContainer gsc = path.get();
+		
+		for(int x = 0; x < forcedMoves; x++) {
+			if(forcedMoveFingerprints[x] == gsc.getZobristHash()) {
+				// The forced moves have returned to one of their own game states, which has no other actions
+				return Main.score(gsc);
+			}
+		}
+		
+		if(depthLeft == 0) {
+			depthLimitReached = true;
+			return Main.score(gsc);
+		}
+		
+		List<Action> actions = Main.getSearchActions(gsc, orderFloor);
+		if(actions == null) {
+			return Main.score(gsc);
+		}
+		
+		processed++;
+		if(budget.isExhausted(processed)) {
+			exhausted = true;
+			return Integer.MIN_VALUE;
+		}
+		
+		final boolean forced = FridayUtil.CHAIN_FORCED_MOVES && actions.size() == 1 && forcedMoves < ForcedMoveChain.MAX_LENGTH;
+		if(forced) {
+			forcedMoveFingerprints[forcedMoves] = gsc.getZobristHash();
+		}
+		
+		final int childDepthLeft = forced ? depthLeft : depthLeft-1;
+		final int childForcedMoves = forced ? forcedMoves+1 : 0;
+		
+		int best = Integer.MIN_VALUE;
+		
+		for(Action action : actions) {
+			if(path.apply(action)) {
+				// Nothing can beat a win
+				return Integer.MAX_VALUE;
+			}
+			
+			int score = search(childDepthLeft, orderFloorAfter(action), childForcedMoves);
+			path.undo();
+			
+			if(exhausted) { return Integer.MIN_VALUE; }
+			
+			if(score > best) {
+				best = score;
+			}
+		}
+		
+		return best;
+	}
+	
+	private static int orderFloorAfter(Action action) {
+		return FridayUtil.PARTIAL_ORDER_REDUCTION ? PartialOrderReduction.getOrderFloor(action) : PartialOrderReduction.NO_FLOOR;
+	}
+	
+}
@@ -23,17 +23,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -80,11 +77,18 @@ import com.fridai.json.JsonGameStatePersistence;
 import com.fridai.json.JsonPersistenceUtil;
 import com.fridai.util.AllCards;
 import com.fridai.util.BenchmarkEntries;
+import com.fridai.util.BucketPriorityQueue;
+import com.fridai.util.CardSet;
+import com.fridai.util.CardTable;
 import com.fridai.util.ComboUtil;
 import com.fridai.util.DebugUtil;
 import com.fridai.util.FridayUtil;
+import com.fridai.util.FridayUtil.SearchEngineType;
 import com.fridai.util.ImmutableGrowableListCards;
 import com.fridai.util.ListCards;
+import com.fridai.util.PackedStateArena;
+import com.fridai.util.SearchTree;
+import com.fridai.util.TranspositionTable;
 
 
 public class Main {
@@ -138,8 +142,8 @@ public class Main {
 	
 	
 	private static void gameAI(String args[]) throws IOException { 
-		if(args.length != 5) {
-			System.err.println("(time to run in minutes) (hyper param value) (perf output file) (num thread) (result output file)");
+		if(args.length != 5 && args.length != 6) {
+			System.err.println("(time to run in minutes) (hyper param value) (perf output file) (num thread) (result output file) [max milliseconds per decision]");
 			return;
 		}
 		
@@ -157,6 +161,10 @@ public class Main {
 		File resultOutputFile = new File(args[4]);
 		
 		FridayUtil.QUEUE_TO_PROCESS = hyperParamValue;
+		if(args.length == 6) {
+			// When specified, the per-decision deadline replaces the hyper param value as the search budget.
+			FridayUtil.NANOS_PER_DECISION = TimeUnit.NANOSECONDS.convert(Long.parseLong(args[5]), TimeUnit.MILLISECONDS);
+		}
 		FridayUtil.ON_ERROR_STATE_OUTPUT_PATH = new File(resultOutputFile.getPath()+".state.json");
 		FridayUtil.RUN_LOG = new File(resultOutputFile.getPath()+".run-log.txt");
 		FridayUtil.RESULT_LOG = resultOutputFile;
@@ -229,18 +237,17 @@ public class Main {
 	}
 	
 	
-	/** When the main game loop is processing game rounds, the various active game states are stored
-	 * in instances of this class. The TreeEntry class is used apply score and depth to each individual
-	 * game state, as well as the keep track of children of a given parent game state.*/
-	private static final class QueueEntry {
-		final GameStateContainer gs;
-		final TreeEntry te;
-		
-		public QueueEntry(GameStateContainer gs, TreeEntry te) {
-			this.gs = gs;
-			this.te = te;
-		}
-		
+	/** The frontier, transposition table and search tree of a completed search, held by devMain between decisions 
+	 * so that the next search can re-root on the game states that it already searched (rather than searching them 
+	 * again from scratch). See evaluateBestAction(...). */
+	static final class RetainedSearchTree {
+		BucketPriorityQueue queue;
+		TranspositionTable transpositions;
+		SearchTree tree;
+		
+		/** The generation of 'tree' at the end of the search: if the tree has since been cleared (for example, by 
+		 * another search on the same thread) then its node indices are no longer valid, and it cannot be reused. */
+		long treeGeneration;
 	}
 	
 	
@@ -290,83 +297,9 @@ public class Main {
 
 	}
 	
-	/** Keep track of the metadata and children of a QueueEntry used by the game loop's main queue. 
-	 * Score represents inherent "winability" of a game state, and the depth and children 
-	 * values represent the tree relationships with other game states. */
-	public static final class TreeEntry {
-		private int score;
-		private final int depth;
-		private final List<TreeEntry> children = new ArrayList<>();
-		
-		private DebugTreeEntry debugEntry;
-		
-		public TreeEntry(int score, int depth) {
-			this.score = score;
-			this.depth = depth;
-		}
-		
-		public List<TreeEntry> getChildren() {
-			return children; // TODO: LOWER - To reduce memory usage, should this be null until it is first used?
-		}
-				
-		@SuppressWarnings("unused")
-		@Override
-		public String toString() {
-			
-			String result = "score: "+score+" depth:"+depth+" children: "+children.size();
-
-			if(FridayUtil.RUNTIME_CHECK && this.debugEntry != null) {
-				result += " transitive children: "+debugEntry.debug_transitive_children;				
-			}
-			
-			return result;
-
-		}
-		
-		public DebugTreeEntry getOrCreateDebugEntry() {
-			if(debugEntry == null) {
-				this.debugEntry = new DebugTreeEntry();
-			}
-			return this.debugEntry;
-		}
-		
-		@SuppressWarnings("unused")
-		@Override
-		public int hashCode() {
-			if(!FridayUtil.RUNTIME_CHECK) { return super.hashCode(); } // Fast path for non-debug
-			
-			if(this.debugEntry == null) {
-				return super.hashCode();
-			} else {
-				return (int) this.debugEntry.debugId;
-			}
-			
-			
-		}
-		
-		@SuppressWarnings("unused")
-		@Override
-		public boolean equals(Object obj) {
-			if(!FridayUtil.RUNTIME_CHECK) { return super.equals(obj); } // Fast path for non-debug 
-			
-			if(this.debugEntry == null) {
-				return super.equals(obj);
-			} else {
-				TreeEntry other = (TreeEntry)obj;
-				if(other.debugEntry != null) {
-					return other.debugEntry.debugId == this.debugEntry.debugId;
-				} else {
-					return false;
-				}
-			}
-		}
-		
-	}
-	
-	
 	/** This method removes low-value actions that are unlikely to bare fruit, so that the 
 	 * tree logic does search it. */
-	private static void filterActions(List<Action> actions, GameState gs) {
+	static void filterActions(List<Action> actions, GameState gs) {
 		if(gs.getState() == State.PAY_LIFE_POINTS_ON_HAZARD_MISS) {
 
 			DestroyCardsWithPaidLifeAction bestAction = null;
@@ -398,71 +331,33 @@ public class Main {
 	
 	
 	/** Apply a "how winnable is this" score (larger is better) to a given game state. */
-	private static final int score(GameStateContainer container) {
+	static final int score(GameStateContainer container) {
 		
 		if(!container.isGameState()) {
 			PirateGameState gs = container.getPirateGameState();
 
-			int allFightingCardsValue = 0;
-			int count = 0;
-
-			for(int x = 0; x < gs.getDiscardFightCards().size(); x++) {
-				Card c = gs.getDiscardFightCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
+			final int[] ratingsSimple = CardTable.getRatingsSimple();
 			
-			for(int x = 0; x < gs.getLhsFightCards().size(); x++) {
-				Card c = gs.getLhsFightCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
-
-			for(int x = 0; x < gs.getRhsFightCards().size(); x++) {
-				Card c = gs.getRhsFightCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
-
+			int allFightingCardsValue = sumRatingsSimple(gs.getDiscardFightCards(), ratingsSimple)
+					+ sumRatingsSimple(gs.getLhsFightCards(), ratingsSimple) + sumRatingsSimple(gs.getRhsFightCards(), ratingsSimple)
+					+ sumRatingsSimple(gs.getYourFightingCards(), ratingsSimple);
 			
-			for(int x = 0; x < gs.getYourFightingCards().size(); x++) {
-				Card c = gs.getYourFightingCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
+			int count = gs.getDiscardFightCards().size() + gs.getLhsFightCards().size() + gs.getRhsFightCards().size()
+					+ gs.getYourFightingCards().size();
 			
 			return gs.getLifePoints()* 10000000 + ((1000*allFightingCardsValue)/count);
 
 		} else {
 			GameState gs = container.getGameState();
 			
-			int allFightingCardsValue = 0;
-			int count = 0;
-
-			for(int x = 0; x < gs.getDiscardFightCards().size(); x++) {
-				Card c = gs.getDiscardFightCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
+			final int[] ratingsSimple = CardTable.getRatingsSimple();
 			
-			for(int x = 0; x < gs.getLhsFightCards().size(); x++) {
-				Card c = gs.getLhsFightCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
-
-			for(int x = 0; x < gs.getRhsFightCards().size(); x++) {
-				Card c = gs.getRhsFightCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
-
+			int allFightingCardsValue = sumRatingsSimple(gs.getDiscardFightCards(), ratingsSimple)
+					+ sumRatingsSimple(gs.getLhsFightCards(), ratingsSimple) + sumRatingsSimple(gs.getRhsFightCards(), ratingsSimple)
+					+ sumRatingsSimple(gs.getYourFightingCards(), ratingsSimple);
 			
-			for(int x = 0; x < gs.getYourFightingCards().size(); x++) {
-				Card c = gs.getYourFightingCards().get(x);
-				allFightingCardsValue += c.getRatingSimple();
-				count++;
-			}
+			int count = gs.getDiscardFightCards().size() + gs.getLhsFightCards().size() + gs.getRhsFightCards().size()
+					+ gs.getYourFightingCards().size();
 			
 			return gs.getLifePoints()* 10000000 + ((1000*allFightingCardsValue)/count);
 			
@@ -470,114 +365,465 @@ public class Main {
 		
 	}	
 
-	/** Score all of the available actions of gsParam */
-	@SuppressWarnings("unused")
-	public static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam) {
+	/** The sum of Card.getRatingSimple() of the cards of the list */
+	private static int sumRatingsSimple(ImmutableGrowableListCards list, int[] ratingsSimple) {
+		int result = 0;
+		for(int x = 0; x < list.size(); x++) {
+			result += ratingsSimple[list.getPhysicalCardId(x)];
+		}
+		return result;
+	}
+
+	/** The sum of Card.getRatingSimple() of the cards of the list */
+	private static int sumRatingsSimple(ListCards list, int[] ratingsSimple) {
+		int result = 0;
+		for(int x = 0; x < list.size(); x++) {
+			result += ratingsSimple[list.getPhysicalCardId(x)];
+		}
+		return result;
+	}
+
+	/** Return an upper bound on the score (see score(...)) of every game state that the search can reach from gsc, by 
+	 * expanding at most 'remainingExpansions' game states; used by the branch and bound pruning of searchRoots(...).
+	 * 
+	 * A win can only happen from the pirate phase, which requires at least one expansion per 2 remaining hazard 
+	 * cards (plus the expansion that beats the final pirate): each action is either applied by the expansion of its
+	 * game state, or is a forced move, which counts as an expansion of its own (see ForcedMoveChain). When a win is
+	 * out of reach, life points can only increase through the LIFE_ADD_1/LIFE_ADD_2 abilities of the player's cards
+	 * (which may be used again after a reshuffle, so the bound is the maximum life points whenever the player has 
+	 * one), and the rating component of the score is at most that of the highest rated card. */
+	static int upperBoundScore(GameStateContainer gsc, long remainingExpansions) {
 		
-		boolean debug_createGameStateGraph = false;
+		int lifePoints;
+		boolean hasLifeAdd;
 		
-		Comparator<QueueEntry> scoreComparator = (a, b)-> { return b.te.score - a.te.score; };
+		if(gsc.isGameState()) {
+			GameState gs = gsc.getGameState();
+			
+			long minExpansionsToWin = (gs.getHazardCards().size()+1)/2 + 1;
+			if(remainingExpansions >= minExpansionsToWin) { return Integer.MAX_VALUE; }
+			
+			lifePoints = gs.getLifePoints();
+			hasLifeAdd = hasLifeAdd(gs.getYourFightingCards().asList()) || hasLifeAdd(gs.getDiscardFightCards())
+					|| hasLifeAdd(gs.getLhsFightCards()) || hasLifeAdd(gs.getRhsFightCards())
+					|| hasLifeAdd(gs.getSlowGameState().getAgingCards().asList())
+					|| (gs.getAbilityObject() != null && hasLifeAdd(gs.getAbilityObject().getDrawnSortCards()));
+			
+		} else {
+			if(remainingExpansions >= 1) { return Integer.MAX_VALUE; }
+			
+			PirateGameState gs = gsc.getPirateGameState();
+			
+			lifePoints = gs.getLifePoints();
+			hasLifeAdd = hasLifeAdd(gs.getYourFightingCards().asList()) || hasLifeAdd(gs.getDiscardFightCards())
+					|| hasLifeAdd(gs.getLhsFightCards()) || hasLifeAdd(gs.getRhsFightCards())
+					|| hasLifeAdd(gs.getSlowGameState().getAgingCards().asList())
+					|| (gs.getAbilityObject() != null && hasLifeAdd(gs.getAbilityObject().getDrawnSortCards()));
+		}
+		
+		if(hasLifeAdd) {
+			if(FridayUtil.ALLOW_LARGE_LIFE_POINTS) { return Integer.MAX_VALUE; }
+			lifePoints = Math.max(lifePoints, 22);
+		}
+		
+		return lifePoints * BucketPriorityQueue.LIFE_POINT_SCORE + getMaxRatingScore();
+	}
 	
-		PriorityQueue<QueueEntry> queue = new PriorityQueue<>(256 *1024, scoreComparator );
-
-		HashMap<Action, TreeEntry> rootActionToTreeEntry = new HashMap<>();
+	private static boolean hasLifeAdd(List<Card> cards) {
+		if(cards == null) { return false; }
+		
+		for(Card c : cards) {
+			if(c.getAbility() == Ability.LIFE_ADD_1 || c.getAbility() == Ability.LIFE_ADD_2) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean hasLifeAdd(ImmutableGrowableListCards cards) {
+		return cards.containsAbility(Ability.LIFE_ADD_1) || cards.containsAbility(Ability.LIFE_ADD_2);
+	}
+	
+	/** The highest possible rating component of score(...); calculated on first use. */
+	private static int maxRatingScore = Integer.MIN_VALUE;
+	
+	private static int getMaxRatingScore() {
+		if(maxRatingScore == Integer.MIN_VALUE) {
+			int maxRating = 0;
+			for(Card c : FridayUtil.ALL_CARDS.getFightingCards()) {
+				maxRating = Math.max(maxRating, c.getRatingSimple());
+			}
+			for(Card c : FridayUtil.ALL_CARDS.getAgingCards()) {
+				maxRating = Math.max(maxRating, c.getRatingSimple());
+			}
+			maxRatingScore = 1000*maxRating;
+		}
+		return maxRatingScore;
+	}
+	
+	/** Score all of the available actions of gsParam, using the default search budget (see SearchBudget) */
+	public static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam) {
+		return evaluateBestAction(gsParam, SearchBudget.createDefault());
+	}
+	
+	/** Score all of the available actions of gsParam. The search is anytime: when the budget is exhausted (for 
+	 * example, the deadline has passed), the scores of the tree that has been searched so far are returned. */
+	public static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam, SearchBudget budget) {
+		return evaluateBestAction(gsParam, budget, null);
+	}
+	
+	/** Score all of the available actions of gsParam. 
+	 * 
+	 * If 'retained' is non-null, it contains the search tree of the previous decision (if any), and on return it 
+	 * will contain the search tree of this decision. Root actions that lead to a game state that was already 
+	 * searched by the previous decision (which is the case when the previous action was deterministic, for example
+	 * no cards were drawn from a reshuffled fight stack) re-use that game state's subtree and frontier, and the 
+	 * game states that were expanded in those subtrees count against the budget of this search (they are added to
+	 * SearchBudget.getNodesReused(), rather than getNodesUsed()). */
+	static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam, SearchBudget budget, RetainedSearchTree retained) {
 		
 		List<Action> rootActions = calculateAvailableActions(gsParam);
+		
+		List<WinnableGameStateContainer> rootResults = new ArrayList<>();
 		for(Action action : rootActions) {
-			ActionResponse r = convertActionToResponse(action);
+			rootResults.add(doAction(convertActionToResponse(action), gsParam));
+		}
+		
+		int[] rootScores = searchRoots(rootResults, budget, retained);
+		
+		Map<Action, Integer> result = new HashMap<>(); 
+		
+		for(int x = 0; x < rootActions.size(); x++) { 
+			result.put(rootActions.get(x), rootScores[x]);
+		}
+		
+		return result;
+	}
+	
+	/** Search the game states that result from a set of (root) actions, and return the score of each: the 
+	 * returned array is in the same order as 'rootResults'. See evaluateBestAction(...) for a description 
+	 * of 'retained', which may be null. */
+	static int[] searchRoots(List<WinnableGameStateContainer> rootResults, SearchBudget budget, RetainedSearchTree retained) {
+		
+		// Hold the game states of the frontier and the transposition table as packed encodings, see 
+		// FridayUtil.PACKED_SEARCH_STATES
+		final PackedGameState packed = FridayUtil.PACKED_SEARCH_STATES ? new PackedGameState(
+				new PackedStateArena(FridayUtil.PACKED_STATE_STORAGE, FridayUtil.PACKED_STATE_DIRECTORY)) : null;
+		
+		try {
+			return searchRoots(rootResults, budget, retained, packed);
+		} finally {
+			if(packed != null) {
+				// Release the packed game states (and the scratch file of PackedStateStorage.MAPPED), even if the 
+				// search failed
+				packed.getArena().close();
+			}
+		}
+	}
+	
+	/** See searchRoots(...) above; 'packed' holds the packed game states of the search, or is null. */
+	@SuppressWarnings("unused")
+	private static int[] searchRoots(List<WinnableGameStateContainer> rootResults, SearchBudget budget, 
+			RetainedSearchTree retained, PackedGameState packed) {
+		
+		boolean debug_createGameStateGraph = false;
+		
+		// Node index -> debug entry; only used when debug_createGameStateGraph is true.
+		Map<Integer, DebugTreeEntry> debugEntries = debug_createGameStateGraph ? new HashMap<>() : null;
+		
+		BucketPriorityQueue queue = new BucketPriorityQueue();
 
-			WinnableGameStateContainer wgsc = doAction(r, gsParam);
+		SearchTree tree = SearchTree.getThreadInstance();
+		
+		TranspositionTable transpositions = FridayUtil.USE_TRANSPOSITION_TABLE ? new TranspositionTable(256*1024, packed) : null;
+		
+		long transpositionsFound = 0;
+		
+		long repetitionsFound = 0;
+		
+		long frontierTrimmed = 0;
+		
+		// Branch and bound: the best score of a proven leaf (a win, or a game state without actions) below any of 
+		// the roots. A game state whose upper bound (see upperBoundScore(...)) is no better than this cannot change 
+		// the best score of the roots, and is not expanded. This may lower the score of the other roots, but never
+		// to below the best score, so the best action is unchanged.
+		final boolean branchAndBound = FridayUtil.BRANCH_AND_BOUND;
+		int provenBest = Integer.MIN_VALUE;
+		long pruned = 0;
+		
+		// Only generate commuting ability activations in a single order, see PartialOrderReduction
+		final boolean partialOrderReduction = FridayUtil.PARTIAL_ORDER_REDUCTION;
+		
+		// Apply forced moves without adding them to the tree, see FridayUtil.CHAIN_FORCED_MOVES
+		final ForcedMoveChain chain = new ForcedMoveChain();
+		long forcedMoves = 0;
+		
+		// Only build the game state of a child when it is polled from the queue, see FridayUtil.LAZY_EXPANSION
+		final boolean lazyExpansion = FridayUtil.LAZY_EXPANSION;
+		long lazyBuilt = 0;
+		
+		// Whether a sliced budget (see SearchBudget) stopped the search before it was exhausted
+		boolean decidedEarly = false;
+		
+		// The nodes of root game states that were searched by the previous decision (NONE otherwise)
+		int[] reusedRootNodes = new int[rootResults.size()];
+		Arrays.fill(reusedRootNodes, SearchTree.NONE);
+		
+		// The number of game states that were expanded by the previous decision, in the reused subtrees
+		long reusedProcessed = 0;
+		
+		if(retained != null && retained.tree == tree && retained.treeGeneration == tree.getGeneration() 
+				&& retained.transpositions != null && transpositions != null && packed == null) {
+			reusedProcessed = reuseRetainedSearchTree(retained, rootResults, reusedRootNodes, queue, transpositions);
+		} else {
+			tree.clear();
+		}
+		
+		int[] rootNodes = new int[rootResults.size()];
+		
+		for(int x = 0; x < rootResults.size(); x++) {
+			WinnableGameStateContainer wgsc = rootResults.get(x);
 			
-			TreeEntry te;
+			int node;
 			if(wgsc.isWin()) { // Have we won?
-				te = new TreeEntry(Integer.MAX_VALUE, 0 /* depth*/);
+				node = tree.addNode(SearchTree.NONE, Integer.MAX_VALUE);
+				provenBest = Integer.MAX_VALUE;
+			} else if(reusedRootNodes[x] != SearchTree.NONE) {
+				node = reusedRootNodes[x];
 			} else {
 				GameStateContainer ngs = wgsc.getGsc();
-				te = new TreeEntry(score(ngs), 0 /* depth*/);
-				queue.offer(new QueueEntry(ngs, te));	
+				node = tree.addNode(SearchTree.NONE, score(ngs));
+				tree.setFingerprint(node, ngs.getZobristHash());
+				if(isTransposition(transpositions, tree, ngs, node)) {
+					transpositionsFound++;
+				} else {
+					setFrontierState(tree, node, ngs, packed);
+					queue.offer(node, tree.getScore(node));
+				}
 			}
 			
-			rootActionToTreeEntry.put(action, te);
+			rootNodes[x] = node;
 			
 		}
 
 		int currDeepestTree = 0;
 		
-		long processed = 0;
+		long processed = reusedProcessed;
 		
-		long startTimeInNanos = System.nanoTime();
+		// The value of 'processed' at the previous budget check; forced moves may add more than one at a time
+		long previouslyProcessed = processed;
 		
-		long maxProcessed = FridayUtil.QUEUE_TO_PROCESS;
+		long startTimeInNanos = System.nanoTime();
 		
 		while(queue.size() > 0) {
+			
+			// Nothing can beat a win
+			if(branchAndBound && provenBest == Integer.MAX_VALUE) { 
+				pruned += queue.size();
+				break; 
+			}
 					
-			QueueEntry curr = queue.poll();
+			int curr = queue.poll();
 			
-			List<Action> actions = calculateAvailableActions(curr.gs);
+			// Once expanded, the tree no longer needs the game state
+			GameStateContainer currGs = takeFrontierState(tree, curr, packed);
 			
-			if(actions == null || actions.size() == 0) { continue; }
+			Action pendingAction = tree.getPendingAction(curr);
+			if(pendingAction != null) {
+				// Build the game state of a lazily expanded node, now that it has reached the front of the queue
+				tree.setPendingAction(curr, null);
+				
+				WinnableGameStateContainer wgsc = doAction(convertActionToResponse(pendingAction), currGs);
+				lazyBuilt++;
+				
+				if(wgsc.isWin()) {
+					tree.setScore(curr, Integer.MAX_VALUE);
+					provenBest = Integer.MAX_VALUE;
+					continue;
+				}
+				
+				currGs = wgsc.getGsc();
+				tree.setScore(curr, score(currGs));
+				tree.setFingerprint(curr, currGs.getZobristHash());
+				
+				if(isRepetition(tree, curr)) {
+					repetitionsFound++;
+					continue;
+				} else if(isTransposition(transpositions, tree, currGs, curr)) {
+					transpositionsFound++;
+					continue;
+				}
+				
+				// The node was queued with an estimated score; if its own score is lower than the next 
+				// node in the queue, then queue it again with its own score
+				if(queue.size() > 0 && tree.getScore(curr) < queue.peekScore()) {
+					setFrontierState(tree, curr, currGs, packed);
+					queue.offer(curr, tree.getScore(curr));
+					continue;
+				}
+			}
 			
-			if(curr.gs.isGameState()) {
-				filterActions(actions, curr.gs.getGameState());
+			if(branchAndBound && provenBest != Integer.MIN_VALUE 
+					&& upperBoundScore(currGs, remainingExpansions(budget, processed)) <= provenBest) {
+				pruned++;
+				continue;
 			}
 			
+			List<Action> actions = getSearchActions(currGs, tree.getOrderFloor(curr));
+			
+			// While the game state has only a single action (a forced move), apply the action here, rather than adding
+			// the resulting game state to the tree and the frontier: the node of 'curr' stands for the whole chain of 
+			// forced moves (see ForcedMoveChain), and takes the score and fingerprint of the game state at the end of
+			// it. Each forced move counts against the budget, as it would if it were expanded as a node of its own.
+			final GameStateContainer chainStart = currGs;
+			final int chainStartFloor = tree.getOrderFloor(curr);
+			chain.apply(currGs, actions, chainStartFloor);
+			forcedMoves += chain.getLength();
+			processed += chain.getLength();
+			
+			if(chain.isWin()) {
+				tree.setScore(curr, Integer.MAX_VALUE);
+				actions = null;
+				
+			} else if(chain.getLength() > 0) {
+				currGs = chain.getEnd();
+				actions = chain.getActions();
+				tree.setScore(curr, score(currGs));
+				tree.setFingerprint(curr, currGs.getZobristHash());
+				if(partialOrderReduction) {
+					// The node now stands for the game state at the end of the chain, see isRepetition(...)
+					tree.setOrderFloor(curr, chain.getOrderFloor());
+				}
+				
+				// A chain that returns to one of its own game states never ends (it has no other actions), and the
+				// game state at the end of a chain is checked for repetitions and transpositions, as a new node is
+				
+				// The transposition table entry of the node remains that of the game state at the start of the chain 
+				// (which the next search looks up its roots by, see reuseRetainedSearchTree(...)), unless the chain
+				// changed the order floor that the entry is compared by, see isTransposition(...).
+				if(tree.getOrderFloor(curr) != chainStartFloor && transpositions != null 
+						&& transpositions.get(chainStart) == curr) {
+					transpositions.remove(chainStart);
+				}
+				
+				// Nor is the game state at the end of the chain added to the table: it is only linked to a node that
+				// has already been expanded from it.
+				int existing = transpositions != null ? transpositions.get(currGs) : TranspositionTable.NOT_FOUND;
+				boolean existingExpanded = existing != TranspositionTable.NOT_FOUND 
+						&& tree.getState(existing) == null && tree.getPackedState(existing) == SearchTree.NONE;
+				
+				if(chain.isCycle() || isRepetition(tree, curr)) {
+					repetitionsFound++;
+					continue;
+				} else if(existingExpanded && isTransposition(transpositions, tree, currGs, curr)) {
+					transpositionsFound++;
+					continue;
+				}
+			}
+			
+			if(actions == null) { 
+				provenBest = Math.max(provenBest, tree.getScore(curr));
+				continue; 
+			}
+			
+			int currDepth = tree.getDepth(curr);
 			
 			// Uncomment this line to verify the JSON persistence correctness of every game state that this
 			// method processes.			
-			// debugVerifyJsonPersistenceCorrectness(curr.gs);
+			// debugVerifyJsonPersistenceCorrectness(currGs);
 		
 			for(Action action : actions) {
+				
+				if(currDepth > currDeepestTree) {
+					currDeepestTree = currDepth;
+				}
+				
+				if(lazyExpansion) {
+					// Queue the child with an estimate of its score, and only build its game state if it is polled
+					int child = tree.addNode(curr, estimateScore(tree.getScore(curr), action));
+					if(partialOrderReduction) {
+						tree.setOrderFloor(child, PartialOrderReduction.getOrderFloor(action));
+					}
+					setFrontierState(tree, child, currGs, packed);
+					tree.setPendingAction(child, action);
+					queue.offer(child, tree.getScore(child));
+					continue;
+				}
+				
 				ActionResponse r = convertActionToResponse(action);
 
-				WinnableGameStateContainer wgsc = doAction(r, curr.gs);
-
-				if(curr.te.depth > currDeepestTree) {
-					currDeepestTree = curr.te.depth;
-				}
+				WinnableGameStateContainer wgsc = doAction(r, currGs);
 				
 				if(FridayUtil.RUNTIME_CHECK && !wgsc.isWin()) {
 					// Sanity check that we can't get an infinite loop by returning the same state pre- and post-
-					if(curr.gs.isGameState() && wgsc.getGsc().isGameState()) {
+					if(currGs.isGameState() && wgsc.getGsc().isGameState()) {
 						
-						if(curr.gs.getGameState() == wgsc.getGsc().getGameState()) {
+						if(currGs.getGameState() == wgsc.getGsc().getGameState()) {
 							FridayUtil.throwErr("Input and output should not match.");
 						}
 						
 					}
 					
-					if(!curr.gs.isGameState() && !wgsc.getGsc().isGameState()) {
+					if(!currGs.isGameState() && !wgsc.getGsc().isGameState()) {
 						
-						if(curr.gs.getPirateGameState() == wgsc.getGsc().getPirateGameState()) {
+						if(currGs.getPirateGameState() == wgsc.getGsc().getPirateGameState()) {
 							FridayUtil.throwErr("Input and output should not match.");
 						}
 						
 					}
 				}
 				
-				TreeEntry newTreeEntry;
+				int child;
 				if(wgsc.isWin()) {
-					newTreeEntry = new TreeEntry(Integer.MAX_VALUE, curr.te.depth+1);					
+					child = tree.addNode(curr, Integer.MAX_VALUE);
+					provenBest = Integer.MAX_VALUE;
 				} else {
 					GameStateContainer newGameState = wgsc.getGsc();
-					newTreeEntry = new TreeEntry(score(newGameState), curr.te.depth+1);
-					queue.offer(new QueueEntry(newGameState, newTreeEntry));
+					child = tree.addNode(curr, score(newGameState));
+					if(partialOrderReduction) {
+						tree.setOrderFloor(child, PartialOrderReduction.getOrderFloor(action));
+					}
+					tree.setFingerprint(child, newGameState.getZobristHash());
+					if(branchAndBound && provenBest != Integer.MIN_VALUE 
+							&& upperBoundScore(newGameState, remainingExpansions(budget, processed)) <= provenBest) {
+						// Leave the child as a leaf
+						pruned++;
+					} else if(isRepetition(tree, child)) {
+						repetitionsFound++;
+					} else if(isTransposition(transpositions, tree, newGameState, child)) {
+						transpositionsFound++;
+					} else {
+						setFrontierState(tree, child, newGameState, packed);
+						queue.offer(child, tree.getScore(child));
+					}
 				}
 				
 				if(debug_createGameStateGraph) {
-					DebugTreeEntry dte = newTreeEntry.getOrCreateDebugEntry();
+					DebugTreeEntry dte = new DebugTreeEntry();
 					dte.setDebug_preAction(action);
 					dte.setDebug_postContainer(wgsc.getGsc());
+					debugEntries.put(child, dte);
 				}
-								
-				curr.te.getChildren().add(newTreeEntry);
 				
 			}
 			
 			processed++;
 			
-			if(processed > maxProcessed) {
+			if(budget.isExhausted(previouslyProcessed, processed)) {
 				break;
 			}
+			
+			if(budget.isSliceComplete(previouslyProcessed - reusedProcessed, processed - reusedProcessed) 
+					&& isDecided(tree, rootNodes, budget.getDecisionMargin())) {
+				decidedEarly = true;
+				break;
+			}
+			
+			previouslyProcessed = processed;
+			
+			if(FridayUtil.MAX_FRONTIER_SIZE > 0 && queue.size() > FridayUtil.MAX_FRONTIER_SIZE) {
+				frontierTrimmed += trimFrontier(queue, tree, transpositions, packed);
+			}
 
 			// Uncomment this block to output the # of processed game states per second:
 			// if(processed % 100000 == 0) {				
@@ -589,173 +835,314 @@ public class Main {
 		
 		long completeTime = System.nanoTime();
 		
-		BenchmarkEntries.getInstance().addIterations(processed, completeTime - startTimeInNanos);
+		BenchmarkEntries.getInstance().addIterations(processed - reusedProcessed, completeTime - startTimeInNanos);
+		
+		budget.addNodesUsed(processed - reusedProcessed);
+		budget.addNodesReused(reusedProcessed);
+		
+		if(branchAndBound) {
+			// When pruning ends the search before the budget is exhausted, the rest of the budget is saved
+			long saved = 0;
+			if(!budget.hasDeadline() && (pruned > 0 || provenBest == Integer.MAX_VALUE)) {
+				saved = Math.max(0, budget.getMaxNodes() - processed);
+			}
+			BenchmarkEntries.getInstance().addPruning(pruned, saved);
+		}
 		
 		double seconds = ((double)TimeUnit.MILLISECONDS.convert(completeTime - startTimeInNanos, TimeUnit.NANOSECONDS))/1000d;
 		
 		if(LOG_OUT) {
 			System.out.println();
 			NumberFormat nf = NumberFormat.getInstance();
-			System.out.println("Total processed:"+nf.format(processed)+"  "+nf.format((int)(processed/seconds))+" per second");
+			System.out.println("Total processed:"+nf.format(processed)+"  "+nf.format((int)((processed - reusedProcessed)/seconds))+" per second");
+			if(reusedProcessed > 0) {
+				System.out.println("Reused from previous search: "+nf.format(reusedProcessed));
+			}
+			if(transpositions != null) {
+				System.out.println("Transpositions found: "+nf.format(transpositionsFound)+"  unique game states: "+nf.format(transpositions.size()));
+			}
+			if(branchAndBound) {
+				System.out.println("Branch and bound pruned: "+nf.format(pruned)+"  proven best: "+provenBest);
+			}
+			if(frontierTrimmed > 0) {
+				System.out.println("Frontier game states dropped: "+nf.format(frontierTrimmed));
+			}
+			if(repetitionsFound > 0) {
+				System.out.println("Repeated game states on path: "+nf.format(repetitionsFound));
+			}
+			if(lazyExpansion) {
+				System.out.println("Lazily expanded game states built: "+nf.format(lazyBuilt));
+			}
+			if(packed != null) {
+				System.out.println("Packed game states: "+nf.format(packed.getArena().getBytesUsed() / 1024 / 1024)+" MB ("
+						+packed.getArena().getStorage()+")");
+			}
+			if(forcedMoves > 0) {
+				System.out.println("Forced moves applied: "+nf.format(forcedMoves));
+			}
+			if(decidedEarly) {
+				System.out.println("Decided early, of budget: "+nf.format(budget.getMaxNodes()));
+			}
 		}
 		
-		Map<Action, Integer> result = new HashMap<>(); 
-		
-		int deepestTree = Integer.MIN_VALUE; // LOG_OUT only 
+		tree.applyFinalScores();
 		
-		for(Map.Entry<Action, TreeEntry> e : rootActionToTreeEntry.entrySet()) { 
-			applyFinalScore(e.getValue());
-			result.put(e.getKey(), e.getValue().score);
-			
-			if(LOG_OUT) {
-				int depth = getDeepestTreeEntry(e.getValue());
-				if(depth > deepestTree) {
-					deepestTree = depth;
-				}
-			}
+		int[] result = new int[rootNodes.length];
+		for(int x = 0; x < rootNodes.length; x++) { 
+			result[x] = tree.getScore(rootNodes[x]);
 		}
 		
 		if(LOG_OUT) {
-			System.out.println("Deepest tree: "+deepestTree);
+			System.out.println("Deepest tree: "+tree.getMaxDepth());
+		}
+		
+		if(retained != null && packed == null) {
+			retained.queue = queue;
+			retained.transpositions = transpositions;
+			retained.tree = tree;
+			retained.treeGeneration = tree.getGeneration();
+		} else {
+			// Release the game states of the frontier
+			tree.clear();
 		}
 		
 		return result;
 	}
 
-	/**
-	 * The score of a tree is the best score of a child, if a child exists, otherwise it is the life points 
-	 * for the game state.
-	 */
-	private static void applyFinalScore(TreeEntry root) {
-
-		HashMap<TreeEntry, TreeEntry> childToParent = new HashMap<>();
-		
-		List<TreeEntry> leafNodes = new ArrayList<>();
-		{
-			Deque<TreeEntry> stack = new ArrayDeque<TreeEntry>();
-			stack.offer(root);
-			while(stack.size() > 0) {
-				TreeEntry curr = stack.pop();
-				
-				if(curr.getChildren().size() == 0) {
-					leafNodes.add(curr);
-				} else {
-					
-					// Reset the score of all non-leaf nodes to lowest value.
-					curr.score = Integer.MIN_VALUE;
-					
-					for(TreeEntry child : curr.getChildren()) {
-						stack.offer(child);
-						childToParent.put(child, curr);
-					}
-				}
+	/** Whether the best root node leads every other root node by more than 'margin', by the scores of the search so 
+	 * far; used by a sliced search budget (see SearchBudget). A search with a single root is never decided. */
+	private static boolean isDecided(SearchTree tree, int[] rootNodes, int margin) {
+		if(rootNodes.length < 2) { return false; }
+		
+		// Scores are only backed up to the roots at the end of the search, so back up the current scores; the scores
+		// of the leaves are unchanged by this, so the search can continue afterwards.
+		tree.applyFinalScores();
+		
+		long best = Integer.MIN_VALUE;
+		long second = Integer.MIN_VALUE;
+		for(int node : rootNodes) {
+			long score = tree.getScore(node);
+			if(score > best) {
+				second = best;
+				best = score;
+			} else if(score > second) {
+				second = score;
 			}
 		}
-				
-		Deque<TreeEntry> queue = new ArrayDeque<TreeEntry>(leafNodes);
 		
-		while(queue.size() > 0) {
-			TreeEntry curr = queue.poll();
-			
-			TreeEntry parent = childToParent.get(curr);
-			if(parent == null) { continue; }
-			
-			if(curr.score > parent.score) {
-				parent.score = curr.score;
-				queue.offer(parent);
-			}
-		}			
+		return best - second > margin;
 	}
 	
+	/** Estimate the score of the game state that results from applying 'action' to a game state with the given 
+	 * score, without applying it: the life points that the action is known to gain or lose are applied to the
+	 * score, and everything else is assumed to be unchanged. Used by lazy expansion, see FridayUtil.LAZY_EXPANSION. */
+	private static int estimateScore(int score, Action action) {
+		if(score == Integer.MAX_VALUE) { return score; }
+		
+		int lifeChange = 0;
+		if(action.getType() == ActionType.SACRIFICE_LIFE_TO_DRAW) {
+			lifeChange = -1;
+			
+		} else if(action.getType() == ActionType.USE_CARD_ABILITY) {
+			Ability ability = ((UseCardAbilityAction)action).getCard().getAbility();
+			if(ability == Ability.LIFE_ADD_1) {
+				lifeChange = 1;
+			} else if(ability == Ability.LIFE_ADD_2) {
+				lifeChange = 2;
+			}
+		}
+		
+		return score + lifeChange * BucketPriorityQueue.LIFE_POINT_SCORE;
+	}
 	
-	private static void applyFinalScoreRecursive(TreeEntry root) {
+	/** Return the actions that the search expands 'gsc' with: the available actions, less those removed by 
+	 * filterActions(...) and by partial-order reduction (with the given order floor, see PartialOrderReduction).
+	 * Returns null if the game state has no actions. */
+	static List<Action> getSearchActions(GameStateContainer gsc, int orderFloor) {
+		List<Action> actions = calculateAvailableActions(gsc);
 		
-		int bestScore = Integer.MIN_VALUE;
+		if(actions == null || actions.size() == 0) { return null; }
 		
-		for(TreeEntry child : root.getChildren()) {
-			
-			applyFinalScore(child);
-			
-			if(child.score > bestScore) {
-				bestScore = child.score;
-			}
+		if(gsc.isGameState()) {
+			filterActions(actions, gsc.getGameState());
 		}
 		
-		if(bestScore != Integer.MIN_VALUE) {
-			root.score = bestScore;
-		} else {
-			// In this scenario, where the root has no children, the score is the existing score 
-			// that is already in the tree root (eg life points).
+		if(FridayUtil.PARTIAL_ORDER_REDUCTION) {
+			PartialOrderReduction.removeNonCanonical(actions, orderFloor);
 		}
-			
+		
+		return actions;
 	}
-
 	
-
-	/**
-	 * The score of a tree is the best score of a child, if a child exists, otherwise it is the life points for the game state.
-	 */
-	private static int getDeepestTreeEntry(TreeEntry root) {
+	/** Look up the root game states of a new search in the transposition table of the previous search; for each
+	 * game state that was found, its node is stored in 'outReusedRootNodes' (at the index of the root action). 
+	 * 
+	 * The subtrees of the found nodes are then compacted in place in the search tree (the remainder of the previous
+	 * search tree is discarded), and their frontier entries and transposition table entries are moved into the 
+	 * (empty) 'queue' and 'transpositions' of the new search. Returns the number of game states that were expanded
+	 * in the reused subtrees. */
+	private static long reuseRetainedSearchTree(RetainedSearchTree retained, List<WinnableGameStateContainer> rootResults, 
+			int[] outReusedRootNodes, BucketPriorityQueue queue, TranspositionTable transpositions) {
+		
+		TranspositionTable previousTranspositions = retained.transpositions;
+		BucketPriorityQueue previousQueue = retained.queue;
+		SearchTree tree = retained.tree;
+		
+		retained.transpositions = null;
+		retained.queue = null;
+		retained.tree = null;
+		
+		boolean found = false;
+		
+		for(int x = 0; x < rootResults.size(); x++) {
+			WinnableGameStateContainer wgsc = rootResults.get(x);
+			if(wgsc.isWin()) { continue; }
+			
+			int node = previousTranspositions.get(wgsc.getGsc());
+			
+			// Any action may follow a root, so a node whose children were restricted by partial-order reduction 
+			// (see PartialOrderReduction) is not reused as a root
+			if(node != TranspositionTable.NOT_FOUND && tree.getOrderFloor(node) != PartialOrderReduction.NO_FLOOR 
+					&& tree.getFirstChild(node) != SearchTree.NONE) {
+				continue;
+			}
+			
+			if(node != TranspositionTable.NOT_FOUND) {
+				outReusedRootNodes[x] = node;
+				found = true;
+			}
+		}
 		
-		// TODO: Test getDeepestTreeEntryNew as a replacement for this.
+		if(!found) {
+			tree.clear();
+			return 0;
+		}
 		
-		int bestScore = Integer.MIN_VALUE;
+		final int[] remap = tree.retainSubtrees(outReusedRootNodes);
 		
-		if(root.getChildren().size() == 0) {
-			return root.depth;
+		for(int x = 0; x < outReusedRootNodes.length; x++) {
+			if(outReusedRootNodes[x] != SearchTree.NONE) {
+				outReusedRootNodes[x] = remap[outReusedRootNodes[x]];
+				tree.setOrderFloor(outReusedRootNodes[x], PartialOrderReduction.NO_FLOOR);
+			}
 		}
 		
-		for(TreeEntry child : root.getChildren()) {
+		previousTranspositions.forEach( (gsc, node) -> {
+			if(remap[node] != SearchTree.NONE) {
+				transpositions.putIfAbsent(gsc, remap[node]);
+			}
+		});
+		
+		while(previousQueue.size() > 0) {
+			int score = previousQueue.peekScore();
+			int node = previousQueue.poll();
+			if(remap[node] != SearchTree.NONE) {
+				queue.offer(remap[node], score);
+			}
+		}
 		
-			int childDepth = getDeepestTreeEntry(child);
-			if(childDepth > bestScore) {
-				bestScore = childDepth;
+		long reusedProcessed = 0;
+		for(int node = 0; node < tree.size(); node++) {
+			if(tree.getFirstChild(node) != SearchTree.NONE) {
+				reusedProcessed++;
 			}
 		}
 		
-		return bestScore;
+		return reusedProcessed;
 	}
 
-	@SuppressWarnings("unused")
-	private static int getDeepestTreeEntryNew(TreeEntry root) {
-		
-		Deque<TreeEntry> stack = new ArrayDeque<TreeEntry>();
-		
-		stack.offer(root);
-		
-		int overallBestScore = Integer.MIN_VALUE;
-		
-		
-		while(stack.size() > 0) {
-			
-			TreeEntry curr = stack.poll();
-			
-			int currBestScore = Integer.MIN_VALUE;
-			if(curr.getChildren().size() == 0) {
-				currBestScore = root.depth;
+	/** The number of game states that the search may still expand, see upperBoundScore(...) */
+	private static long remainingExpansions(SearchBudget budget, long processed) {
+		// The search stops once more than getMaxNodes() game states have been expanded, see SearchBudget.isExhausted(...)
+		return budget.hasDeadline() ? Long.MAX_VALUE : budget.getMaxNodes() - processed + 1;
+	}
+	
+	/** Drop the lowest scoring game states of the frontier, down to 3/4 of FridayUtil.MAX_FRONTIER_SIZE, and return
+	 * the number dropped. A dropped node remains in the tree as a leaf, so its score still counts towards the score 
+	 * of its parent, but its game state is released (including from the transposition table; if the game state is
+	 * reached again, it is treated as a new game state). */
+	private static int trimFrontier(BucketPriorityQueue queue, SearchTree tree, TranspositionTable transpositions, 
+			PackedGameState packed) {
+		return queue.trimTo(FridayUtil.MAX_FRONTIER_SIZE / 4 * 3, node -> {
+			if(tree.getPendingAction(node) == null && transpositions != null) {
+				transpositions.remove(takeFrontierState(tree, node, packed));
 			} else {
-				curr.getChildren().forEach( e -> { stack.offer(e); });
+				// Release the game state (the game state of a lazily expanded node is that of its parent, which stays 
+				// in the table)
+				tree.setPendingAction(node, null);
+				tree.setState(node, null);
+				tree.setPackedState(node, SearchTree.NONE);
 			}
-			
-			
-			if(currBestScore > overallBestScore) {
-				overallBestScore = currBestScore;
+		});
+	}
+	
+	/** Hold 'gsc' as the game state of the frontier node 'node': in the tree, or if 'packed' is non-null (see
+	 * FridayUtil.PACKED_SEARCH_STATES), as a packed encoding in its arena. */
+	private static void setFrontierState(SearchTree tree, int node, GameStateContainer gsc, PackedGameState packed) {
+		if(packed != null) {
+			tree.setPackedState(node, packed.add(gsc));
+		} else {
+			tree.setState(node, gsc);
+		}
+	}
+	
+	/** Return the game state of the frontier node 'node' (decoding it, if it is packed), and release it from the tree. */
+	private static GameStateContainer takeFrontierState(SearchTree tree, int node, PackedGameState packed) {
+		if(packed != null) {
+			GameStateContainer result = packed.get(tree.getPackedState(node));
+			tree.setPackedState(node, SearchTree.NONE);
+			return result;
+		}
+		
+		GameStateContainer result = tree.getState(node);
+		tree.setState(node, null);
+		return result;
+	}
+	
+	/** If the game state of 'node' repeats that of one of its nearest FridayUtil.REPETITION_CHECK_DEPTH ancestors, 
+	 * mark the node as a transposition of that ancestor (rather than expanding it) and return true. 
+	 * 
+	 * The actions in between are a cycle (for example, the COPY_1x/BELOW_THE_PILE_1x deck cycle described in 
+	 * detectAndAmeliorateCycle(...)) which cannot improve on the ancestor. This catches cycles without the 
+	 * transposition table (or when the ancestor's entry was dropped from it), by comparing the Zobrist hashes of the
+	 * path only: the game states of expanded nodes are no longer held by the tree, so a match is not confirmed with
+	 * a lossless comparison. */
+	private static boolean isRepetition(SearchTree tree, int node) {
+		final long fingerprint = tree.getFingerprint(node);
+		
+		int ancestor = tree.getParent(node);
+		for(int x = 0; x < FridayUtil.REPETITION_CHECK_DEPTH && ancestor != SearchTree.NONE; x++) {
+			
+			// As with isTransposition(...), an ancestor that skipped activations that this node may not is not a match
+			if(tree.getFingerprint(ancestor) == fingerprint && tree.getOrderFloor(ancestor) <= tree.getOrderFloor(node)) {
+				tree.setTransposition(node, ancestor);
+				return true;
 			}
 			
+			ancestor = tree.getParent(ancestor);
 		}
-
-		return overallBestScore;
 		
+		return false;
+	}
+	
+	/** If a game state that is equal to 'gsc' has previously been added to the search tree, then link 'node' to 
+	 * the node of that game state and return true (in which case 'node' should not be expanded). Otherwise, 
+	 * add 'gsc' to the transposition table and return false. */
+	private static boolean isTransposition(TranspositionTable transpositions, SearchTree tree, GameStateContainer gsc, int node) {
+		if(transpositions == null) { return false; }
 		
-//		for(TreeEntry child : root.getChildren()) {
-//		
-//			int childDepth = getDeepestTreeEntry(child);
-//			if(childDepth > bestScore) {
-//				bestScore = childDepth;
-//			}
-//		}
-//		
-//		return bestScore;
+		int existing = transpositions.putIfAbsent(gsc, node);
+		if(existing == TranspositionTable.NOT_FOUND) { return false; }
+		
+		if(tree.getOrderFloor(existing) > tree.getOrderFloor(node)) {
+			// The existing node skips activations that this node may not (see PartialOrderReduction): if the existing
+			// node has not yet been expanded then lift its restriction, otherwise expand this node as well.
+			if(tree.getState(existing) == null && tree.getPackedState(existing) == SearchTree.NONE) { return false; }
+			tree.setOrderFloor(existing, tree.getOrderFloor(node));
+		}
+		
+		tree.setTransposition(node, existing);
+		return true;
 	}
 
 		
@@ -768,6 +1155,19 @@ public class Main {
 
 		List<GameStateContainer> previousGameStates = new ArrayList<>();
 		
+		SearchEngine engine;
+		if(FridayUtil.SEARCH_ENGINE == SearchEngineType.MCTS) {
+			engine = new MctsSearchEngine();
+		} else if(FridayUtil.SEARCH_ENGINE == SearchEngineType.DETERMINIZED) {
+			engine = new DeterminizedSearchEngine();
+		} else if(FridayUtil.SEARCH_ENGINE == SearchEngineType.ITERATIVE_DEEPENING) {
+			engine = new IterativeDeepeningSearchEngine();
+		} else {
+			engine = new BestFirstSearchEngine();
+		}
+		
+		AdaptiveBudget budgets = new AdaptiveBudget();
+		
 		// Note: You can alter the game state at this point for debugging purposes, for example:
 		// gs = DebugUtil.decreasePhase(gs);
 		// gs = DebugUtil.moveFromHazardStackToFightStack(Ability.DOUBLE_1x, gs);		
@@ -786,7 +1186,7 @@ public class Main {
 				if(availableActions.size() == 0) {
 					// Game over: player has lost.
 					System.out.println("You lose!");
-					return new DevMainResult(false, gs); 
+					return new DevMainResult(false, gs, budgets.getGameNodes()); 
 				
 				}
 
@@ -796,7 +1196,9 @@ public class Main {
 				// In the non-user case, we only need to evaluate best action if there is more than one action.
 				Action actionBeingTaken = availableActions.get(0); // This should not be null.
 				if(availableActions.size() > 1 && !userUI) {
-					Map<Action, Integer> m = evaluateBestAction(gs);
+					SearchBudget budget = budgets.createBudget();
+					Map<Action, Integer> m = engine.evaluateBestAction(gs, budget);
+					budgets.decisionComplete(budget);
 					actionBeingTaken = null;
 					Integer actionScore =  null;
 	
@@ -833,9 +1235,9 @@ public class Main {
 					System.out.println("You win!");
 					// On win, return the game state just before the win (because there is no win game state)
 					if(gs.isGameState()) {
-						return new DevMainResult(true, new GameStateContainer(gs.getGameState()));
+						return new DevMainResult(true, new GameStateContainer(gs.getGameState()), budgets.getGameNodes());
 					} else {
-						return new DevMainResult(true, new GameStateContainer(gs.getPirateGameState()));
+						return new DevMainResult(true, new GameStateContainer(gs.getPirateGameState()), budgets.getGameNodes());
 					}
 					
 				} else {
@@ -890,12 +1292,12 @@ public class Main {
 		if(gsParam.isGameState()) {
 			
 			GameState gsProper = gsParam.getGameState();
-			containsStop = gsProper.getLhsFightCards().findCardByAbility(Ability.STOP) != null 
+			containsStop = gsProper.getLhsFightCards().containsAbility(Ability.STOP) 
 					&& gsProper.getState() == State.SACRIFICE_LIFE_TO_DRAW;
 		} else {
 			
 			PirateGameState gsPirate = gsParam.getPirateGameState();
-			containsStop = gsPirate.getLhsFightCards().findCardByAbility(Ability.STOP) != null 
+			containsStop = gsPirate.getLhsFightCards().containsAbility(Ability.STOP) 
 					&& gsPirate.getState() == PirateState.SACRIFICE_LIFE_TO_DRAW;			
 		}
 		
@@ -910,7 +1312,7 @@ public class Main {
 			GameState responseGs = result.getGsc().getGameState();
 			
 			if(responseGs.getState() == State.SACRIFICE_LIFE_TO_DRAW && containsStop) {
-				boolean postContainsStop =  responseGs.getLhsFightCards().findCardByAbility(Ability.STOP) != null &&
+				boolean postContainsStop =  responseGs.getLhsFightCards().containsAbility(Ability.STOP) &&
 						responseGs.getState() == State.SACRIFICE_LIFE_TO_DRAW;
 
 				// Switch to draw free cards if the STOP card was destroyed/moved
@@ -932,7 +1334,7 @@ public class Main {
 			PirateGameState responseGs = result.getGsc().getPirateGameState();
 			
 			if(responseGs.getState() == PirateState.SACRIFICE_LIFE_TO_DRAW && containsStop) {
-				boolean postContainsStop =  responseGs.getLhsFightCards().findCardByAbility(Ability.STOP) != null &&
+				boolean postContainsStop =  responseGs.getLhsFightCards().containsAbility(Ability.STOP) &&
 						responseGs.getState() == PirateState.SACRIFICE_LIFE_TO_DRAW;
 
 				// Switch to draw free cards if the STOP card was destroyed/moved
@@ -960,7 +1362,7 @@ public class Main {
 	
 	
 	/** Convert an Action object to its corresponding response. */
-	private static ActionResponse convertActionToResponse(Action a) {	
+	static ActionResponse convertActionToResponse(Action a) {	
 		
 		if(a.getType() == ActionType.DESTROY_CARDS_WITH_PAID_LIFE) {
 			DestroyCardsWithPaidLifeActionResponse dcwplar = new DestroyCardsWithPaidLifeActionResponse(a);
@@ -1194,7 +1596,7 @@ public class Main {
 		
 
 	/** Wrapper around non-pirate and pirate calculateAvailableActions(...) */
-	private static List<Action> calculateAvailableActions(GameStateContainer container) {
+	static List<Action> calculateAvailableActions(GameStateContainer container) {
 		
 		if(container.isGameState()) {
 			return calculateAvailableActionsNonPirate(container.getGameState());
@@ -1608,11 +2010,12 @@ public class Main {
 		
 		// If we are not in a multistage ability, then process the cards as usual
 
-		HashMap<Integer /* physical id*/, Boolean /* included in btp, true = yes, null = no */> belowThePileMap = new HashMap<>();	
-		HashMap<Integer /* physical id*/, Boolean /* included in destroy, true = yes, null = no*/> destroyMap = new HashMap<>();
-		HashMap<Integer /* physical id*/, Boolean /* included in exchange, true = yes, null = no */> exchangeX1Map = new HashMap<>();
-		HashMap<Integer /* physical id*/, Boolean /* included in exchange, true = yes, null = no */> exchangeX2Map = new HashMap<>();
-		HashMap<Integer /* physical id*/, Boolean /* included in exchange, true = yes, null = no */> doubleMap = new HashMap<>();
+		// The cards that have already been targeted by each ability, as CardSet bits (by physical card id)
+		long belowThePileTargets = 0;
+		long destroyTargets = 0;
+		long exchangeX1Targets = 0;
+		long exchangeX2Targets = 0;
+		long doubleTargets = 0;
 		
 		for(Card c : cardsOnBothSides) {
 			Ability a = c.getAbility();
@@ -1676,41 +2079,39 @@ public class Main {
 					// Can't destroy itself
 					if(d.getPhysicalCardId() == c.getPhysicalCardId()) { continue; }
 					
-					boolean alreadyTargetedForDestruction = destroyMap.get(d.getPhysicalCardId()) != null ? true : false;
+					boolean alreadyTargetedForDestruction = CardSet.contains(destroyTargets, d.getPhysicalCardId());
 					
 					if(!alreadyTargetedForDestruction) {
 						availableActions.add(new UseCardAbilityWithTargetAction(c, d));
-						destroyMap.put(d.getPhysicalCardId(), true);
+						destroyTargets |= CardSet.bit(d.getPhysicalCardId());
 					}
 				}
 			}
 			
 			if(a == Ability.DOUBLE_1x) {
 				
+				final int[] fightingValues = CardTable.getFightingValues();
+				final CardSet doubled = gsNew != null ? gsNew.getLhsOrRhsFightingCardDoubled() : pgsNew.getLhsOrRhsFightingCardDoubled();
+				
 				// Find the card with the highest fighting value, no point in doubling anything else
-				Card highestFightingValue = null;
+				int highestFightingValueId = -1;
 				for(Card d : cardsOnBothSides) {
+					int id = d.getPhysicalCardId();
 
 					// Can't double yourself, as per rules, and can't double twice on same card
-					if(gsNew != null) {
-						if(d.getPhysicalCardId() == c.getPhysicalCardId() || gsNew.isFightingCardDoubled(d)) { continue; } 						
-					} else {
-						if(d.getPhysicalCardId() == c.getPhysicalCardId() || pgsNew.isFightingCardDoubled(d)) { continue; }
-					}
+					if(id == c.getPhysicalCardId() || doubled.contains(id)) { continue; }
 					
-					
-					if(highestFightingValue == null) { highestFightingValue = d; }
-					else if(d.getFightingValue() > highestFightingValue.getFightingValue()) {
-						highestFightingValue = d;
+					if(highestFightingValueId == -1 || fightingValues[id] > fightingValues[highestFightingValueId]) {
+						highestFightingValueId = id;
 					}							
 				}
 				
 				// If we found it, and it's > 0
-				if(highestFightingValue != null && highestFightingValue.getFightingValue() > 0) {
-					boolean alreadyTargetedForDouble = doubleMap.get(highestFightingValue.getPhysicalCardId()) != null ? true : false;
+				if(highestFightingValueId != -1 && fightingValues[highestFightingValueId] > 0) {
+					boolean alreadyTargetedForDouble = CardSet.contains(doubleTargets, highestFightingValueId);
 					if(!alreadyTargetedForDouble) {
-						availableActions.add(new UseCardAbilityWithTargetAction(c, highestFightingValue));
-						doubleMap.put(highestFightingValue.getPhysicalCardId(), true);
+						availableActions.add(new UseCardAbilityWithTargetAction(c, CardTable.get(highestFightingValueId)));
+						doubleTargets |= CardSet.bit(highestFightingValueId);
 					}
 				}
 			}
@@ -1723,10 +2124,9 @@ public class Main {
 			
 			if(a == Ability.BELOW_THE_PILE_1x) {
 				
-				// This map is only populated if there are no more fighting cards that may be drawn
-				HashMap<Integer /*physical card id*/, Boolean> cardsOnLhs = null; 
+				// This set (CardSet bits) is only populated if there are no more fighting cards that may be drawn
+				long cardsOnLhs = 0; 
 				if(!canDrawXFightingCards(1, gsNew, pgsNew) ) {
-					cardsOnLhs = new HashMap<>();
 					ImmutableGrowableListCards lhsCards;
 					if(gsNew != null) {
 						lhsCards = gsNew.getLhsFightCards();
@@ -1734,7 +2134,7 @@ public class Main {
 						lhsCards = pgsNew.getLhsFightCards();
 					}
 					for(int x = 0; x < lhsCards.size(); x++) {
-						cardsOnLhs.put( lhsCards.get(x).getPhysicalCardId(), true);
+						cardsOnLhs |= CardSet.bit(lhsCards.getPhysicalCardId(x));
 					}
 				}
 				
@@ -1742,15 +2142,15 @@ public class Main {
 					// Can't below the pile yourself, as per rules
 					if(d.getPhysicalCardId() == c.getPhysicalCardId() ) { continue; } 
 					
-					boolean alreadyTargetedForBtp = belowThePileMap.get(d.getPhysicalCardId()) != null ? true : false;
+					boolean alreadyTargetedForBtp = CardSet.contains(belowThePileTargets, d.getPhysicalCardId());
 					
 					if(!alreadyTargetedForBtp) {
 						// If no more cards can be drawn, then we can't BTP from the LHS
-						if(cardsOnLhs == null || cardsOnLhs.get(d.getPhysicalCardId()) == null) {
+						if(!CardSet.contains(cardsOnLhs, d.getPhysicalCardId())) {
 							availableActions.add(new UseCardAbilityWithTargetAction(c, d));
 						}
 						
-						belowThePileMap.put(d.getPhysicalCardId(), true); // We mark it true here, so that we don't do the above calculations again
+						belowThePileTargets |= CardSet.bit(d.getPhysicalCardId()); // We mark it true here, so that we don't do the above calculations again
 					}
 					
 				}
@@ -1770,11 +2170,11 @@ public class Main {
 						// Can't exchange yourself, as per rules
 						if(d.getPhysicalCardId() == c.getPhysicalCardId() ) { continue; }
 						
-						boolean alreadyTargetedForExchanged = exchangeX1Map.get(d.getPhysicalCardId()) != null ? true : false;					
+						boolean alreadyTargetedForExchanged = CardSet.contains(exchangeX1Targets, d.getPhysicalCardId());
 						
 						if(!alreadyTargetedForExchanged) {
 							availableActions.add(new UseCardAbilityWithTargetAction(c, d));
-							exchangeX1Map.put(d.getPhysicalCardId(), true);
+							exchangeX1Targets |= CardSet.bit(d.getPhysicalCardId());
 						}
 					}
 				}
@@ -1786,11 +2186,11 @@ public class Main {
 						// Can't exchange yourself, as per rules
 						if(d.getPhysicalCardId() == c.getPhysicalCardId() ) { continue; }
 	
-						boolean alreadyTargetedForExchanged = exchangeX2Map.get(d.getPhysicalCardId()) != null ? true : false;
+						boolean alreadyTargetedForExchanged = CardSet.contains(exchangeX2Targets, d.getPhysicalCardId());
 	
 						if(!alreadyTargetedForExchanged) {
 							availableActions.add(new UseCardAbilityWithTargetAction(c, d));
-							exchangeX2Map.put(d.getPhysicalCardId(), true);
+							exchangeX2Targets |= CardSet.bit(d.getPhysicalCardId());
 						}
 					}
 				}
@@ -1821,7 +2221,7 @@ public class Main {
 	
 	
 	/** Create an initial game state from the beginning of a new game. */
-	private static GameState initializeGameState(AllCards cr) {
+	static GameState initializeGameState(AllCards cr) {
 
 		// Fighting cards
 		ListCards fightingCards;
@@ -2016,7 +2416,8 @@ public class Main {
 					FridayUtil.logToFile(randomSeed
 							+ "," + sdf.format(new Date())
 							+ "," + GameStateContainerUtil.getLifePoints(result.getFinalGameState()) 
-							+ "," + phaseScore,
+							+ "," + phaseScore
+							+ "," + result.getGameNodes(),
 							FridayUtil.RESULT_LOG);
 					
 					FridayUtil.logToFile("Passed on random seed "+randomSeed+" ["+seedIncrement+"]", FridayUtil.RUN_LOG);
@@ -2047,10 +2448,14 @@ public class Main {
 		private final boolean won;
 		
 		private final GameStateContainer finalGameState;
+		
+		/** The number of game states expanded by the searches of the game */
+		private final long gameNodes;
 
-		public DevMainResult(boolean won, GameStateContainer finalGameState) {
+		public DevMainResult(boolean won, GameStateContainer finalGameState, long gameNodes) {
 			this.won = won;
 			this.finalGameState = finalGameState;
+			this.gameNodes = gameNodes;
 		}
 		
 		public boolean isWon() {
@@ -2061,6 +2466,10 @@ public class Main {
 			return finalGameState;
 		}
 		
+		public long getGameNodes() {
+			return gameNodes;
+		}
+		
 		
 	}
 	
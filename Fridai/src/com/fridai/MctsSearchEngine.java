@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.BucketPriorityQueue;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.RandomAdvanced;
+
+/**
+ * A Monte Carlo Tree Search engine, using UCT (UCB1 applied to trees): each iteration selects a path through the
+ * tree by UCB1, adds one child to the end of the path, plays random actions from the child's game state (a 
+ * 'rollout'), and adds the rollout's reward to each node of the path.
+ * 
+ * The reward of a rollout is 1 for a win, 0 for a loss, and otherwise (when ROLLOUT_DEPTH actions have been played 
+ * without the game ending) Main.score(...) of the final game state, scaled to between 0 and 1.
+ * 
+ * A rollout does not keep the game states that it passes through, and does not create tree nodes, so most of the 
+ * game states that are generated are garbage as soon as the next one is. Each call to Main.doAction(...), in the 
+ * tree or in a rollout, counts as one game state against the search budget (as does an iteration that ends at a
+ * win or loss that is already in the tree): a rollout that ends early, at a win or at a game state without 
+ * actions, is only charged for the actions that it played.
+ * 
+ * As with the best-first search, a tree node holds a single outcome of its action: if the action draws cards, then
+ * the cards drawn when the node was created are the ones that are searched.
+ * 
+ * The rollout actions, and the shuffles of the game states of the search, are drawn from a RandomAdvanced of the 
+ * search, seeded from the state of the game's random number generator (as in DeterminizedSearchEngine), so the 
+ * search does not consume any numbers from the game's random number stream, and is deterministic for a given seed
+ * (when the search budget is a number of game states).
+ * 
+ * The score of an action is the number of times it was visited (the action with the most visits is taken), 
+ * or Integer.MAX_VALUE if it wins the game.
+ **/
+public final class MctsSearchEngine implements SearchEngine {
+
+	/** The exploration constant of UCB1 (for rewards between 0 and 1) */
+	private static final double EXPLORATION = Math.sqrt(2);
+
+	/** The maximum number of random actions of a rollout */
+	private static final int ROLLOUT_DEPTH = 20;
+	
+	/** The largest value of Main.score(...) for a game state that has not been won */
+	private static final double MAX_SCORE = 23d * BucketPriorityQueue.LIFE_POINT_SCORE;
+	
+	public MctsSearchEngine() {
+	}
+	
+	@Override
+	public Map<Action, Integer> evaluateBestAction(GameStateContainer gsc, SearchBudget budget) {
+		
+		RandomAdvanced previous = FridayUtil.UNIVERAL_RANDOM.get();
+		RandomAdvanced random = new RandomAdvanced(previous.getRandomAdvancedSeed() * 1000003L + previous.getNumbersGenerated(), 0);
+		FridayUtil.UNIVERAL_RANDOM.set(random);
+		
+		try {
+			return search(gsc, budget, random);
+		} finally {
+			FridayUtil.UNIVERAL_RANDOM.set(previous);
+		}
+	}
+	
+	/** Run the search, drawing random numbers from 'random' (which is the thread's random number generator for the 
+	 * duration of the search) */
+	private static Map<Action, Integer> search(GameStateContainer gsc, SearchBudget budget, RandomAdvanced random) {
+		
+		List<Action> rootActions = Main.calculateAvailableActions(gsc);
+		
+		Node root = new Node(gsc, false, filteredActions(gsc, new ArrayList<>(rootActions)));
+		
+		long processed = 0;
+		
+		// -1 so that the deadline (if any) is checked before the first iteration
+		long previouslyProcessed = -1;
+		
+		// The number of actions played by the most recent rollout
+		final int[] rolloutActions = new int[1];
+		
+		while(!budget.isExhausted(previouslyProcessed, processed)) {
+			
+			previouslyProcessed = processed;
+			
+			List<Node> path = new ArrayList<>();
+			
+			// Selection: descend through fully expanded nodes
+			Node curr = root;
+			path.add(curr);
+			while(curr.untriedActions.isEmpty() && !curr.children.isEmpty()) {
+				curr = curr.selectChild();
+				path.add(curr);
+			}
+			
+			// Expansion: add one child for an untried action
+			if(!curr.untriedActions.isEmpty()) {
+				Action action = curr.untriedActions.remove(curr.untriedActions.size()-1);
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), curr.gsc);
+				
+				Node child;
+				if(wgsc.isWin()) {
+					child = new Node(null, true, new ArrayList<>());
+				} else {
+					child = new Node(wgsc.getGsc(), false, filteredActions(wgsc.getGsc(), Main.calculateAvailableActions(wgsc.getGsc())));
+				}
+				curr.children.add(child);
+				curr.childActions.add(action);
+				
+				curr = child;
+				path.add(curr);
+			}
+			
+			// Simulation
+			processed++;
+			
+			double reward;
+			if(curr.win) {
+				reward = 1;
+			} else if(curr.children.isEmpty() && curr.untriedActions.isEmpty()) {
+				reward = 0;
+			} else {
+				reward = rollout(curr.gsc, random, rolloutActions);
+				processed += rolloutActions[0];
+			}
+			
+			// Backpropagation
+			for(Node n : path) {
+				n.visits++;
+				n.totalReward += reward;
+			}
+		}
+		
+		budget.addNodesUsed(processed);
+		
+		// Actions that were not searched (because they were filtered, or the budget was exhausted first) score 0
+		Map<Action, Integer> result = new HashMap<>();
+		for(Action action : rootActions) {
+			result.put(action, 0);
+		}
+		for(int x = 0; x < root.children.size(); x++) {
+			Node child = root.children.get(x);
+			result.put(root.childActions.get(x), child.win ? Integer.MAX_VALUE : child.visits);
+		}
+		
+		return result;
+	}
+	
+	/** Remove the actions of 'actions' that the search should not consider, see Main.filterActions(...) */
+	private static List<Action> filteredActions(GameStateContainer gsc, List<Action> actions) {
+		if(actions.size() > 0 && gsc.isGameState()) {
+			Main.filterActions(actions, gsc.getGameState());
+		}
+		return actions;
+	}
+	
+	/** Play up to ROLLOUT_DEPTH random actions from gsc, and return the reward. The number of actions that were 
+	 * played (calls to Main.doAction(...)) is stored in actionsPlayed[0]. */
+	private static double rollout(GameStateContainer gsc, RandomAdvanced random, int[] actionsPlayed) {
+		
+		GameStateContainer curr = gsc;
+		
+		actionsPlayed[0] = 0;
+		
+		for(int depth = 0; depth < ROLLOUT_DEPTH; depth++) {
+			List<Action> actions = Main.calculateAvailableActions(curr);
+			if(actions.size() == 0) {
+				return 0;
+			}
+			
+			Action action = actions.get(random.nextInt(actions.size()));
+			
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), curr);
+			actionsPlayed[0]++;
+			if(wgsc.isWin()) {
+				return 1;
+			}
+			
+			curr = wgsc.getGsc();
+		}
+		
+		return Math.max(0, Math.min(1, Main.score(curr) / MAX_SCORE));
+	}
+	
+	/** A node of the search tree: a game state, and the statistics of the rollouts that have passed through it. */
+	private static final class Node {
+		
+		/** null if 'win' is true */
+		final GameStateContainer gsc;
+		
+		final boolean win;
+		
+		final List<Action> untriedActions;
+		
+		final List<Node> children = new ArrayList<>();
+		
+		/** The action of each child, in the same order as 'children' */
+		final List<Action> childActions = new ArrayList<>();
+		
+		int visits = 0;
+		
+		double totalReward = 0;
+		
+		Node(GameStateContainer gsc, boolean win, List<Action> untriedActions) {
+			this.gsc = gsc;
+			this.win = win;
+			this.untriedActions = untriedActions;
+		}
+		
+		Node selectChild() {
+			Node best = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			
+			double logVisits = Math.log(visits);
+			
+			for(Node child : children) {
+				double value = child.totalReward / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+				if(value > bestValue) {
+					best = child;
+					bestValue = value;
+				}
+			}
+			
+			return best;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.ConcurrentSearchTree;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.MultiQueue;
+import com.fridai.util.RandomAdvanced;
+import com.fridai.util.TranspositionTable;
+
+/**
+ * A tree parallel version of Main.evaluateBestAction(...): all threads expand game states of a single shared
+ * search tree (a ConcurrentSearchTree), by polling from a shared frontier (a MultiQueue), so the work is balanced
+ * between the threads no matter how the tree is shaped (unlike ParallelRootSearch, where a thread that is
+ * assigned a dominant root action may do most of the work).
+ *
+ * Since the MultiQueue only approximately polls in score order, the set of game states expanded for a given
+ * budget differs from that of the sequential search; see SearchBenchmark for a measure of the resulting
+ * loss in quality.
+ *
+ * The actions of a game state are generated as in the sequential search (Main.getSearchActions(...), including 
+ * PartialOrderReduction), forced moves are applied by a ForcedMoveChain of each thread (each forced move counts 
+ * against the budget), and each new game state is checked for a repeat of one of its ancestors. 
+ * 
+ * The transposition table is split into TRANSPOSITION_STRIPES independently locked tables, by game state hash. 
+ * Unlike the sequential search, a transposition whose existing node skips activations that the new node may not is
+ * never linked (the existing node may already be being expanded by another thread, so its restriction cannot be 
+ * lifted): the new node is expanded as well. Nor is the game state at the end of a forced move chain looked up in the
+ * table, as whether the existing node has been expanded is not known to other threads.
+ *
+ * The results are not deterministic, as the order in which game states are expanded depends on thread scheduling.
+ **/
+public final class MultiQueueSearch {
+
+	/** The number of independent heaps of the MultiQueue, per thread */
+	private static final int QUEUES_PER_THREAD = 2;
+
+	/** Must be a power of 2 */
+	private static final int TRANSPOSITION_STRIPES = 64;
+
+	private MultiQueueSearch() {
+	}
+
+	/** Score all of the available actions of gsParam, using 'threads' threads. */
+	public static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam, SearchBudget budget, int threads) {
+
+		List<Action> rootActions = Main.calculateAvailableActions(gsParam);
+
+		final ConcurrentSearchTree tree = new ConcurrentSearchTree();
+
+		final MultiQueue queue = new MultiQueue(threads*QUEUES_PER_THREAD);
+
+		TranspositionTable[] transpositions = null;
+		if(FridayUtil.USE_TRANSPOSITION_TABLE) {
+			transpositions = new TranspositionTable[TRANSPOSITION_STRIPES];
+			for(int x = 0; x < transpositions.length; x++) {
+				transpositions[x] = new TranspositionTable(4*1024);
+			}
+		}
+		final TranspositionTable[] finalTranspositions = transpositions;
+
+		int[] rootNodes = new int[rootActions.size()];
+
+		for(int x = 0; x < rootActions.size(); x++) {
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(rootActions.get(x)), gsParam);
+
+			if(wgsc.isWin()) {
+				rootNodes[x] = tree.addNode(ConcurrentSearchTree.NONE, Integer.MAX_VALUE);
+			} else {
+				GameStateContainer ngs = wgsc.getGsc();
+				rootNodes[x] = tree.addNode(ConcurrentSearchTree.NONE, Main.score(ngs));
+				addToFrontier(tree, queue, finalTranspositions, ngs, rootNodes[x]);
+			}
+		}
+
+		final AtomicLong processed = new AtomicLong(0);
+		final AtomicInteger busy = new AtomicInteger(0);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+
+		RandomAdvanced random = FridayUtil.UNIVERAL_RANDOM.get();
+		long baseSeed = random.getRandomAdvancedSeed() * 1000003L + random.getNumbersGenerated();
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for(int x = 0; x < threads; x++) {
+			final long seed = baseSeed * 31L + x;
+			tasks.add( () -> {
+				work(tree, queue, finalTranspositions, budget, processed, busy, stop, seed);
+				return null;
+			});
+		}
+
+		for(Future<Void> future : ParallelRootSearch.getPool(threads).invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		budget.addNodesUsed(processed.get());
+
+		tree.applyFinalScores();
+
+		Map<Action, Integer> result = new HashMap<>();
+		for(int x = 0; x < rootActions.size(); x++) {
+			result.put(rootActions.get(x), tree.getScore(rootNodes[x]));
+		}
+
+		return result;
+	}
+
+	/** Runs on each pool thread: expand game states from the shared frontier until the budget is exhausted, or
+	 * until the frontier is empty and no other thread is expanding a game state (which could add to it). */
+	private static void work(ConcurrentSearchTree tree, MultiQueue queue, TranspositionTable[] transpositions,
+			SearchBudget budget, AtomicLong processed, AtomicInteger busy, AtomicBoolean stop, long seed) {
+
+		RandomAdvanced previous = FridayUtil.UNIVERAL_RANDOM.get();
+		FridayUtil.UNIVERAL_RANDOM.set(new RandomAdvanced(seed, 0));
+
+		ForcedMoveChain chain = new ForcedMoveChain();
+
+		try {
+			while(!stop.get()) {
+
+				// Mark this thread as busy before polling, so that no other thread can see an empty frontier
+				// and no busy threads, while this thread is about to add children to the frontier.
+				busy.incrementAndGet();
+
+				int curr = queue.poll();
+				if(curr == MultiQueue.EMPTY) {
+					if(busy.decrementAndGet() == 0 && queue.size() == 0) {
+						break;
+					}
+					Thread.yield();
+					continue;
+				}
+
+				int expanded;
+				try {
+					expanded = expand(tree, queue, transpositions, chain, curr);
+				} finally {
+					busy.decrementAndGet();
+				}
+
+				long now = processed.addAndGet(expanded);
+				if(budget.isExhausted(now - expanded, now)) {
+					stop.set(true);
+				}
+			}
+
+		} finally {
+			FridayUtil.UNIVERAL_RANDOM.set(previous);
+		}
+	}
+
+	/** Expand the node, and return the number of game states that count against the budget: the node, plus the 
+	 * forced moves that were applied to it. */
+	private static int expand(ConcurrentSearchTree tree, MultiQueue queue, TranspositionTable[] transpositions, 
+			ForcedMoveChain chain, int curr) {
+
+		GameStateContainer currGs = tree.getState(curr);
+
+		// Once expanded, the tree no longer needs the game state
+		tree.setState(curr, null);
+
+		List<Action> actions = Main.getSearchActions(currGs, tree.getOrderFloor(curr));
+
+		// As in Main.searchRoots(...), the node stands for the whole chain of forced moves, and takes the score of the
+		// game state at the end of it
+		chain.apply(currGs, actions, tree.getOrderFloor(curr));
+		
+		if(chain.isWin()) {
+			tree.setScore(curr, Integer.MAX_VALUE);
+			return 1 + chain.getLength();
+		}
+		
+		currGs = chain.getEnd();
+		actions = chain.getActions();
+		tree.setExpanded(curr, currGs.getZobristHash(), chain.getOrderFloor());
+		
+		if(chain.getLength() > 0) {
+			tree.setScore(curr, Main.score(currGs));
+			
+			int ancestor = findRepetition(tree, tree.getParent(curr), currGs.getZobristHash(), chain.getOrderFloor());
+			if(ancestor != ConcurrentSearchTree.NONE) {
+				tree.setTransposition(curr, ancestor);
+				return 1 + chain.getLength();
+			} else if(chain.isCycle()) {
+				return 1 + chain.getLength();
+			}
+		}
+
+		if(actions == null) { return 1 + chain.getLength(); }
+
+		for(Action action : actions) {
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), currGs);
+
+			if(wgsc.isWin()) {
+				tree.addNode(curr, Integer.MAX_VALUE);
+			} else {
+				GameStateContainer newGameState = wgsc.getGsc();
+				int child = tree.addNode(curr, Main.score(newGameState));
+				
+				int orderFloor = FridayUtil.PARTIAL_ORDER_REDUCTION ? PartialOrderReduction.getOrderFloor(action) 
+						: PartialOrderReduction.NO_FLOOR;
+				tree.setOrderFloor(child, orderFloor);
+				
+				int ancestor = findRepetition(tree, curr, newGameState.getZobristHash(), orderFloor);
+				if(ancestor != ConcurrentSearchTree.NONE) {
+					tree.setTransposition(child, ancestor);
+				} else {
+					addToFrontier(tree, queue, transpositions, newGameState, child);
+				}
+			}
+		}
+		
+		return 1 + chain.getLength();
+	}
+
+	/** As Main.isRepetition(...): return the first of the FridayUtil.REPETITION_CHECK_DEPTH nodes from 'ancestor' up
+	 * (towards the root) that was expanded from the game state of 'fingerprint', with an order floor no higher than
+	 * 'orderFloor', or NONE if there is none. The nodes must have been expanded (see 
+	 * ConcurrentSearchTree.setExpanded(...)). */
+	private static int findRepetition(ConcurrentSearchTree tree, int ancestor, long fingerprint, int orderFloor) {
+		for(int x = 0; x < FridayUtil.REPETITION_CHECK_DEPTH && ancestor != ConcurrentSearchTree.NONE; x++) {
+			
+			if(tree.getExpandedFingerprint(ancestor) == fingerprint && tree.getExpandedOrderFloor(ancestor) <= orderFloor) {
+				return ancestor;
+			}
+			
+			ancestor = tree.getParent(ancestor);
+		}
+		
+		return ConcurrentSearchTree.NONE;
+	}
+
+	/** Add the node to the frontier, unless its game state is a transposition of an existing node whose order floor
+	 * is no higher than its own (in which case, the node is linked to the existing node instead). */
+	private static void addToFrontier(ConcurrentSearchTree tree, MultiQueue queue, TranspositionTable[] transpositions,
+			GameStateContainer gsc, int node) {
+
+		if(transpositions != null) {
+			TranspositionTable stripe = transpositions[(int)(gsc.getZobristHash() >>> 58) & (TRANSPOSITION_STRIPES-1)];
+
+			int existing;
+			boolean transposition;
+			synchronized(stripe) {
+				existing = stripe.putIfAbsent(gsc, node);
+				
+				// The order floor of the existing node was set before it was added to the table, see class description
+				transposition = existing != TranspositionTable.NOT_FOUND 
+						&& tree.getOrderFloor(existing) <= tree.getOrderFloor(node);
+			}
+
+			if(transposition) {
+				tree.setTransposition(node, existing);
+				return;
+			}
+		}
+
+		tree.setState(node, gsc);
+		queue.offer(node, tree.getScore(node));
+	}
+
+}
@@ -0,0 +1,436 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fridai.GameState.State;
+import com.fridai.PirateGameState.PirateState;
+import com.fridai.util.CardSet;
+import com.fridai.util.CardTable;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.ImmutableGrowableListCards;
+import com.fridai.util.ListCards;
+import com.fridai.util.PackedStateArena;
+
+/**
+ * A compact byte encoding of game states, used to hold the game states of the search (see
+ * FridayUtil.PACKED_SEARCH_STATES) in a PackedStateArena rather than as a graph of ListCards,
+ * ImmutableGrowableListCards, CardSet and AbilityObject objects per game state.
+ *
+ * The encoding of a game state is a header (the type and state, the life points, the flags of the nullable
+ * fields, and the index of the SlowGameState), followed by the used/doubled maps as 64-bit masks (physical card
+ * ids are < 64, see CardSet), and then by each card list as a length byte and one byte per physical card id.
+ *
+ * SlowGameState is (by design) shared between many game states, and so is not encoded: each distinct
+ * SlowGameState is stored once in a table of this object, and the encoding holds its index in that table. Equal
+ * game states thus always have equal encodings, so encodings may be compared in place of game states; the
+ * exception is two equal SlowGameStates with a colliding Zobrist hash, which are stored as two different
+ * entries, in which case two equal game states may (rarely) have different encodings, but two different game
+ * states never have the same encoding.
+ *
+ * Decoding a game state creates new objects for its lists and maps, but uses the same Card, PirateCard and
+ * SlowGameState instances as the original, so the decoded game state is equal to the original according to
+ * FridayUtil.isSameGameState(...).
+ *
+ * This class is not thread safe.
+ **/
+public final class PackedGameState {
+
+	private static final int FLAG_USED = 1;
+	private static final int FLAG_DOUBLED = 2;
+	private static final int FLAG_ACTIVE_CARD = 4;
+	private static final int FLAG_PIRATE_CARD_INFO = 8;
+	private static final int FLAG_ABILITY_OBJECT = 16;
+	private static final int FLAG_ABILITY_COPIED = 32;
+	private static final int FLAG_ABILITY_SORT_CARDS = 64;
+
+	private static final int TYPE_PIRATE_GAME_STATE = 0x80;
+
+	private static final State[] STATES = State.values();
+
+	private static final PirateState[] PIRATE_STATES = PirateState.values();
+
+	/** The encoded SlowGameState index is 3 bytes */
+	private static final int MAX_SLOW_GAME_STATES = 1 << 24;
+
+	private final PackedStateArena arena;
+
+	/** Pirate card id -> pirate card */
+	private final PirateCard[] pirateCards;
+
+	private final List<SlowGameState> slowGameStates = new ArrayList<>();
+
+	/** Zobrist hash of a SlowGameState -> index in slowGameStates */
+	private final Map<Long, Integer> slowGameStateIndices = new HashMap<>();
+
+	/** The most recently added SlowGameState and its index: consecutive game states usually share one */
+	private SlowGameState lastSlowGameState = null;
+	private int lastSlowGameStateIndex = -1;
+
+	private final byte[] buffer = new byte[PackedStateArena.MAX_ENTRY_LENGTH];
+
+	/** The encoding of the game state that is being decoded, see get(...) */
+	private final byte[] readBuffer = new byte[PackedStateArena.MAX_ENTRY_LENGTH];
+
+	/** The game state that is currently encoded in 'buffer' (null if none), and the length of the encoding */
+	private GameStateContainer encoded = null;
+	private int encodedLength = 0;
+
+	/** The handle of 'encoded' if it has been added to the arena, otherwise NONE */
+	private int encodedHandle = PackedStateArena.NONE;
+
+	/** Handle -> the RuntimeObject of the game state; only used when FridayUtil.RUNTIME_CHECK is enabled. */
+	private final Map<Integer, RuntimeObject> runtimeObjects = FridayUtil.RUNTIME_CHECK ? new HashMap<>() : null;
+
+	public PackedGameState(PackedStateArena arena) {
+		this.arena = arena;
+
+		int maxPirateCardId = 0;
+		for(PirateCard pc : FridayUtil.ALL_CARDS.getPirateCards()) {
+			maxPirateCardId = Math.max(maxPirateCardId, pc.getPirateCardId());
+		}
+		pirateCards = new PirateCard[maxPirateCardId+1];
+		for(PirateCard pc : FridayUtil.ALL_CARDS.getPirateCards()) {
+			pirateCards[pc.getPirateCardId()] = pc;
+		}
+	}
+
+	/** Add the encoding of 'gsc' to the arena, and return its handle. Adding the same game state object as the
+	 * previous call (for example, the parent game state of lazily expanded children) returns the same handle. */
+	public int add(GameStateContainer gsc) {
+		encode(gsc);
+
+		if(encodedHandle == PackedStateArena.NONE) {
+			encodedHandle = arena.add(buffer, encodedLength);
+
+			if(FridayUtil.RUNTIME_CHECK) {
+				Object gs = gsc.isGameState() ? gsc.getGameState() : gsc.getPirateGameState();
+				runtimeObjects.put(encodedHandle, RuntimeObjectMap.getInstance().getByObject(gs));
+			}
+		}
+
+		return encodedHandle;
+	}
+
+	/** Whether the game state of 'handle' is equal to 'gsc' */
+	public boolean matches(int handle, GameStateContainer gsc) {
+		encode(gsc);
+		return arena.equals(handle, buffer, encodedLength);
+	}
+
+	/** Decode the game state of 'handle' */
+	public GameStateContainer get(int handle) {
+
+		final byte[] b = readBuffer;
+		arena.read(handle, b);
+		int pos = 0;
+
+		final int type = b[pos++] & 0xFF;
+		final int flags = b[pos++] & 0xFF;
+		final int lifePoints = b[pos++];
+		final SlowGameState slowGameState = slowGameStates.get(((b[pos] & 0xFF) << 16) | ((b[pos+1] & 0xFF) << 8) | (b[pos+2] & 0xFF));
+		pos += 3;
+
+		CardSet used = null;
+		if((flags & FLAG_USED) != 0) {
+			used = readMap(b, pos);
+			pos += 8;
+		}
+
+		CardSet doubled = null;
+		if((flags & FLAG_DOUBLED) != 0) {
+			doubled = readMap(b, pos);
+			pos += 8;
+		}
+
+		final boolean isPirateGameState = (type & TYPE_PIRATE_GAME_STATE) != 0;
+
+		Card activeHazardCard = null;
+		PirateCard activePirateCard = null;
+		if((flags & FLAG_ACTIVE_CARD) != 0) {
+			if(isPirateGameState) {
+				activePirateCard = pirateCards[b[pos++]];
+			} else {
+				activeHazardCard = CardTable.get(b[pos++]);
+			}
+		}
+
+		PirateCardInfo pirateCardInfo = null;
+		if((flags & FLAG_PIRATE_CARD_INFO) != 0) {
+			int hazardPoints = (short)(((b[pos] & 0xFF) << 8) | (b[pos+1] & 0xFF));
+			pirateCardInfo = new PirateCardInfo(hazardPoints, b[pos+2]);
+			pos += 3;
+		}
+
+		AbilityObject abilityObject = null;
+		if((flags & FLAG_ABILITY_OBJECT) != 0) {
+			Card activeCard = CardTable.get(b[pos]);
+			int numberOfCardsDrawn = b[pos+1];
+			int stage = b[pos+2];
+			pos += 3;
+
+			List<Card> drawnSortCards = null;
+			if((flags & FLAG_ABILITY_SORT_CARDS) != 0) {
+				int size = b[pos++];
+				drawnSortCards = new ArrayList<>(size);
+				for(int x = 0; x < size; x++) {
+					drawnSortCards.add(CardTable.get(b[pos++]));
+				}
+			}
+
+			abilityObject = new AbilityObject(activeCard, numberOfCardsDrawn, stage, drawnSortCards,
+					(flags & FLAG_ABILITY_COPIED) != 0);
+		}
+
+		final ListCards yourFightingCards = new ListCards(readCards(b, pos), 0);
+		pos += 1 + b[pos];
+
+		ListCards hazardCards = null;
+		ImmutableGrowableListCards discardHazards = null;
+		if(!isPirateGameState) {
+			hazardCards = new ListCards(readCards(b, pos), 0);
+			pos += 1 + b[pos];
+
+			discardHazards = readGrowableCards(b, pos, 15);
+			pos += 1 + b[pos];
+		}
+
+		final ImmutableGrowableListCards discardFightCards = readGrowableCards(b, pos, 60);
+		pos += 1 + b[pos];
+
+		final ImmutableGrowableListCards lhsFightCards = readGrowableCards(b, pos, 6);
+		pos += 1 + b[pos];
+
+		final ImmutableGrowableListCards rhsFightCards = readGrowableCards(b, pos, 6);
+
+		RuntimeObject runtimeObject = FridayUtil.RUNTIME_CHECK ? runtimeObjects.get(handle) : null;
+
+		if(isPirateGameState) {
+			return new GameStateContainer(new PirateGameState(PIRATE_STATES[type & 0x7F], yourFightingCards,
+					slowGameState, activePirateCard, pirateCardInfo, discardFightCards, used, lifePoints, lhsFightCards,
+					rhsFightCards, doubled, abilityObject, null, runtimeObject));
+		} else {
+			return new GameStateContainer(new GameState(STATES[type], yourFightingCards, hazardCards, discardHazards,
+					slowGameState, activeHazardCard, discardFightCards, used, lifePoints, lhsFightCards, rhsFightCards,
+					doubled, abilityObject, null, runtimeObject));
+		}
+	}
+
+	public PackedStateArena getArena() {
+		return arena;
+	}
+
+	/** The number of distinct SlowGameStates that have been encoded */
+	public int getSlowGameStates() {
+		return slowGameStates.size();
+	}
+
+	/** Encode 'gsc' into 'buffer', unless it is already encoded there. */
+	private void encode(GameStateContainer gsc) {
+		if(gsc == encoded) { return; }
+
+		encoded = null;
+		encodedHandle = PackedStateArena.NONE;
+
+		final byte[] b = buffer;
+		int pos = 0;
+
+		if(gsc.isGameState()) {
+			GameState gs = gsc.getGameState();
+
+			pos = writeHeader(b, gs.getState().ordinal(), gs.getLifePoints(), gs.getSlowGameState(),
+					gs.getLhsOrRhsFightingCardUsed(), gs.getLhsOrRhsFightingCardDoubled(), gs.getActiveHazardCard() != null,
+					null, gs.getAbilityObject());
+
+			if(gs.getActiveHazardCard() != null) {
+				b[pos++] = (byte)gs.getActiveHazardCard().getPhysicalCardId();
+			}
+
+			pos = writeAbilityObject(b, pos, gs.getAbilityObject());
+			pos = writeCards(b, pos, gs.getYourFightingCards());
+			pos = writeCards(b, pos, gs.getHazardCards());
+			pos = writeCards(b, pos, gs.getDiscardHazards());
+			pos = writeCards(b, pos, gs.getDiscardFightCards());
+			pos = writeCards(b, pos, gs.getLhsFightCards());
+			pos = writeCards(b, pos, gs.getRhsFightCards());
+
+		} else {
+			PirateGameState pgs = gsc.getPirateGameState();
+
+			pos = writeHeader(b, TYPE_PIRATE_GAME_STATE | pgs.getState().ordinal(), pgs.getLifePoints(),
+					pgs.getSlowGameState(), pgs.getLhsOrRhsFightingCardUsed(), pgs.getLhsOrRhsFightingCardDoubled(),
+					pgs.getActivePirateCard() != null, pgs.getPirateCardInfo(), pgs.getAbilityObject());
+
+			if(pgs.getActivePirateCard() != null) {
+				b[pos++] = (byte)pgs.getActivePirateCard().getPirateCardId();
+			}
+
+			PirateCardInfo info = pgs.getPirateCardInfo();
+			if(info != null) {
+				if(info.getHazardPoints() != (short)info.getHazardPoints() || info.getFreeFightingCards() != (byte)info.getFreeFightingCards()) {
+					FridayUtil.throwErr("Pirate card info is out of range: "+info.getHazardPoints()+" "+info.getFreeFightingCards());
+				}
+				b[pos] = (byte)(info.getHazardPoints() >> 8);
+				b[pos+1] = (byte)info.getHazardPoints();
+				b[pos+2] = (byte)info.getFreeFightingCards();
+				pos += 3;
+			}
+
+			pos = writeAbilityObject(b, pos, pgs.getAbilityObject());
+			pos = writeCards(b, pos, pgs.getYourFightingCards());
+			pos = writeCards(b, pos, pgs.getDiscardFightCards());
+			pos = writeCards(b, pos, pgs.getLhsFightCards());
+			pos = writeCards(b, pos, pgs.getRhsFightCards());
+		}
+
+		encoded = gsc;
+		encodedLength = pos;
+	}
+
+	private int writeHeader(byte[] b, int type, int lifePoints, SlowGameState slowGameState, CardSet used,
+			CardSet doubled, boolean hasActiveCard, PirateCardInfo pirateCardInfo, AbilityObject abilityObject) {
+
+		if(lifePoints != (byte)lifePoints) { FridayUtil.throwErr("Life points are out of range: "+lifePoints); }
+
+		int flags = 0;
+		if(used != null) { flags |= FLAG_USED; }
+		if(doubled != null) { flags |= FLAG_DOUBLED; }
+		if(hasActiveCard) { flags |= FLAG_ACTIVE_CARD; }
+		if(pirateCardInfo != null) { flags |= FLAG_PIRATE_CARD_INFO; }
+		if(abilityObject != null) {
+			flags |= FLAG_ABILITY_OBJECT;
+			if(abilityObject.isCopied()) { flags |= FLAG_ABILITY_COPIED; }
+			if(abilityObject.getDrawnSortCards() != null) { flags |= FLAG_ABILITY_SORT_CARDS; }
+		}
+
+		int slowIndex = getSlowGameStateIndex(slowGameState);
+
+		b[0] = (byte)type;
+		b[1] = (byte)flags;
+		b[2] = (byte)lifePoints;
+		b[3] = (byte)(slowIndex >> 16);
+		b[4] = (byte)(slowIndex >> 8);
+		b[5] = (byte)slowIndex;
+
+		int pos = 6;
+		if(used != null) {
+			pos = writeMap(b, pos, used);
+		}
+		if(doubled != null) {
+			pos = writeMap(b, pos, doubled);
+		}
+
+		return pos;
+	}
+
+	private int getSlowGameStateIndex(SlowGameState sgs) {
+		if(sgs == lastSlowGameState) { return lastSlowGameStateIndex; }
+
+		Long key = sgs.getZobristHash();
+		Integer index = slowGameStateIndices.get(key);
+
+		if(index == null || !FridayUtil.isSameSlowGameState(slowGameStates.get(index), sgs)) {
+			if(slowGameStates.size() == MAX_SLOW_GAME_STATES) { FridayUtil.throwErr("Too many slow game states"); }
+
+			// On a hash collision the existing entry is kept, and this game state is not added to the map; see the
+			// class description.
+			if(index == null) {
+				slowGameStateIndices.put(key, slowGameStates.size());
+			}
+			index = slowGameStates.size();
+			slowGameStates.add(sgs);
+		}
+
+		lastSlowGameState = sgs;
+		lastSlowGameStateIndex = index;
+
+		return index;
+	}
+
+	private static int writeAbilityObject(byte[] b, int pos, AbilityObject abilityObject) {
+		if(abilityObject == null) { return pos; }
+
+		b[pos] = (byte)abilityObject.getActiveCard().getPhysicalCardId();
+		b[pos+1] = (byte)abilityObject.getNumberOfCardsDrawn();
+		b[pos+2] = (byte)abilityObject.getStage();
+		pos += 3;
+
+		List<Card> drawnSortCards = abilityObject.getDrawnSortCards();
+		if(drawnSortCards != null) {
+			b[pos++] = (byte)drawnSortCards.size();
+			for(int x = 0; x < drawnSortCards.size(); x++) {
+				b[pos++] = (byte)drawnSortCards.get(x).getPhysicalCardId();
+			}
+		}
+
+		return pos;
+	}
+
+	private static int writeMap(byte[] b, int pos, CardSet map) {
+		long mask = map.getBits();
+
+		for(int x = 0; x < 8; x++) {
+			b[pos+x] = (byte)(mask >>> (x*8));
+		}
+
+		return pos+8;
+	}
+
+	private static CardSet readMap(byte[] b, int pos) {
+		long mask = 0;
+		for(int x = 0; x < 8; x++) {
+			mask |= (b[pos+x] & 0xFFL) << (x*8);
+		}
+
+		return CardSet.fromBits(mask);
+	}
+
+	private static int writeCards(byte[] b, int pos, ListCards list) {
+		int size = list.size();
+		b[pos++] = (byte)size;
+		for(int x = 0; x < size; x++) {
+			b[pos++] = (byte)list.getPhysicalCardId(x);
+		}
+		return pos;
+	}
+
+	private static int writeCards(byte[] b, int pos, ImmutableGrowableListCards list) {
+		int size = list.size();
+		b[pos++] = (byte)size;
+		for(int x = 0; x < size; x++) {
+			b[pos++] = (byte)list.getPhysicalCardId(x);
+		}
+		return pos;
+	}
+
+	/** Read the card list (a length byte, followed by the physical card ids) at 'pos' */
+	private static byte[] readCards(byte[] b, int pos) {
+		return Arrays.copyOfRange(b, pos+1, pos+1+b[pos]);
+	}
+
+	private static ImmutableGrowableListCards readGrowableCards(byte[] b, int pos, int defaultSize) {
+		int size = b[pos];
+		return new ImmutableGrowableListCards(defaultSize, Arrays.copyOfRange(b, pos+1, pos+1+Math.max(size+1, defaultSize)), size);
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.PackedStateArena;
+
+/**
+ * Verifies and measures the packed encoding of game states (PackedGameState):
+ *
+ * - Round trip: every game state reached by expanding a set of generated positions (as the search does) is added
+ *   to a PackedStateArena, decoded, and compared with the original using FridayUtil.isSameGameState(...); the
+ *   decoded game state must also have the same Zobrist hash, and the same encoding, as the original.
+ *
+ * - Memory: the heap that is retained by those game states as objects, versus the bytes of their encodings.
+ *
+ * - Search: the action scores of the best-first search with and without FridayUtil.PACKED_SEARCH_STATES must be
+ *   equal, and the time of each is reported.
+ *
+ * Usage: PackedGameStateCheck [game states per position] (default: 20000)
+ **/
+public class PackedGameStateCheck {
+
+	private static final int GENERATED_POSITIONS = 20;
+
+	private static final int SEARCH_NODES = 50000;
+
+	public static void main(String[] args) throws IOException {
+
+		int statesPerPosition = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+		CardReader cr = new CardReader(FridayUtil.readFridayGameDataFile());
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(1);
+
+		List<GameStateContainer> positions = createPositions(GENERATED_POSITIONS);
+
+		// Round trip, and memory
+		long heapBefore = usedHeap();
+
+		List<GameStateContainer> states = new ArrayList<>();
+		for(int x = 0; x < positions.size(); x++) {
+			FridayUtil.initializeRandomSeed(x, 0);
+			expand(positions.get(x), statesPerPosition, states);
+		}
+
+		long heapAfter = usedHeap();
+
+		PackedStateArena arena = new PackedStateArena();
+		PackedGameState packed = new PackedGameState(arena);
+
+		int[] handles = new int[states.size()];
+		long start = System.nanoTime();
+		for(int x = 0; x < states.size(); x++) {
+			handles[x] = packed.add(states.get(x));
+		}
+		long encodeNanos = System.nanoTime() - start;
+
+		int mismatched = 0;
+		long decodeNanos = 0;
+		for(int x = 0; x < states.size(); x++) {
+			GameStateContainer original = states.get(x);
+
+			start = System.nanoTime();
+			GameStateContainer decoded = packed.get(handles[x]);
+			decodeNanos += System.nanoTime() - start;
+
+			if(!FridayUtil.isSameGameState(original, decoded) || original.getZobristHash() != decoded.getZobristHash()
+					|| !packed.matches(handles[x], decoded)) {
+				mismatched++;
+			}
+		}
+
+		System.out.println("Round trip: "+nf.format(states.size())+" game states, mismatches: "+mismatched);
+		System.out.println("Objects: "+nf.format((heapAfter - heapBefore) / (double)states.size())+" bytes/game state (retained heap)");
+		System.out.println("Packed: "+nf.format(arena.getBytesUsed() / (double)states.size())+" bytes/game state, "
+				+packed.getSlowGameStates()+" slow game states");
+		System.out.println("Encode: "+nf.format(encodeNanos / (double)states.size())+" ns/game state,  decode: "
+				+nf.format(decodeNanos / (double)states.size())+" ns/game state");
+
+		states = null;
+
+		// Search
+		int searchMismatched = 0;
+		long[] searchNanos = new long[2];
+		for(int pass = 0; pass < 2; pass++) {
+			// The first pass warms up the JVM
+			for(int x = 0; x < positions.size(); x++) {
+				int[] scores = null;
+				for(int packedSearch = 0; packedSearch < 2; packedSearch++) {
+					FridayUtil.PACKED_SEARCH_STATES = packedSearch == 1;
+					FridayUtil.initializeRandomSeed(x, 0);
+
+					start = System.nanoTime();
+					Map<Action, Integer> result = Main.evaluateBestAction(positions.get(x), new SearchBudget(SEARCH_NODES, false, 0));
+					if(pass == 1) {
+						searchNanos[packedSearch] += System.nanoTime() - start;
+					}
+
+					// The root actions are different Action instances in each search, so the sorted scores are compared
+					int[] curr = result.values().stream().mapToInt(e -> e).sorted().toArray();
+					if(scores != null && !Arrays.equals(scores, curr)) {
+						searchMismatched++;
+					}
+					scores = curr;
+				}
+			}
+		}
+		FridayUtil.PACKED_SEARCH_STATES = false;
+
+		System.out.println("Search: "+positions.size()+" game states, "+nf.format(SEARCH_NODES)+" nodes, mismatches: "
+				+searchMismatched/2+",  objects: "+searchNanos[0]/1000000+" ms,  packed: "+searchNanos[1]/1000000+" ms");
+
+		if(mismatched > 0 || searchMismatched > 0) {
+			FridayUtil.throwErr("Packed game states did not match the originals");
+		}
+
+		System.exit(0);
+	}
+
+	/** Add the game states that are reached from 'gsc' by breadth-first expansion to 'result', until 'maxStates'
+	 * have been added. */
+	private static void expand(GameStateContainer gsc, int maxStates, List<GameStateContainer> result) {
+		int first = result.size();
+		result.add(gsc);
+
+		for(int x = first; x < result.size() && result.size() - first < maxStates; x++) {
+			for(Action action : Main.calculateAvailableActions(result.get(x))) {
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), result.get(x));
+				if(!wgsc.isWin() && result.size() - first < maxStates) {
+					result.add(wgsc.getGsc());
+				}
+			}
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int x = 0; x < 3; x++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** Play random actions from fixed seeds, to find game states with more than one available action. */
+	private static List<GameStateContainer> createPositions(int numPositions) {
+
+		List<GameStateContainer> result = new ArrayList<>();
+
+		for(long seed = 0; result.size() < numPositions; seed++) {
+
+			FridayUtil.initializeRandomSeed(seed, 0);
+			Random walk = new Random(seed);
+
+			GameStateContainer gsc = new GameStateContainer(Main.initializeGameState(FridayUtil.ALL_CARDS));
+
+			int steps = walk.nextInt(60);
+			for(int step = 0; step < steps && gsc != null; step++) {
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				if(actions.size() == 0) {
+					gsc = null;
+					break;
+				}
+
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(actions.get(walk.nextInt(actions.size()))), gsc);
+				gsc = wgsc.isWin() ? null : wgsc.getGsc();
+			}
+
+			if(gsc != null && Main.calculateAvailableActions(gsc).size() > 1) {
+				result.add(gsc);
+			}
+		}
+
+		return result;
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.RandomAdvanced;
+
+/**
+ * Searches a single decision on multiple threads, by splitting the game states that result from the root actions
+ * (and, if there are fewer of those than threads, the game states of the next ply or two) between the threads
+ * of a ForkJoinPool.
+ *
+ * Each split game state is searched independently by Main.searchRoots(...), with its own frontier, search tree
+ * and transposition table (which are all confined to the worker thread), and an even share of the search budget.
+ * Since the score of a game state is the best score of its children, the score of a root action is the best score
+ * of the split game states that descend from it.
+ *
+ * Each split game state is searched with its own RandomAdvanced, seeded from the caller's random number
+ * generator and the index of the split game state, so the scores are deterministic for a given seed (when the
+ * search budget is a number of game states, rather than a deadline) regardless of thread scheduling.
+ **/
+public final class ParallelRootSearch {
+
+	/** The maximum number of plies below the root actions to expand, when looking for enough game states to split */
+	private static final int MAX_SPLIT_PLIES = 2;
+
+	/** Pool parallelism -> pool */
+	private static final Map<Integer, ForkJoinPool> pools_synch = new HashMap<>();
+
+	private ParallelRootSearch() {
+	}
+
+	/** Score all of the available actions of gsParam, using FridayUtil.SEARCH_THREADS threads. */
+	public static Map<Action, Integer> evaluateBestAction(GameStateContainer gsParam, SearchBudget budget) {
+
+		ForkJoinPool pool = getPool(FridayUtil.SEARCH_THREADS);
+
+		List<Action> rootActions = Main.calculateAvailableActions(gsParam);
+
+		List<SplitEntry> entries = new ArrayList<>();
+		for(int x = 0; x < rootActions.size(); x++) {
+			WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(rootActions.get(x)), gsParam);
+			entries.add(new SplitEntry(x, wgsc));
+		}
+
+		long processed = 0;
+		for(int ply = 0; ply < MAX_SPLIT_PLIES && entries.size() < pool.getParallelism(); ply++) {
+
+			List<SplitEntry> nextEntries = new ArrayList<>();
+
+			for(SplitEntry entry : entries) {
+				if(entry.wgsc.isWin()) {
+					nextEntries.add(entry);
+					continue;
+				}
+
+				GameStateContainer gsc = entry.wgsc.getGsc();
+
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				if(actions.size() == 0) {
+					nextEntries.add(entry);
+					continue;
+				}
+
+				if(gsc.isGameState()) {
+					Main.filterActions(actions, gsc.getGameState());
+				}
+
+				for(Action action : actions) {
+					nextEntries.add(new SplitEntry(entry.rootIndex, Main.doAction(Main.convertActionToResponse(action), gsc)));
+				}
+				processed++;
+			}
+
+			entries = nextEntries;
+		}
+
+		budget.addNodesUsed(processed);
+		
+		SearchBudget entryBudget = budget.reduce(processed).split(entries.size());
+
+		RandomAdvanced random = FridayUtil.UNIVERAL_RANDOM.get();
+		long baseSeed = random.getRandomAdvancedSeed() * 1000003L + random.getNumbersGenerated();
+
+		List<Callable<Integer>> tasks = new ArrayList<>();
+		for(int x = 0; x < entries.size(); x++) {
+			final SplitEntry entry = entries.get(x);
+			final long seed = baseSeed * 31L + x;
+
+			tasks.add( () -> {
+				return search(entry.wgsc, entryBudget, seed);
+			});
+		}
+
+		// Merge in the (deterministic) order of the split entries, rather than in order of completion
+		int[] rootScores = new int[rootActions.size()];
+		for(int x = 0; x < rootScores.length; x++) {
+			rootScores[x] = Integer.MIN_VALUE;
+		}
+
+		List<Future<Integer>> futures = pool.invokeAll(tasks);
+		for(int x = 0; x < entries.size(); x++) {
+			int score;
+			try {
+				score = futures.get(x).get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+
+			int rootIndex = entries.get(x).rootIndex;
+			if(score > rootScores[rootIndex]) {
+				rootScores[rootIndex] = score;
+			}
+		}
+
+		Map<Action, Integer> result = new HashMap<>();
+		for(int x = 0; x < rootActions.size(); x++) {
+			result.put(rootActions.get(x), rootScores[x]);
+		}
+
+		return result;
+	}
+
+	/** Runs on a pool thread: search a single split game state, with the thread's random number generator
+	 * temporarily replaced by one with the given seed. */
+	private static int search(WinnableGameStateContainer wgsc, SearchBudget budget, long seed) {
+		if(wgsc.isWin()) {
+			return Integer.MAX_VALUE;
+		}
+
+		RandomAdvanced previous = FridayUtil.UNIVERAL_RANDOM.get();
+		FridayUtil.UNIVERAL_RANDOM.set(new RandomAdvanced(seed, 0));
+		try {
+			return Main.searchRoots(Collections.singletonList(wgsc), budget, null)[0];
+		} finally {
+			FridayUtil.UNIVERAL_RANDOM.set(previous);
+		}
+	}
+
+	/** Return the (shared) pool with the given parallelism, which is also used by the other parallel search modes. */
+	static ForkJoinPool getPool(int parallelism) {
+		synchronized(pools_synch) {
+			ForkJoinPool pool = pools_synch.get(parallelism);
+			if(pool == null) {
+				pool = new ForkJoinPool(parallelism);
+				pools_synch.put(parallelism, pool);
+			}
+			return pool;
+		}
+	}
+
+	/** A game state to be searched, and the index of the root action that it descends from */
+	private static final class SplitEntry {
+		final int rootIndex;
+		final WinnableGameStateContainer wgsc;
+
+		SplitEntry(int rootIndex, WinnableGameStateContainer wgsc) {
+			this.rootIndex = rootIndex;
+			this.wgsc = wgsc;
+		}
+	}
+
+}
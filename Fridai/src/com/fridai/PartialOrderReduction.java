@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.fridai.actions.Action;
+import com.fridai.actions.Action.ActionType;
+import com.fridai.actions.UseCardAbilityAction;
+import com.fridai.actions.UseCardAbilityWithTargetAction;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.SearchTree;
+
+/**
+ * Partial-order reduction of the card ability activations of a fight: calculateAvailableActions(...) offers every 
+ * unused ability on every expansion, so a sequence of k activations that do not affect each other is otherwise 
+ * searched in all k! orders, each of which reaches the same game state.
+ * 
+ * An activation is 'independent' if it is a LIFE_ADD_1/LIFE_ADD_2 ability (which only changes the life points), 
+ * or a DOUBLE_1x ability (which only flags its target as doubled). Independent activations commute with each other, 
+ * and do not change which of the other independent activations are available. Copied abilities (COPY_1x) are never
+ * independent, and nor is PHASE_MINUS_1, which can only be activated through COPY_1x.
+ * 
+ * Within each run of consecutive independent activations, the search only generates a single canonical order:
+ * DOUBLE_1x activations first (in the order that they are generated: the target of DOUBLE_1x is chosen by 
+ * calculateIndividualActions(...), and a target is only offered to one of the DOUBLE_1x cards), followed by 
+ * LIFE_ADD activations in ascending physical card id order. Any other action ends the run.
+ * 
+ * The restriction is stored per search tree node as an 'order floor' (see SearchTree.getOrderFloor(...)): NO_FLOOR
+ * if any independent activation may follow, otherwise the physical card id of the LIFE_ADD activation that created 
+ * the node, in which case only LIFE_ADD activations of a card with a higher id may follow.
+ **/
+public final class PartialOrderReduction {
+
+	/** Order floor of a node that any independent activation may follow */
+	public static final int NO_FLOOR = SearchTree.NONE;
+	
+	private PartialOrderReduction() {
+	}
+	
+	/** Return the order floor of the game state that results from 'action' (which must be in canonical order). */
+	public static int getOrderFloor(Action action) {
+		// A DOUBLE_1x activation may be followed by any independent activation, as may any other action 
+		return getLifeAddCardId(action);
+	}
+	
+	/** Remove the independent activations that are not in canonical order after a node with the given floor. */
+	public static void removeNonCanonical(List<Action> actions, int floor) {
+		if(floor == NO_FLOOR) { return; }
+		
+		for(Iterator<Action> it = actions.iterator(); it.hasNext(); ) {
+			Action a = it.next();
+			
+			if(isDoubleActivation(a)) {
+				// DOUBLE_1x activations come before LIFE_ADD activations
+				it.remove();
+				
+			} else {
+				int lifeAddCard = getLifeAddCardId(a);
+				if(lifeAddCard != NO_FLOOR && lifeAddCard <= floor) {
+					it.remove();
+				}
+			}
+		}
+	}
+	
+	/** Whether the action is an independent activation (see class description) */
+	public static boolean isIndependent(Action action) {
+		return getLifeAddCardId(action) != NO_FLOOR || isDoubleActivation(action);
+	}
+	
+	/** If the action is a (non-copied) LIFE_ADD_1/LIFE_ADD_2 activation, return the physical id of the card, 
+	 * otherwise NO_FLOOR. */
+	private static int getLifeAddCardId(Action action) {
+		if(action.getType() != ActionType.USE_CARD_ABILITY) { return NO_FLOOR; }
+		
+		Card c = ((UseCardAbilityAction)action).getCard();
+		if(c.getAbility() != Ability.LIFE_ADD_1 && c.getAbility() != Ability.LIFE_ADD_2) { return NO_FLOOR; }
+		
+		if(FridayUtil.RUNTIME_CHECK && c.getPhysicalCardId() < 0) { FridayUtil.throwErr("Invalid physical card id: "+c); }
+		
+		return c.getPhysicalCardId();
+	}
+	
+	private static boolean isDoubleActivation(Action action) {
+		if(action.getType() != ActionType.USE_CARD_ABILITY_WITH_TARGET) { return false; }
+		
+		return ((UseCardAbilityWithTargetAction)action).getCard().getAbility() == Ability.DOUBLE_1x;
+	}
+	
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fridai.GameState.State;
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.json.JsonGameStatePersistence;
+import com.fridai.json.JsonPersistenceUtil;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+import com.fridai.util.TranspositionTable;
+
+/**
+ * Verifies that partial-order reduction (see PartialOrderReduction) does not change the result of a search: for 
+ * each game state, every action sequence of the current fight is searched exhaustively, once with all actions, and 
+ * once with the reduced actions, and the two searches must reach exactly the same set of end-of-fight game states 
+ * (and thus the same best score).
+ * 
+ * The game states are read from the JSON files given as arguments (eg the 'fail-state.json' written by devMain), 
+ * or, without arguments, generated by playing random actions from fixed seeds until a fight with at least two 
+ * independent activations is reached. 
+ * 
+ * A fight that reshuffles the discard pile would draw different cards in different action orders, so the random 
+ * number generator is reset before each action. Fights that are too large to be searched exhaustively (more than
+ * MAX_EXPANSIONS game states) are skipped.
+ * 
+ * Usage: PartialOrderReductionCheck [JSON game state files] (default: 20 generated game states)
+ **/
+public class PartialOrderReductionCheck {
+
+	private static final int MAX_EXPANSIONS = 2000000;
+	
+	private static final int GENERATED_POSITIONS = 20;
+	
+	public static void main(String[] args) throws IOException {
+
+		InputStream fridayGameTxtInputStream = FridayUtil.readFridayGameDataFile();
+		if(fridayGameTxtInputStream == null) { FridayUtil.throwErr("Unable to find Friday data file."); return; }
+
+		CardReader cr = new CardReader(fridayGameTxtInputStream);
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		List<GameStateContainer> positions = new ArrayList<>();
+		if(args.length > 0) {
+			for(String arg : args) {
+				FridayUtil.initializeRandomSeed(0, 0);
+				JsonGameStatePersistence jgsp = new ObjectMapper().readValue(new File(arg), JsonGameStatePersistence.class);
+				positions.add(JsonPersistenceUtil.fromJson(jgsp));
+			}
+		} else {
+			positions.addAll(createPositions(GENERATED_POSITIONS));
+		}
+		
+		NumberFormat nf = NumberFormat.getInstance();
+		
+		int matched = 0;
+		int skipped = 0;
+		int mismatched = 0;
+		long totalFull = 0;
+		long totalReduced = 0;
+		
+		for(int x = 0; x < positions.size(); x++) {
+			GameStateContainer gsc = positions.get(x);
+			
+			FightSearch full = new FightSearch(false);
+			FightSearch reduced = new FightSearch(true);
+			
+			if(!full.search(gsc) || !reduced.search(gsc)) {
+				System.out.println("#"+x+": skipped, more than "+nf.format(MAX_EXPANSIONS)+" game states");
+				skipped++;
+				continue;
+			}
+			
+			boolean same = full.fightEnds.size() == reduced.fightEnds.size() && full.bestScore == reduced.bestScore;
+			if(same) {
+				final boolean[] missing = new boolean[] { false };
+				full.fightEnds.forEach( (end, value) -> {
+					if(reduced.fightEnds.get(end) == TranspositionTable.NOT_FOUND) {
+						missing[0] = true;
+					}
+				});
+				same = !missing[0];
+			}
+			
+			System.out.println("#"+x+": "+(same ? "same" : "MISMATCH")
+					+ "  end states: "+nf.format(full.fightEnds.size())+" / "+nf.format(reduced.fightEnds.size())
+					+ "  best score: "+full.bestScore+" / "+reduced.bestScore
+					+ "  expanded: "+nf.format(full.expanded)+" / "+nf.format(reduced.expanded));
+			
+			if(same) {
+				matched++;
+				totalFull += full.expanded;
+				totalReduced += reduced.expanded;
+			} else {
+				mismatched++;
+			}
+		}
+		
+		System.out.println();
+		System.out.println("same: "+matched+"  mismatch: "+mismatched+"  skipped: "+skipped
+				+ "  expanded (all actions / reduced): "+nf.format(totalFull)+" / "+nf.format(totalReduced));
+		
+		if(mismatched > 0) {
+			FridayUtil.throwErr("Partial-order reduction changed the result of "+mismatched+" searches");
+		}
+		
+		System.exit(0);
+	}
+	
+	/** Whether the game state is in the middle of a fight (with a hazard or pirate) */
+	private static boolean isInFight(GameStateContainer gsc) {
+		if(!gsc.isGameState()) { return true; }
+		
+		State state = gsc.getGameState().getState();
+		return state == State.DRAW_FREE_CARDS || state == State.SACRIFICE_LIFE_TO_DRAW;
+	}
+	
+	/** Play random actions from fixed seeds, to find fights with at least two independent activations available. */
+	private static List<GameStateContainer> createPositions(int numPositions) {
+
+		List<GameStateContainer> result = new ArrayList<>();
+
+		for(long seed = 0; result.size() < numPositions && seed < 100000; seed++) {
+
+			FridayUtil.initializeRandomSeed(seed, 0);
+			Random walk = new Random(seed);
+
+			GameStateContainer gsc = new GameStateContainer(Main.initializeGameState(FridayUtil.ALL_CARDS));
+
+			for(int step = 0; step < 400 && gsc != null; step++) {
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				if(actions.size() == 0) {
+					gsc = null;
+					break;
+				}
+				
+				if(isInFight(gsc)) {
+					int independent = 0;
+					for(Action a : actions) {
+						if(PartialOrderReduction.isIndependent(a)) {
+							independent++;
+						}
+					}
+					if(independent >= 2) {
+						result.add(gsc);
+						break;
+					}
+				}
+
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(actions.get(walk.nextInt(actions.size()))), gsc);
+				gsc = wgsc.isWin() ? null : wgsc.getGsc();
+			}
+		}
+
+		return result;
+	}
+	
+	/** An exhaustive depth-first search of the current fight, which collects the game states at the end of the fight. */
+	private static final class FightSearch {
+		
+		private final boolean reduce;
+		
+		/** Game states seen during the fight -> the lowest order floor that they were searched with */
+		private final TranspositionTable seen = new TranspositionTable(1024);
+		
+		/** The game states that end the fight (the value is unused) */
+		private final TranspositionTable fightEnds = new TranspositionTable(1024);
+		
+		private int bestScore = Integer.MIN_VALUE;
+		
+		private long expanded = 0;
+		
+		FightSearch(boolean reduce) {
+			this.reduce = reduce;
+		}
+		
+		/** Return false if the search exceeded MAX_EXPANSIONS. */
+		boolean search(GameStateContainer gsc) {
+			return search(gsc, PartialOrderReduction.NO_FLOOR);
+		}
+		
+		private boolean search(GameStateContainer gsc, int floor) {
+			
+			if(!isInFight(gsc)) {
+				fightEnds.putIfAbsent(gsc, 0);
+				bestScore = Math.max(bestScore, Main.score(gsc));
+				return true;
+			}
+			
+			// A game state only needs to be searched again if it is now less restricted than before 
+			int previousFloor = seen.get(gsc);
+			if(previousFloor != TranspositionTable.NOT_FOUND) {
+				if(previousFloor <= floor) { return true; }
+				seen.remove(gsc);
+			}
+			seen.putIfAbsent(gsc, floor);
+			
+			if(++expanded > MAX_EXPANSIONS) { return false; }
+			
+			List<Action> actions = Main.calculateAvailableActions(gsc);
+			if(actions.size() == 0) {
+				fightEnds.putIfAbsent(gsc, 0);
+				bestScore = Math.max(bestScore, Main.score(gsc));
+				return true;
+			}
+			
+			if(reduce) {
+				PartialOrderReduction.removeNonCanonical(actions, floor);
+			}
+			
+			for(Action action : actions) {
+				// Each order of actions draws the same cards, see class description
+				FridayUtil.initializeRandomSeed(0, 0);
+				
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), gsc);
+				if(wgsc.isWin()) {
+					bestScore = Integer.MAX_VALUE;
+					continue;
+				}
+				
+				int childFloor = reduce ? PartialOrderReduction.getOrderFloor(action) : PartialOrderReduction.NO_FLOOR;
+				if(!search(wgsc.getGsc(), childFloor)) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+	}
+}
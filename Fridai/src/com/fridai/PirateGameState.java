@@ -37,7 +37,9 @@ import com.fridai.ui.ansi.AnsiCards;
 import com.fridai.util.FridayUtil;
 import com.fridai.util.ImmutableGrowableListCards;
 import com.fridai.util.ListCards;
-import com.fridai.util.MapCards;
+import com.fridai.util.CardSet;
+import com.fridai.util.CardTable;
+import com.fridai.util.ZobristHash;
 
 /** An encapsulation of the full state of the game after each player action, while the player is fighting pirates. 
  * 
@@ -64,10 +66,10 @@ public final class PirateGameState {
 	private final ImmutableGrowableListCards discardFightCards;
 
 	// Nullable
-	private final MapCards/*<Integer - physical card id, Boolean>*/ lhsOrRhsFightingCardUsed;
+	private final CardSet lhsOrRhsFightingCardUsed;
 	
 	// Nullable
-	private final MapCards/*<Integer - physical card id, Boolean>*/ lhsOrRhsFightingCardDoubled;
+	private final CardSet lhsOrRhsFightingCardDoubled;
 	// TODO: LOWER - Can a card w/ DOUBLE ability be used, and then discarded, or must it stick around until the end of the fight in order to be used?
 
 	// TODO: LOWER - We should prevent drawing more than the alloted cards in the draw free cards phase, regardless of what stop does.
@@ -86,13 +88,23 @@ public final class PirateGameState {
 	// Nullable
 	private final AbilityObject abilityObject;
 	
+	/** Zobrist hash of the full game state, combined from the incrementally maintained hashes of its fields. */
+	private final long zobristHash;
+	
+	/** The sum of the fighting values of the LHS and RHS cards (doubled cards count twice), combined from the 
+	 * incrementally maintained sums of the lists, see calculateRemainingHazardValue() */
+	private final int fightingValueTotal;
+	
+	/** The highest (not doubled) fighting value of the LHS and RHS cards (Integer.MIN_VALUE if there are none) */
+	private final int highestFightingValue;
+	
 	// ------------------------
 	
 	
 	public PirateGameState(PirateState state, ListCards yourFightingCards, SlowGameState slowGameState, 
 			PirateCard activePirateCard, PirateCardInfo pirateCardInfo, ImmutableGrowableListCards discardFightCards, 
-			MapCards lhsOrRhsFightingCardUsed,  int lifePoints, ImmutableGrowableListCards lhs_fightCards, 
-			ImmutableGrowableListCards rhs_fightCards, MapCards lhsOrRhsFightingCardDoubled, 
+			CardSet lhsOrRhsFightingCardUsed,  int lifePoints, ImmutableGrowableListCards lhs_fightCards, 
+			ImmutableGrowableListCards rhs_fightCards, CardSet lhsOrRhsFightingCardDoubled, 
 			AbilityObject abilityObject, Object previousGameState, RuntimeObject newRuntimeObject) {
 		
 		this.state = state;
@@ -148,6 +160,11 @@ public final class PirateGameState {
 		
 		this.abilityObject = abilityObject;
 		
+		this.zobristHash = calculateZobristHash();
+		
+		this.fightingValueTotal = lhs_fightCards.getFightingValueSum() + rhs_fightCards.getFightingValueSum()
+				+ GameState.calculateDoubledFightingValue(lhs_fightCards, rhs_fightCards, lhsOrRhsFightingCardDoubled);
+		this.highestFightingValue = Math.max(lhs_fightCards.getHighestFightingValue(), rhs_fightCards.getHighestFightingValue());
 		
 		if(FridayUtil.RUNTIME_CHECK) {
 			
@@ -160,6 +177,36 @@ public final class PirateGameState {
 
 	}
 	
+	/** Combine the hashes that are maintained by each of the fields; this is O(1) in the number of cards. */
+	private long calculateZobristHash() {
+		// Pirate states are offset so that they never share a state key with GameState.State
+		long hash = ZobristHash.zone(ZobristHash.value(1024 + state.ordinal()), ZobristHash.ZONE_STATE);
+		hash ^= ZobristHash.zone(ZobristHash.value(lifePoints), ZobristHash.ZONE_LIFE_POINTS);
+		hash ^= ZobristHash.zone(yourFightingCards.getZobristHash(), ZobristHash.ZONE_YOUR_FIGHTING_CARDS);
+		hash ^= ZobristHash.zone(discardFightCards.getZobristHash(), ZobristHash.ZONE_DISCARD_FIGHT_CARDS);
+		hash ^= ZobristHash.zone(lhs_fightCards.getZobristHash(), ZobristHash.ZONE_LHS_FIGHT_CARDS);
+		hash ^= ZobristHash.zone(rhs_fightCards.getZobristHash(), ZobristHash.ZONE_RHS_FIGHT_CARDS);
+		hash ^= ZobristHash.zone(slowGameState.getZobristHash(), ZobristHash.ZONE_SLOW_GAME_STATE);
+		
+		if(activePirateCard != null) {
+			hash ^= ZobristHash.zone(ZobristHash.value(activePirateCard.getPirateCardId()), ZobristHash.ZONE_ACTIVE_CARD);
+		}
+		if(pirateCardInfo != null) {
+			hash ^= ZobristHash.zone(ZobristHash.value(pirateCardInfo.getHazardPoints()*1024 + pirateCardInfo.getFreeFightingCards()), ZobristHash.ZONE_MISC);
+		}
+		if(lhsOrRhsFightingCardUsed != null) {
+			hash ^= ZobristHash.zone(lhsOrRhsFightingCardUsed.getZobristHash(), ZobristHash.ZONE_USED);
+		}
+		if(lhsOrRhsFightingCardDoubled != null) {
+			hash ^= ZobristHash.zone(lhsOrRhsFightingCardDoubled.getZobristHash(), ZobristHash.ZONE_DOUBLED);
+		}
+		if(abilityObject != null) {
+			hash ^= ZobristHash.zone(abilityObject.getZobristHash(), ZobristHash.ZONE_ABILITY_OBJECT);
+		}
+		
+		return hash;
+	}
+	
 	public static void validate(PirateGameState gs, RuntimeObject newRuntimeObject, Object previousGameStateNotUsed) {
 		if(!FridayUtil.RUNTIME_CHECK) { return; }
 		
@@ -250,8 +297,7 @@ public final class PirateGameState {
 
 	public PirateGameState sacrificeLifeToDraw_flagCopyAbilityAsUsed(UseCopyAbilityAction action) {
 
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards(lhsOrRhsFightingCardUsed);
-		newLhsOrRhsFightingCardUsed.put(action.getCard().getPhysicalCardId(), true);
+		CardSet newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed.with(action.getCard().getPhysicalCardId());
 
 		PirateGameState result = new PirateGameState(this.state, yourFightingCards, slowGameState, 
 				activePirateCard, pirateCardInfo, discardFightCards,  newLhsOrRhsFightingCardUsed,
@@ -463,10 +509,9 @@ public final class PirateGameState {
 		// We only flag a card as used if:
 		// - the exchange is not part of a copy action
 		// - the exchange is not in the second step from a copy action
-		MapCards newLhsOrRhsFightCardsUsed = gs.lhsOrRhsFightingCardUsed;
+		CardSet newLhsOrRhsFightCardsUsed = gs.lhsOrRhsFightingCardUsed;
 		if(!isCopiedAbility && (newAbilityObject == null || !newAbilityObject.isCopied())) {
-			newLhsOrRhsFightCardsUsed = new MapCards(gs.lhsOrRhsFightingCardUsed);
-			newLhsOrRhsFightCardsUsed.put((Integer) c.getPhysicalCardId(), true); // mark c as used
+			newLhsOrRhsFightCardsUsed = gs.lhsOrRhsFightingCardUsed.with(c.getPhysicalCardId()); // mark c as used
 		}
 
 		if(c.getAbility() == Ability.CARDS_DRAW_1) {
@@ -560,10 +605,9 @@ public final class PirateGameState {
 
 		if(ucawta.getCard().getAbility() == Ability.DESTROY_1x) {
 
-			MapCards newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
+			CardSet newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
 			if(!isCopiedAction) {
-				newLhsOrRhsFightingCardUsed = new MapCards(lhsOrRhsFightingCardUsed);
-				newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
+				newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 			}
 
 			Card cardToDestroy = ucawta.getTarget();
@@ -600,21 +644,18 @@ public final class PirateGameState {
 
 		} else if(ucawta.getCard().getAbility() == Ability.DOUBLE_1x) {
 
-			MapCards newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
+			CardSet newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed;
 
 			if(!isCopiedAction) {
-				newLhsOrRhsFightingCardUsed = new MapCards(lhsOrRhsFightingCardUsed);
-				newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
-
+				newLhsOrRhsFightingCardUsed = lhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 			}
 
 			// Flag the target card as doubled
 			Card targetCard = ucawta.getTarget();
-			if(FridayUtil.RUNTIME_CHECK && lhsOrRhsFightingCardDoubled.get(targetCard.getPhysicalCardId()) == true) {
+			if(FridayUtil.RUNTIME_CHECK && lhsOrRhsFightingCardDoubled.contains(targetCard.getPhysicalCardId())) {
 				FridayUtil.throwErr("Target card is already doubled: " + targetCard);
 			}
-			MapCards newLhsOrRhsFightingCardDoubled = new MapCards(lhsOrRhsFightingCardDoubled);
-			newLhsOrRhsFightingCardDoubled.put(targetCard.getPhysicalCardId(), true);
+			CardSet newLhsOrRhsFightingCardDoubled = lhsOrRhsFightingCardDoubled.with(targetCard.getPhysicalCardId());
 
 			if(OUT_ENABLED) {
 				out("Card " + AnsiCards.asFightingCard(targetCard, null) + " has been doubled.", this);
@@ -646,13 +687,13 @@ public final class PirateGameState {
 		// Flag the exchange as used, but only if:
 		// - the exchange is not part of a copy action
 		// - the exchange is not in the second step from a copy action
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards(gs.lhsOrRhsFightingCardUsed);
+		CardSet newLhsOrRhsFightingCardUsed = gs.lhsOrRhsFightingCardUsed;
 		if(!isCopiedAction && (gs.getAbilityObject() == null || !gs.getAbilityObject().isCopied())) {
-			newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
+			newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 		}
 
 		// Mark the target card as unused, in case we happen to pull it again after a reshuffle
-		newLhsOrRhsFightingCardUsed.put(ucawta.getTarget().getPhysicalCardId(), false);
+		newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.without(ucawta.getTarget().getPhysicalCardId());
 
 		Card cardToDiscard = ucawta.getTarget();
 
@@ -718,10 +759,10 @@ public final class PirateGameState {
 		}
 
 		// Mark BTP card as used
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards(gs.lhsOrRhsFightingCardUsed);
+		CardSet newLhsOrRhsFightingCardUsed = gs.lhsOrRhsFightingCardUsed;
 
 		if(!isCopiedAction) {
-			newLhsOrRhsFightingCardUsed.put(ucawta.getCard().getPhysicalCardId(), true);
+			newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.with(ucawta.getCard().getPhysicalCardId());
 		}
 
 		if(OUT_ENABLED) {
@@ -730,7 +771,7 @@ public final class PirateGameState {
 
 		// The card we are burying gets marked as unused, as if we see it again it will
 		// be from a redraw.
-		newLhsOrRhsFightingCardUsed.put(cardToBury.getPhysicalCardId(), false);
+		newLhsOrRhsFightingCardUsed = newLhsOrRhsFightingCardUsed.without(cardToBury.getPhysicalCardId());
 
 		// If a BTP is replacing a card on the LHS, then draw a replacement to the LHS
 		if(isCardToBuryOnLhs) {
@@ -872,8 +913,8 @@ public final class PirateGameState {
 		
 		// Clear LHS and RHS
 		
-		MapCards newLhsOrRhsFightingCardUsed = new MapCards();
-		MapCards newLhsOrRhsFightingCardDoubled = new MapCards();
+		CardSet newLhsOrRhsFightingCardUsed = CardSet.EMPTY;
+		CardSet newLhsOrRhsFightingCardDoubled = CardSet.EMPTY;
 
 		PirateGameState result = new PirateGameState(PirateState.SELECT_A_PIRATE, yourFightingCards, slowGameState, 
 				null /* active pirate card */, null /*pirateCardInfo */, newDiscardFightCards, newLhsOrRhsFightingCardUsed, 
@@ -927,8 +968,8 @@ public final class PirateGameState {
 				
 		return new PirateGameState(PirateState.SELECT_A_PIRATE, gs.getYourFightingCards(), newSlowGameState, 
 				/* active pirate card*/ null, /* pirate card info*/ null, gs.getDiscardFightCards(), 
-				new MapCards() /* fighting cards used */, gs.getLifePoints(), gs.getLhsFightCards(), 
-				gs.getRhsFightCards(), new MapCards() /* fighting cards doubled */,
+				CardSet.EMPTY /* fighting cards used */, gs.getLifePoints(), gs.getLhsFightCards(), 
+				gs.getRhsFightCards(), CardSet.EMPTY /* fighting cards doubled */,
 				gs.getAbilityObject(), gs /* previous game state*/, null /* runtime object*/);
 				 
 	}
@@ -997,7 +1038,7 @@ public final class PirateGameState {
 		
 		List<Card> lhsAndRhsCards = new ArrayList<>();
 
-		final MapCards isDoubled = lhsOrRhsFightingCardDoubled;
+		final CardSet isDoubled = lhsOrRhsFightingCardDoubled;
 		final CalculateRemainingHazardValues_HalfFaceUpFighting_Comparator comparator = new CalculateRemainingHazardValues_HalfFaceUpFighting_Comparator(isDoubled);
 
 		// All aging cards go into finalList, all non-aging are sorted ascending into lhsAndRhsCards 
@@ -1045,7 +1086,7 @@ public final class PirateGameState {
 				Card highestValue = lhsAndRhsCards.get(lhsAndRhsCards.size()-1);
 				int value = highestValue.getFightingValue();
 				
-				if(isDoubled.get(highestValue.getPhysicalCardId()) == Boolean.TRUE) {
+				if(isDoubled.contains(highestValue.getPhysicalCardId())) {
 					value *=2 ;
 				}
 				
@@ -1070,7 +1111,7 @@ public final class PirateGameState {
 		for(Card c : finalList) {
 			
 			int value = c.getFightingValue();
-			if(isDoubled.get(c.getPhysicalCardId()) == Boolean.TRUE) {
+			if(isDoubled.contains(c.getPhysicalCardId())) {
 				value *= 2;
 			}
 			
@@ -1086,9 +1127,9 @@ public final class PirateGameState {
 	
 	public final static class CalculateRemainingHazardValues_HalfFaceUpFighting_Comparator implements Comparator<Card> {
 
-		private final MapCards isDoubled;
+		private final CardSet isDoubled;
 		
-		public CalculateRemainingHazardValues_HalfFaceUpFighting_Comparator(final MapCards isDoubled) {
+		public CalculateRemainingHazardValues_HalfFaceUpFighting_Comparator(final CardSet isDoubled) {
 			this.isDoubled = isDoubled;
 		}
 		
@@ -1096,15 +1137,16 @@ public final class PirateGameState {
 		public int compare(Card o1, Card o2) {
 			
 			int o1Val = o1.getFightingValue();
-			if(isDoubled.get(o1.getPhysicalCardId()) == Boolean.TRUE) { o1Val *=2 ; }
+			if(isDoubled.contains(o1.getPhysicalCardId())) { o1Val *=2 ; }
 			int o2Val = o2.getFightingValue();
-			if(isDoubled.get(o2.getPhysicalCardId()) == Boolean.TRUE) { o2Val *=2 ; }
+			if(isDoubled.contains(o2.getPhysicalCardId())) { o2Val *=2 ; }
 
 			return o1Val - o2Val;
 		}
 		
 	}
 	
+	@SuppressWarnings("unused")
 	public int calculateRemainingHazardValue() {
 
 		// Special case: If fighting the half face up pirate, then use a different calculation.
@@ -1112,65 +1154,81 @@ public final class PirateGameState {
 			return calculateRemainingHazardValue_halfFaceUpFighting();
 		}
 		
+		// The fighting value total and highest card are maintained by the constructor, and the ability summaries of 
+		// the lists answer HIGHEST_CARD_IS_0, so this does not look at each card.
+		
+		int currHazardVal = getPirateCardInfo().getHazardPoints() - fightingValueTotal;
+		
+		if(activePirateCard.getAbility() == PirateCardAbility.EACH_FACE_UP_FIGHTING_CARD_COUNTS_PLUS1_FIGHTING_POINT) {
+			currHazardVal -= lhs_fightCards.size() + rhs_fightCards.size();
+		}
+		
+		boolean containsHighestFightCardEquals0 = lhs_fightCards.containsAbility(Ability.HIGHEST_CARD_IS_0)
+				|| rhs_fightCards.containsAbility(Ability.HIGHEST_CARD_IS_0);
+		
+		if(containsHighestFightCardEquals0 && highestFightingValue > 0) {
+			currHazardVal += highestFightingValue; // Yes this is correct as '+=' 
+		}
+		
+		if(FridayUtil.RUNTIME_CHECK && currHazardVal != calculateRemainingHazardValue_full()) {
+			FridayUtil.throwErr("Remaining hazard value does not match the full calculation: "+currHazardVal);
+		}
+		
+		return currHazardVal;
+	}
+	
+	private static final byte HIGHEST_CARD_IS_0_ORDINAL = CardTable.ordinal(Ability.HIGHEST_CARD_IS_0);
+	
+	/** Calculate the remaining hazard value from each of the LHS and RHS cards (other than for the half face up 
+	 * pirate); used to verify calculateRemainingHazardValue() when RUNTIME_CHECK is enabled. */
+	private int calculateRemainingHazardValue_full() {
+		
 		boolean eachFaceUpFightingCardIsPlus1 = activePirateCard.getAbility() == PirateCardAbility.EACH_FACE_UP_FIGHTING_CARD_COUNTS_PLUS1_FIGHTING_POINT;
 		
 		int currHazardVal = 0;
 		
-		MapCards isDoubled = lhsOrRhsFightingCardDoubled;
+		final long isDoubled = lhsOrRhsFightingCardDoubled.getBits();
+		final int[] fightingValues = CardTable.getFightingValues();
+		final byte[] abilityOrdinals = CardTable.getAbilityOrdinals();
 
 		boolean containsHighestFightCardEquals0 = false;
-		Card highestCard = null;
 
-		for (Card c : getLhsFightCards().getAsList()) {
-			if(c.getAbility() == Ability.HIGHEST_CARD_IS_0) {
-				containsHighestFightCardEquals0 = true;
-			}
+		// The highest (not doubled) fighting value of the LHS and RHS cards
+		int highestFightingValue = Integer.MIN_VALUE;
 
-			int fightingVal = c.getFightingValue();
-
-			if(isDoubled.get(c.getPhysicalCardId()) == Boolean.TRUE) {
-				fightingVal *= 2;
-			}
-
-			if(highestCard == null || c.getFightingValue() > highestCard.getFightingValue()) {
-				highestCard = c;
-			}
+		for(int side = 0; side < 2; side++) {
+			ImmutableGrowableListCards list = side == 0 ? lhs_fightCards : rhs_fightCards;
 			
-			if(eachFaceUpFightingCardIsPlus1) {
-				currHazardVal--;
-			}
-			
-			currHazardVal -= fightingVal;
-		}
-
-		for(Card c : getRhsFightCards().getAsList()) {
-			if(c.getAbility() == Ability.HIGHEST_CARD_IS_0) {
-				containsHighestFightCardEquals0 = true;
-			}
-
-			int fightingVal = c.getFightingValue();
-
-			if(isDoubled.get(c.getPhysicalCardId()) == Boolean.TRUE) {
-				fightingVal *= 2;
-			}
-
-			if(highestCard == null || c.getFightingValue() > highestCard.getFightingValue()) {
-				highestCard = c;
-			}
-
-			if(eachFaceUpFightingCardIsPlus1) {
-				currHazardVal--;
+			for(int x = 0; x < list.size(); x++) {
+				int id = list.getPhysicalCardId(x);
+				
+				if(abilityOrdinals[id] == HIGHEST_CARD_IS_0_ORDINAL) {
+					containsHighestFightCardEquals0 = true;
+				}
+	
+				int fightingVal = fightingValues[id];
+	
+				if(CardSet.contains(isDoubled, id)) {
+					fightingVal *= 2;
+				}
+	
+				if(fightingValues[id] > highestFightingValue) {
+					highestFightingValue = fightingValues[id];
+				}
+				
+				if(eachFaceUpFightingCardIsPlus1) {
+					currHazardVal--;
+				}
+				
+				currHazardVal -= fightingVal;
 			}
-
-			currHazardVal -= fightingVal;
-
 		}
 
 		currHazardVal += getPirateCardInfo().getHazardPoints();
 
-		if(containsHighestFightCardEquals0 && highestCard != null && highestCard.getFightingValue() > 0) {
+		if(containsHighestFightCardEquals0 && highestFightingValue > 0) {
 			
-			currHazardVal += highestCard.getFightingValue(); // Yes this is correct as '+=' 
+			currHazardVal += highestFightingValue; // Yes this is correct as '+=' 
 		}
 
 		return currHazardVal;
@@ -1185,12 +1243,7 @@ public final class PirateGameState {
 			FridayUtil.throwErr("Fighting card used map is null");
 		}
 		
-		Boolean val = lhsOrRhsFightingCardUsed.get(c.getPhysicalCardId());
-		if(val == null || val == false) {
-			return false;
-		}
-		
-		return true;
+		return lhsOrRhsFightingCardUsed.contains(c.getPhysicalCardId());
 	}
 	
 	public boolean isFightingCardDoubled(Card c) {
@@ -1198,13 +1251,7 @@ public final class PirateGameState {
 			FridayUtil.throwErr("Fighting card doubled map is null");
 		}
 		
-		Boolean val = lhsOrRhsFightingCardDoubled.get(c.getPhysicalCardId());
-		if(val == null || val == false) {
-			return false;
-		}
-		
-		return true;
-		
+		return lhsOrRhsFightingCardDoubled.contains(c.getPhysicalCardId());
 	}
 	
 	private final static boolean OUT_ENABLED = false;
@@ -1286,11 +1333,11 @@ public final class PirateGameState {
 		return discardFightCards;
 	}
 	
-	public final MapCards getLhsOrRhsFightingCardDoubled() {
+	public final CardSet getLhsOrRhsFightingCardDoubled() {
 		return lhsOrRhsFightingCardDoubled;
 	}
 	
-	public final MapCards getLhsOrRhsFightingCardUsed() {
+	public final CardSet getLhsOrRhsFightingCardUsed() {
 		return lhsOrRhsFightingCardUsed;
 	}
 
@@ -1298,4 +1345,8 @@ public final class PirateGameState {
 		return pirateCardInfo;
 	}
 	
+	public final long getZobristHash() {
+		return zobristHash;
+	}
+	
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.AllCards;
+import com.fridai.util.FridayUtil;
+
+/**
+ * Compares the parallel search modes against the sequential search (Main.evaluateBestAction(...)), on a fixed set
+ * of game positions (generated by playing random actions from fixed seeds), with the same node budget per decision.
+ *
+ * For each mode and number of threads, this reports:
+ * - quality: how often the mode picks an action that the sequential search scores as (one of) the best, and the
+ *   average loss in sequential score of the picked action versus the best action (see Main.score(...): a life 
+ *   point is worth BucketPriorityQueue.LIFE_POINT_SCORE).
+ * - scaling: game states expanded per second (as counted by the search, see SearchBudget.getNodesUsed(): a search 
+ *   may stop before its budget is used up, or overshoot it).
+ *
+ * Usage: SearchBenchmark [positions] [nodes per decision] [max threads] (default: 20 20000 16)
+ **/
+public class SearchBenchmark {
+
+	public static void main(String[] args) throws IOException {
+
+		int numPositions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int nodesPerDecision = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+		InputStream fridayGameTxtInputStream = FridayUtil.readFridayGameDataFile();
+		if(fridayGameTxtInputStream == null) { FridayUtil.throwErr("Unable to find Friday data file."); return; }
+
+		CardReader cr = new CardReader(fridayGameTxtInputStream);
+		FridayUtil.ALL_CARDS = new AllCards(cr.getAgingCards(), cr.getPirateCards(), cr.getFightingCards(), cr.getHazardCards());
+
+		List<Position> positions = createPositions(numPositions);
+
+		// JVM warm up
+		for(Position p : positions) {
+			p.resetRandom();
+			Main.evaluateBestAction(p.gsc, new SearchBudget(nodesPerDecision, false, 0));
+		}
+		
+		// Sequential scores of each position, by action
+		List<Map<String, Integer>> sequentialScores = new ArrayList<>();
+		long sequentialNanos = 0;
+		long sequentialNodes = 0;
+		for(Position p : positions) {
+			p.resetRandom();
+			SearchBudget budget = new SearchBudget(nodesPerDecision, false, 0);
+			long start = System.nanoTime();
+			sequentialScores.add(byName(Main.evaluateBestAction(p.gsc, budget)));
+			sequentialNanos += System.nanoTime() - start;
+			sequentialNodes += budget.getNodesUsed();
+		}
+
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(1);
+
+		System.out.println(positions.size()+" positions, "+nf.format(nodesPerDecision)+" game states per decision");
+		System.out.println("sequential: "+nf.format(nodesPerSecond(sequentialNodes, sequentialNanos))+" game states/sec");
+
+		for(int threads = 1; threads <= maxThreads; threads *= 2) {
+
+			FridayUtil.SEARCH_THREADS = threads;
+			final int finalThreads = threads;
+
+			report("root split", threads, positions, sequentialScores, nodesPerDecision, nf,
+					(gsc, budget) -> ParallelRootSearch.evaluateBestAction(gsc, budget));
+
+			report("multi queue", threads, positions, sequentialScores, nodesPerDecision, nf,
+					(gsc, budget) -> MultiQueueSearch.evaluateBestAction(gsc, budget, finalThreads));
+
+			report("hash distributed", threads, positions, sequentialScores, nodesPerDecision, nf,
+					(gsc, budget) -> HashDistributedSearch.evaluateBestAction(gsc, budget, finalThreads));
+		}
+
+		System.exit(0);
+	}
+
+	private static void report(String name, int threads, List<Position> positions, List<Map<String, Integer>> sequentialScores,
+			int nodesPerDecision, NumberFormat nf, Engine engine) {
+
+		int agree = 0;
+		double totalLoss = 0;
+		long nanos = 0;
+		long nodes = 0;
+
+		for(int x = 0; x < positions.size(); x++) {
+			Position p = positions.get(x);
+			p.resetRandom();
+
+			SearchBudget budget = new SearchBudget(nodesPerDecision, false, 0);
+			long start = System.nanoTime();
+			Map<String, Integer> scores = byName(engine.evaluate(p.gsc, budget));
+			nanos += System.nanoTime() - start;
+			nodes += budget.getNodesUsed();
+
+			String picked = null;
+			for(Map.Entry<String, Integer> e : scores.entrySet()) {
+				if(picked == null || e.getValue() > scores.get(picked)) {
+					picked = e.getKey();
+				}
+			}
+
+			Map<String, Integer> sequential = sequentialScores.get(x);
+			long best = Integer.MIN_VALUE;
+			for(int score : sequential.values()) {
+				best = Math.max(best, score);
+			}
+
+			long loss = best - sequential.get(picked);
+			if(loss == 0) {
+				agree++;
+			}
+			totalLoss += loss;
+		}
+
+		System.out.println(name+" ["+threads+" threads]: "
+				+ "picks best: "+agree+"/"+positions.size()
+				+ "  avg score loss: "+nf.format(totalLoss/positions.size())
+				+ "  "+nf.format(nodesPerSecond(nodes, nanos))+" game states/sec");
+	}
+
+	private static double nodesPerSecond(long nodes, long nanos) {
+		return nodes / (nanos / 1000000000d);
+	}
+
+	/** The actions of each search are different Action instances, so they are matched by name. */
+	private static Map<String, Integer> byName(Map<Action, Integer> scores) {
+		Map<String, Integer> result = new HashMap<>();
+		for(Map.Entry<Action, Integer> e : scores.entrySet()) {
+			result.merge(e.getKey().prettyPrint(), e.getValue(), Math::max);
+		}
+		return result;
+	}
+
+	/** Play random actions from fixed seeds, to find positions with more than one available action. */
+	private static List<Position> createPositions(int numPositions) {
+
+		List<Position> result = new ArrayList<>();
+
+		for(long seed = 0; result.size() < numPositions; seed++) {
+
+			FridayUtil.initializeRandomSeed(seed, 0);
+			Random walk = new Random(seed);
+
+			GameStateContainer gsc = new GameStateContainer(Main.initializeGameState(FridayUtil.ALL_CARDS));
+
+			int steps = walk.nextInt(60);
+			for(int step = 0; step < steps && gsc != null; step++) {
+				List<Action> actions = Main.calculateAvailableActions(gsc);
+				if(actions.size() == 0) {
+					gsc = null;
+					break;
+				}
+
+				WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(actions.get(walk.nextInt(actions.size()))), gsc);
+				gsc = wgsc.isWin() ? null : wgsc.getGsc();
+			}
+
+			if(gsc != null && Main.calculateAvailableActions(gsc).size() > 1) {
+				result.add(new Position(gsc, seed, FridayUtil.UNIVERAL_RANDOM.get().getNumbersGenerated()));
+			}
+		}
+
+		return result;
+	}
+
+	/** A game state, and the state of the random number generator at that game state */
+	private static final class Position {
+		final GameStateContainer gsc;
+		final long seed;
+		final long iterations;
+
+		Position(GameStateContainer gsc, long seed, long iterations) {
+			this.gsc = gsc;
+			this.seed = seed;
+			this.iterations = iterations;
+		}
+
+		/** Each search starts with the same random number generator state */
+		void resetRandom() {
+			FridayUtil.initializeRandomSeed(seed, iterations);
+		}
+	}
+
+	private static interface Engine {
+		Map<Action, Integer> evaluate(GameStateContainer gsc, SearchBudget budget);
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fridai.util.FridayUtil;
+
+/** 
+ * The amount of work that the search may perform for a single decision: a maximum number of game states 
+ * to expand, and/or a wall-clock deadline (as a System.nanoTime() value). The search stops at whichever 
+ * limit is reached first.
+ * 
+ * Reading the clock is not free, so the search only checks the deadline once every 
+ * DEADLINE_CHECK_INTERVAL expansions (each time the count crosses a multiple of DEADLINE_CHECK_INTERVAL, so that a 
+ * search that counts several game states at a time still checks it). 
+ * 
+ * A budget may also be 'sliced' (see AdaptiveBudget): at the end of each slice of game states, the search checks
+ * whether one root action leads the others by more than the decision margin, and if so, stops early.
+ * 
+ * The searches that use a budget (and the budgets derived from it by split(...) and reduce(...)) add the number of 
+ * game states that they expanded to a shared count, see getNodesUsed(). A search that re-uses the search tree of the 
+ * previous decision (see Main.evaluateBestAction(...)) starts with the game states that were expanded in the re-used 
+ * subtrees: these count against maxNodes, but were not expanded by this search, so they are counted separately, see
+ * getNodesReused(). The slices are counted from the game states that the search expanded itself.
+ **/
+public final class SearchBudget {
+
+	/** Must be a power of 2 */
+	public static final int DEADLINE_CHECK_INTERVAL = 256;
+	
+	private final long maxNodes;
+	
+	private final boolean hasDeadline;
+	
+	private final long deadlineInNanos;
+	
+	/** If greater than 0, the search checks for a decided search every 'sliceNodes' game states */
+	private final long sliceNodes;
+	
+	private final int decisionMargin;
+	
+	private final AtomicLong nodesUsed;
+	
+	private final AtomicLong nodesReused;
+
+	public SearchBudget(long maxNodes, boolean hasDeadline, long deadlineInNanos) {
+		this(maxNodes, hasDeadline, deadlineInNanos, 0, 0, new AtomicLong(0), new AtomicLong(0));
+	}
+	
+	private SearchBudget(long maxNodes, boolean hasDeadline, long deadlineInNanos, long sliceNodes, int decisionMargin, 
+			AtomicLong nodesUsed, AtomicLong nodesReused) {
+		this.maxNodes = maxNodes;
+		this.hasDeadline = hasDeadline;
+		this.deadlineInNanos = deadlineInNanos;
+		this.sliceNodes = sliceNodes;
+		this.decisionMargin = decisionMargin;
+		this.nodesUsed = nodesUsed;
+		this.nodesReused = nodesReused;
+	}
+	
+	/** Budget of at most 'maxNodes' game states, which stops early at the end of a slice of 'sliceNodes' game
+	 * states if one root action leads the others by more than 'decisionMargin'. */
+	public static SearchBudget createSliced(long maxNodes, long sliceNodes, int decisionMargin) {
+		return new SearchBudget(maxNodes, false, 0, sliceNodes, decisionMargin, new AtomicLong(0), new AtomicLong(0));
+	}
+	
+	/** Budget as specified by the user-tweakable constants in FridayUtil: if NANOS_PER_DECISION is set, 
+	 * then the search runs until that deadline, otherwise it expands QUEUE_TO_PROCESS game states. */
+	public static SearchBudget createDefault() {
+		if(FridayUtil.NANOS_PER_DECISION > 0) {
+			return new SearchBudget(Long.MAX_VALUE, true, System.nanoTime() + FridayUtil.NANOS_PER_DECISION);
+		} else {
+			return new SearchBudget(FridayUtil.QUEUE_TO_PROCESS, false, 0);
+		}
+	}
+	
+	/** Return a budget for one of 'parts' searches that run alongside each other: the game states are split
+	 * evenly between them, and the deadline (if any) is shared. */
+	public SearchBudget split(int parts) {
+		return new SearchBudget(Math.max(1, maxNodes / parts), hasDeadline, deadlineInNanos, 
+				sliceNodes > 0 ? Math.max(1, sliceNodes / parts) : 0, decisionMargin, nodesUsed, nodesReused);
+	}
+	
+	/** Return the remainder of this budget, after 'nodes' game states have been expanded elsewhere. */
+	public SearchBudget reduce(long nodes) {
+		return new SearchBudget(Math.max(1, maxNodes - nodes), hasDeadline, deadlineInNanos, sliceNodes, decisionMargin, 
+				nodesUsed, nodesReused);
+	}
+	
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+	
+	public boolean hasDeadline() {
+		return hasDeadline;
+	}
+	
+	public long getDeadlineInNanos() {
+		return deadlineInNanos;
+	}
+	
+	public int getDecisionMargin() {
+		return decisionMargin;
+	}
+	
+	/** Whether the search should check for a decided search (see class description), after having expanded 
+	 * 'processed' game states, where 'previouslyProcessed' is the count at the previous call: that is, whether a 
+	 * slice ends in (previouslyProcessed, processed]. Neither count includes the re-used game states. */
+	public boolean isSliceComplete(long previouslyProcessed, long processed) {
+		return sliceNodes > 0 && previouslyProcessed / sliceNodes != processed / sliceNodes;
+	}
+	
+	/** Add to the number of game states expanded by the searches that use this budget; thread safe. */
+	public void addNodesUsed(long nodes) {
+		nodesUsed.addAndGet(nodes);
+	}
+	
+	public long getNodesUsed() {
+		return nodesUsed.get();
+	}
+	
+	/** Add to the number of game states that the searches that use this budget re-used from the search tree of the
+	 * previous decision, rather than expanding them; thread safe. */
+	public void addNodesReused(long nodes) {
+		nodesReused.addAndGet(nodes);
+	}
+	
+	public long getNodesReused() {
+		return nodesReused.get();
+	}
+	
+	/** Whether the search should stop, after having expanded 'processed' game states (one more than at the previous
+	 * call). The deadline is only checked when 'processed' is a multiple of DEADLINE_CHECK_INTERVAL. */
+	public boolean isExhausted(long processed) {
+		return isExhausted(processed-1, processed);
+	}
+	
+	/** Whether the search should stop, after having expanded 'processed' game states, where 'previouslyProcessed' is 
+	 * the count at the previous call (for a search that counts several game states at a time). The deadline is 
+	 * only checked when a multiple of DEADLINE_CHECK_INTERVAL is in (previouslyProcessed, processed]. */
+	public boolean isExhausted(long previouslyProcessed, long processed) {
+		if(processed > maxNodes) {
+			return true;
+		}
+		
+		if(hasDeadline && (previouslyProcessed / DEADLINE_CHECK_INTERVAL != processed / DEADLINE_CHECK_INTERVAL 
+				|| previouslyProcessed < 0)) {
+			// Compare via subtraction, as nanoTime() values may overflow
+			return System.nanoTime() - deadlineInNanos >= 0;
+		}
+		
+		return false;
+	}
+	
+}
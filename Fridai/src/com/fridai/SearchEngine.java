@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.Map;
+
+import com.fridai.actions.Action;
+
+/**
+ * A search algorithm that is used by devMain to choose an action: given a game state and a budget, score each of 
+ * the game state's available actions (larger is better). The action with the largest score is taken.
+ * 
+ * An engine instance is used for the decisions of a single game, in order, and may carry state from one 
+ * decision to the next (see BestFirstSearchEngine). An instance must only be used by a single thread. 
+ * 
+ * See FridayUtil.SEARCH_ENGINE.
+ **/
+public interface SearchEngine {
+
+	/** Score all of the available actions of gsc; the returned map contains every action returned by 
+	 * Main.calculateAvailableActions(gsc). */
+	public Map<Action, Integer> evaluateBestAction(GameStateContainer gsc, SearchBudget budget);
+	
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai;
+
+import java.util.Arrays;
+
+import com.fridai.Main.WinnableGameStateContainer;
+import com.fridai.actions.Action;
+import com.fridai.util.FridayUtil;
+
+/**
+ * The path of a depth-first search (see IterativeDeepeningSearchEngine): a stack of the game states from the root 
+ * to the current game state. apply(...) pushes the game state that results from an action, and undo() pops it.
+ * 
+ * This is not make/unmake: the game states are immutable, so apply(...) creates a complete new GameState or
+ * PirateGameState with Main.doAction(...), exactly as the best-first search does. The saving is only that the 
+ * search keeps no other game states: undo() releases the popped game state for garbage collection, and the stack 
+ * itself is reused for the whole search (see reset(...)).
+ * 
+ * This class is not thread safe.
+ **/
+public final class SearchPath {
+
+	private GameStateContainer[] stack = new GameStateContainer[64];
+	
+	/** Index of the current game state in 'stack' */
+	private int depth = 0;
+	
+	public SearchPath(GameStateContainer root) {
+		reset(root);
+	}
+	
+	/** Start a new path at the given root game state */
+	public void reset(GameStateContainer root) {
+		Arrays.fill(stack, 0, depth+1, null);
+		stack[0] = root;
+		depth = 0;
+	}
+	
+	/** Apply the action to the current game state, and push the resulting game state. Returns true if the action wins
+	 * the game: there is no game state after a win, so in that case nothing is pushed (and the action must not be 
+	 * undone). */
+	public boolean apply(Action action) {
+		WinnableGameStateContainer wgsc = Main.doAction(Main.convertActionToResponse(action), stack[depth]);
+		if(wgsc.isWin()) { return true; }
+		
+		if(depth+1 == stack.length) {
+			stack = Arrays.copyOf(stack, stack.length*2);
+		}
+		stack[++depth] = wgsc.getGsc();
+		
+		return false;
+	}
+	
+	/** Return to the game state before the most recently applied (non-winning) action */
+	public void undo() {
+		if(depth == 0) { FridayUtil.throwErr("Nothing to undo"); }
+		
+		stack[depth--] = null;
+	}
+	
+	public GameStateContainer get() {
+		return stack[depth];
+	}
+	
+	/** The number of actions applied since the root */
+	public int getDepth() {
+		return depth;
+	}
+	
+}
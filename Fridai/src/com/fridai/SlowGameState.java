@@ -23,6 +23,7 @@ import com.fridai.json.JsonSlowGameState;
 import com.fridai.util.FridayUtil;
 import com.fridai.util.ImmutableGrowableListCards;
 import com.fridai.util.ListCards;
+import com.fridai.util.ZobristHash;
 
 /** This class is an optimization to reduce memory usage and improve performance. This class 
  * includes any objects which would otherwise be part of GameState, but that don't change often
@@ -51,6 +52,10 @@ public final class SlowGameState {
 	/* Nullable - this will only be not-null if the wild card pirate is one of the activePirates, and the game state
 	 * is a pirate game state */
 	private final PirateCardInfo wildCardPirate;
+	
+	/** Zobrist hash of the contents of this object, see ZobristHash. Calculated once on construction, as 
+	 * instances of this class are (by design) rarely created. */
+	private final long zobristHash;
 
 	public SlowGameState(ListCards agingCards, int gameLevel, PirateCard[] activePirates,
 			ImmutableGrowableListCards activeRoundCards, int phaseNumber, PirateCardInfo wildCardPirate) {
@@ -67,6 +72,19 @@ public final class SlowGameState {
 		this.activeRoundCards = activeRoundCards;
 		this.gameLevel = gameLevel;
 		this.wildCardPirate = wildCardPirate;
+		
+		long hash = ZobristHash.zone(agingCards.getZobristHash(), ZobristHash.ZONE_AGING_CARDS);
+		if(activeRoundCards != null) {
+			hash ^= ZobristHash.zone(activeRoundCards.getZobristHash() ^ ZobristHash.value(-1), ZobristHash.ZONE_ACTIVE_ROUND_CARDS);
+		}
+		for(int x = 0; x < activePirates.length; x++) {
+			hash ^= ZobristHash.zone(ZobristHash.value(activePirates[x].getPirateCardId()*64 + x), ZobristHash.ZONE_MISC);
+		}
+		if(wildCardPirate != null) {
+			hash ^= ZobristHash.zone(ZobristHash.value(wildCardPirate.getHazardPoints()*1024 + wildCardPirate.getFreeFightingCards()), ZobristHash.ZONE_ACTIVE_CARD);
+		}
+		hash ^= ZobristHash.zone(ZobristHash.value(phaseNumber*16 + gameLevel), ZobristHash.ZONE_PHASE);
+		this.zobristHash = hash;
 	}
 
 	public int getPhaseNumber() {
@@ -123,6 +141,10 @@ public final class SlowGameState {
 		return wildCardPirate;
 	}
 	
+	public long getZobristHash() {
+		return zobristHash;
+	}
+	
 	public boolean equalByContents(SlowGameState other) {
 		
 		// Active round cards
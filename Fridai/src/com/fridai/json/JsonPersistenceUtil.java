@@ -35,10 +35,10 @@ import com.fridai.PirateGameState;
 import com.fridai.RuntimeObject;
 import com.fridai.RuntimeObjectMap;
 import com.fridai.SlowGameState;
+import com.fridai.util.CardSet;
 import com.fridai.util.FridayUtil;
 import com.fridai.util.ImmutableGrowableListCards;
 import com.fridai.util.ListCards;
-import com.fridai.util.MapCards;
 
 /** Utility methods for converting the game state to and from JSON. */
 public class JsonPersistenceUtil {
@@ -172,21 +172,14 @@ public class JsonPersistenceUtil {
 		rhs_fightCards = rhs_fightCards.mutateAddAll(cardsAsList(jgs.getRhs_fightCards(), translation));
 
 		
-		MapCards/*<Integer - physical card id, Boolean>*/ lhsOrRhsFightingCardUsed = null;		
+		CardSet lhsOrRhsFightingCardUsed = null;		
 		if(jgs.getLhsOrRhsFightingCardUsed() != null) { 
-			lhsOrRhsFightingCardUsed = new MapCards();
-			for(Map.Entry<Integer, Boolean> e : jgs.getLhsOrRhsFightingCardUsed().entrySet()) {
-				lhsOrRhsFightingCardUsed.put(card(e.getKey(), translation).getPhysicalCardId(), e.getValue());
-			}
+			lhsOrRhsFightingCardUsed = toCardSet(jgs.getLhsOrRhsFightingCardUsed(), translation);
 		}
 		
-		MapCards /*<Integer - physical card id, Boolean>*/ lhsOrRhsFightingCardDoubled = null;		
+		CardSet lhsOrRhsFightingCardDoubled = null;		
 		if(jgs.getLhsOrRhsFightingCardDoubled() != null) {
-			lhsOrRhsFightingCardDoubled = new MapCards();
-			
-			for(Map.Entry<Integer, Boolean> e : jgs.getLhsOrRhsFightingCardDoubled().entrySet()) {
-				lhsOrRhsFightingCardDoubled.put(card(e.getKey(), translation).getPhysicalCardId(), e.getValue());
-			}
+			lhsOrRhsFightingCardDoubled = toCardSet(jgs.getLhsOrRhsFightingCardDoubled(), translation);
 		}
 
 		int lifePoints = jgs.getLifePoints();
@@ -307,6 +300,19 @@ public class JsonPersistenceUtil {
 		
 	}
 	
+	/** The cards of the JSON map (JSON card id -> Boolean) that map to true */
+	private static CardSet toCardSet(Map<Integer, Boolean> jsonMap, JsonTranslation jt) {
+		CardSet result = CardSet.EMPTY;
+		
+		for(Map.Entry<Integer, Boolean> e : jsonMap.entrySet()) {
+			if(e.getValue() == Boolean.TRUE) {
+				result = result.with(card(e.getKey(), jt).getPhysicalCardId());
+			}
+		}
+		
+		return result;
+	}
+	
 	private static Card card(int jsonCardId, JsonTranslation jt) {
 		
 		return jt.getCard(jsonCardId);
@@ -29,7 +29,7 @@ import com.fridai.Card;
 import com.fridai.GameState;
 import com.fridai.PirateCard;
 import com.fridai.PirateGameState;
-import com.fridai.util.MapCards;
+import com.fridai.util.CardSet;
 
 /** Utility class used to represent cards and game states with ANSI coloured text. */
 public class AnsiCards {
@@ -87,9 +87,9 @@ public class AnsiCards {
 		
 		boolean doubled = false;
 		if(gs != null) {
-			MapCards m = gs.getLhsOrRhsFightingCardDoubled();
+			CardSet m = gs.getLhsOrRhsFightingCardDoubled();
 			if(m != null) {
-				doubled = m.get(c.getPhysicalCardId()) == true;
+				doubled = m.contains(c.getPhysicalCardId());
 			}
 			
 		}
@@ -129,9 +129,9 @@ public class AnsiCards {
 		
 		boolean doubled = false;
 		if(gs != null) {
-			MapCards m = gs.getLhsOrRhsFightingCardDoubled();
+			CardSet m = gs.getLhsOrRhsFightingCardDoubled();
 			if(m != null) {
-				doubled = m.get(c.getPhysicalCardId()) == true;
+				doubled = m.contains(c.getPhysicalCardId());
 			}
 			
 		}
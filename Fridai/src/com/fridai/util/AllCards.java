@@ -23,7 +23,7 @@ import java.util.List;
 import com.fridai.Card;
 import com.fridai.PirateCard;
 
-/** An unmodifiable list of all the cards in the game. */
+/** An unmodifiable list of all the cards in the game. Creating an instance also (re)builds the CardTable. */
 public class AllCards {
 
 	private final List<Card> agingCards;
@@ -39,6 +39,8 @@ public class AllCards {
 		this.pirateCards = Collections.unmodifiableList(pirateCards);
 		this.fightingCards = Collections.unmodifiableList(fightingCards);
 		this.hazardCards = Collections.unmodifiableList(hazardCards);
+		
+		CardTable.initialize(agingCards, fightingCards, hazardCards);
 	}
 
 	public List<Card> getAgingCards() {
@@ -136,7 +136,28 @@ public class BenchmarkEntries {
 			
 			System.out.println("Total per second: "+totalPerSecond);
 			
+			long pruned = 0;
+			long saved = 0;
+			for(Map.Entry<Long, BTEntry> e : list) {
+				pruned += e.getValue().pruned;
+				saved += e.getValue().expansionsSaved;
+			}
+			if(pruned > 0 || saved > 0) {
+				NumberFormat nf = NumberFormat.getInstance();
+				System.out.println("Branch and bound pruned: "+nf.format(pruned)+"  expansions saved: "+nf.format(saved));
+			}
+			
+		}
+	}
+	
+	/** Add the number of game states pruned by branch and bound (see FridayUtil.BRANCH_AND_BOUND), and the number
+	 * of expansions of the search budget that were left unused because of it. */
+	public void addPruning(long pruned, long expansionsSaved) {
+		synchronized(lock) {
+			BTEntry entry = getEntry_synch_lock();
 			
+			entry.pruned += pruned;
+			entry.expansionsSaved += expansionsSaved;
 		}
 	}
 	
@@ -168,6 +189,8 @@ public class BenchmarkEntries {
 	public static class BTEntry {
 		BTPair total = new BTPair(0, 0);
 		List<BTPair> individualEntries = new ArrayList<>();
+		long pruned = 0;
+		long expansionsSaved = 0;
 	}
 	
 	/** Store the number of iterations completed, and the number of nanoseconds elapsed during that time. */
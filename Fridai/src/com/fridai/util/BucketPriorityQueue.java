@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A max priority queue of int values (search tree node indices, see SearchTree) specialized for the search 
+ * frontier, as a replacement for java.util.PriorityQueue.
+ * 
+ * The scores produced by Main.score(...) are dominated by the life points component (lifePoints * 10000000), 
+ * and the number of distinct life point values is small. This queue thus keeps one bucket per life point value, 
+ * and each bucket is a binary heap (ordered by the full score, eg the fighting card rating component) of only the 
+ * entries with that life point value. An offer/poll only needs to sift through a single (much smaller) bucket, and 
+ * the scores are compared directly as ints (stored in a parallel array) rather than through a Comparator.
+ * 
+ * Scores whose life point value is outside of the bucket range are clamped into the lowest/highest bucket; since
+ * the buckets are ordered by the full score, the queue still polls in exact score order in that case (just 
+ * with less benefit from bucketing).
+ * 
+ * This class is not thread safe.
+ **/
+public final class BucketPriorityQueue {
+
+	/** The score value of a single life point, see Main.score(...) */
+	public static final int LIFE_POINT_SCORE = 10000000;
+	
+	private static final int MIN_LIFE_POINTS = -32;
+	
+	private static final int NUM_BUCKETS = 64;
+	
+	private static final int INITIAL_BUCKET_CAPACITY = 64;
+	
+	private final int[][] bucketScores = new int[NUM_BUCKETS][];
+	
+	private final int[][] bucketEntries = new int[NUM_BUCKETS][];
+	
+	private final int[] bucketSizes = new int[NUM_BUCKETS];
+	
+	/** Index of the highest bucket that may be non-empty */
+	private int highestBucket = 0;
+	
+	private int size = 0;
+	
+	public BucketPriorityQueue() {
+		for(int x = 0; x < NUM_BUCKETS; x++) {
+			bucketScores[x] = new int[INITIAL_BUCKET_CAPACITY];
+			bucketEntries[x] = new int[INITIAL_BUCKET_CAPACITY];
+		}
+	}
+	
+	public void offer(int entry, int score) {
+		
+		int bucket = Math.floorDiv(score, LIFE_POINT_SCORE) - MIN_LIFE_POINTS;
+		if(bucket < 0) {
+			bucket = 0;
+		} else if(bucket >= NUM_BUCKETS) {
+			bucket = NUM_BUCKETS-1;
+		}
+		
+		int[] scores = bucketScores[bucket];
+		int[] entries = bucketEntries[bucket];
+		int pos = bucketSizes[bucket];
+		
+		if(pos == scores.length) {
+			int[] newScores = new int[scores.length*2];
+			System.arraycopy(scores, 0, newScores, 0, scores.length);
+			int[] newEntries = new int[entries.length*2];
+			System.arraycopy(entries, 0, newEntries, 0, entries.length);
+			
+			scores = newScores;
+			entries = newEntries;
+			bucketScores[bucket] = scores;
+			bucketEntries[bucket] = entries;
+		}
+		
+		// Sift up
+		while(pos > 0) {
+			int parent = (pos-1) >>> 1;
+			if(scores[parent] >= score) { break; }
+			scores[pos] = scores[parent];
+			entries[pos] = entries[parent];
+			pos = parent;
+		}
+		scores[pos] = score;
+		entries[pos] = entry;
+		
+		bucketSizes[bucket]++;
+		size++;
+		
+		if(bucket > highestBucket) {
+			highestBucket = bucket;
+		}
+	}
+
+	/** Remove and return the entry with the highest score; the queue must not be empty. */
+	public int poll() {
+		if(size == 0) { FridayUtil.throwErr("Queue is empty"); }
+		
+		while(bucketSizes[highestBucket] == 0) {
+			highestBucket--;
+		}
+		
+		final int bucket = highestBucket;
+		
+		int[] scores = bucketScores[bucket];
+		int[] entries = bucketEntries[bucket];
+		
+		int result = entries[0];
+		
+		int last = --bucketSizes[bucket];
+		size--;
+		
+		int score = scores[last];
+		int entry = entries[last];
+
+		// Sift down
+		int pos = 0;
+		int half = last >>> 1;
+		while(pos < half) {
+			int child = (pos << 1) + 1;
+			int right = child+1;
+			if(right < last && scores[right] > scores[child]) {
+				child = right;
+			}
+			if(score >= scores[child]) { break; }
+			
+			scores[pos] = scores[child];
+			entries[pos] = entries[child];
+			pos = child;
+		}
+		
+		if(last > 0) {
+			scores[pos] = score;
+			entries[pos] = entry;
+		}
+		
+		return result;
+	}
+	
+	/** Return the highest score in the queue; the queue must not be empty. */
+	public int peekScore() {
+		if(size == 0) { FridayUtil.throwErr("Queue is empty"); }
+		
+		while(bucketSizes[highestBucket] == 0) {
+			highestBucket--;
+		}
+		return bucketScores[highestBucket][0];
+	}
+	
+	/** Remove the lowest scoring entries until the queue contains at most maxSize entries, pass each removed entry 
+	 * to 'removed', and return the number of entries that were removed. */
+	public int trimTo(int maxSize, IntConsumer removed) {
+		
+		final int toRemove = size - maxSize;
+		if(toRemove <= 0) { return 0; }
+		
+		int removedCount = 0;
+		
+		for(int bucket = 0; bucket < NUM_BUCKETS && removedCount < toRemove; bucket++) {
+			
+			int bucketSize = bucketSizes[bucket];
+			if(bucketSize == 0) { continue; }
+			
+			int[] scores = bucketScores[bucket];
+			int[] entries = bucketEntries[bucket];
+			
+			int remaining = toRemove - removedCount;
+			
+			if(bucketSize <= remaining) {
+				// Remove the whole bucket
+				for(int x = 0; x < bucketSize; x++) {
+					removed.accept(entries[x]);
+				}
+				bucketSizes[bucket] = 0;
+				removedCount += bucketSize;
+				
+			} else {
+				// Sort the bucket by score (as score/entry pairs), remove the lowest, and put the rest back in 
+				// descending order, which is also a valid heap order.
+				long[] sorted = new long[bucketSize];
+				for(int x = 0; x < bucketSize; x++) {
+					sorted[x] = ((long)scores[x] << 32) | (entries[x] & 0xFFFFFFFFL);
+				}
+				Arrays.sort(sorted);
+				
+				for(int x = 0; x < remaining; x++) {
+					removed.accept((int)sorted[x]);
+				}
+				
+				int keep = bucketSize - remaining;
+				for(int x = 0; x < keep; x++) {
+					long value = sorted[bucketSize-1-x];
+					scores[x] = (int)(value >> 32);
+					entries[x] = (int)value;
+				}
+				bucketSizes[bucket] = keep;
+				removedCount += remaining;
+			}
+		}
+		
+		size -= removedCount;
+		
+		return removedCount;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		Arrays.fill(bucketSizes, 0);
+		highestBucket = 0;
+		size = 0;
+	}
+	
+}
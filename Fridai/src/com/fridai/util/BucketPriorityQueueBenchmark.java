@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.text.NumberFormat;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** 
+ * Compares the offer/poll cost of BucketPriorityQueue against the java.util.PriorityQueue (with score 
+ * Comparator) that was previously used by the search frontier.
+ * 
+ * Scores are generated with the same shape as Main.score(...): a life point component (0 to 22) multiplied 
+ * by 10000000, plus a fighting card rating component. Two workloads are measured for each queue size: 
+ * - fill/drain: offer all N entries, then poll all N entries
+ * - best-first: starting from N entries, repeatedly poll one entry and offer 'children' with a similar 
+ *   score, which is the access pattern of Main.evaluateBestAction(...).
+ *   
+ * Usage: BucketPriorityQueueBenchmark [sizes...] (default: 200000 1000000 5000000)
+ **/
+public class BucketPriorityQueueBenchmark {
+
+	private static final int ITERATIONS = 5;
+	
+	private static final class Entry {
+		final int score;
+		
+		Entry(int score) {
+			this.score = score;
+		}
+	}
+	
+	public static void main(String[] args) {
+		
+		int[] sizes = new int[] { 200000, 1000000, 5000000 };
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int x = 0; x < args.length; x++) {
+				sizes[x] = Integer.parseInt(args[x]);
+			}
+		}
+		
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(1);
+		
+		for(int size : sizes) {
+			
+			Entry[] entries = generateEntries(size, 2*size);
+			
+			// The first iteration(s) are JVM warm up, so only the best iteration is reported.
+			double bestPqFill = Double.MAX_VALUE, bestBucketFill = Double.MAX_VALUE;
+			double bestPqBestFirst = Double.MAX_VALUE, bestBucketBestFirst = Double.MAX_VALUE;
+			
+			for(int x = 0; x < ITERATIONS; x++) {
+				bestPqFill = Math.min(bestPqFill, fillDrainPriorityQueue(entries, size));
+				bestBucketFill = Math.min(bestBucketFill, fillDrainBucketQueue(entries, size));
+				bestPqBestFirst = Math.min(bestPqBestFirst, bestFirstPriorityQueue(entries, size));
+				bestBucketBestFirst = Math.min(bestBucketBestFirst, bestFirstBucketQueue(entries, size));
+			}
+			
+			System.out.println(nf.format(size)+" nodes:");
+			System.out.println("  fill/drain   PriorityQueue: "+nf.format(bestPqFill)+" ns/op   BucketPriorityQueue: "+nf.format(bestBucketFill)+" ns/op");
+			System.out.println("  best-first   PriorityQueue: "+nf.format(bestPqBestFirst)+" ns/op   BucketPriorityQueue: "+nf.format(bestBucketBestFirst)+" ns/op");
+		}
+		
+	}
+	
+	private static Entry[] generateEntries(int size, int count) {
+		Random r = new Random(size);
+		
+		Entry[] result = new Entry[count];
+		for(int x = 0; x < count; x++) {
+			// Life points are clustered near the current life points of the game 
+			int lifePoints = Math.max(0, Math.min(22, 14 + (int)(r.nextGaussian()*3)));
+			result[x] = new Entry(lifePoints * BucketPriorityQueue.LIFE_POINT_SCORE + r.nextInt(8000));
+		}
+		return result;
+	}
+	
+	/** Returns nanoseconds per operation (offer or poll) */
+	private static double fillDrainPriorityQueue(Entry[] entries, int size) {
+		long start = System.nanoTime();
+		
+		PriorityQueue<Entry> queue = new PriorityQueue<>(256*1024, (a, b) -> b.score - a.score);
+		for(int x = 0; x < size; x++) {
+			queue.offer(entries[x]);
+		}
+		long checksum = 0;
+		while(queue.size() > 0) {
+			checksum += queue.poll().score;
+		}
+		
+		return toNanosPerOp(start, size*2, checksum);
+	}
+
+	private static double fillDrainBucketQueue(Entry[] entries, int size) {
+		long start = System.nanoTime();
+		
+		BucketPriorityQueue queue = new BucketPriorityQueue();
+		for(int x = 0; x < size; x++) {
+			queue.offer(x, entries[x].score);
+		}
+		long checksum = 0;
+		while(queue.size() > 0) {
+			checksum += entries[queue.poll()].score;
+		}
+		
+		return toNanosPerOp(start, size*2, checksum);
+	}
+	
+	private static double bestFirstPriorityQueue(Entry[] entries, int size) {
+		long start = System.nanoTime();
+
+		PriorityQueue<Entry> queue = new PriorityQueue<>(256*1024, (a, b) -> b.score - a.score);
+		int next = 0;
+		while(next < size/2) {
+			queue.offer(entries[next++]);
+		}
+		
+		long checksum = 0;
+		long ops = next;
+		while(next+2 <= entries.length) {
+			Entry e = queue.poll();
+			checksum += e.score;
+			// Each expansion produces (on average) one 'child' with a lower score, and one from elsewhere in the tree
+			queue.offer(entries[next++]);
+			queue.offer(entries[next++]);
+			ops += 3;
+		}
+		
+		return toNanosPerOp(start, ops, checksum);
+	}
+	
+	private static double bestFirstBucketQueue(Entry[] entries, int size) {
+		long start = System.nanoTime();
+
+		BucketPriorityQueue queue = new BucketPriorityQueue();
+		int next = 0;
+		while(next < size/2) {
+			queue.offer(next, entries[next].score);
+			next++;
+		}
+		
+		long checksum = 0;
+		long ops = next;
+		while(next+2 <= entries.length) {
+			checksum += entries[queue.poll()].score;
+			queue.offer(next, entries[next].score);
+			next++;
+			queue.offer(next, entries[next].score);
+			next++;
+			ops += 3;
+		}
+		
+		return toNanosPerOp(start, ops, checksum);
+	}
+	
+	private static double toNanosPerOp(long startTimeInNanos, long ops, long checksum) {
+		long elapsed = System.nanoTime() - startTimeInNanos;
+		
+		// Use the checksum so the JIT can't eliminate the work
+		if(checksum == 42) {
+			System.out.println(TimeUnit.NANOSECONDS.toMillis(elapsed));
+		}
+		
+		return (double)elapsed / (double)ops;
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** An immutable set of Cards (by physical card id), backed by a single long: bit x is set if the card with
+ * physical card id x is in the set. Physical card ids are < 64, so every Card fits.
+ *
+ * Adding a card returns a new instance with one more bit (rather than a copy of a 64 element
+ * array), and a lookup is a bit test. Game states may share the same instance, as it is never
+ * modified.
+ *
+ * Where a set is only needed for the duration of a method (eg to dedupe action targets), use a local long with
+ * the static bit(...)/contains(...) methods instead, to avoid allocating an instance per card. */
+public final class CardSet {
+
+	public static final CardSet EMPTY = new CardSet(0, 0);
+
+	private final long bits;
+
+	/** Zobrist hash of the cards of the set, see ZobristHash. */
+	private final long zobristHash;
+
+	private CardSet(long bits, long zobristHash) {
+		this.bits = bits;
+		this.zobristHash = zobristHash;
+	}
+
+	/** The set of the cards of the set bits of 'bits' */
+	public static CardSet fromBits(long bits) {
+		if(bits == 0) {
+			return EMPTY;
+		}
+
+		long hash = 0;
+		for(long remaining = bits; remaining != 0; remaining &= remaining-1) {
+			hash ^= ZobristHash.card(Long.numberOfTrailingZeros(remaining));
+		}
+
+		return new CardSet(bits, hash);
+	}
+
+	/** The bit of the given physical card id */
+	public static long bit(int physicalCardId) {
+		if(FridayUtil.RUNTIME_CHECK && (physicalCardId < 0 || physicalCardId >= 64)) {
+			FridayUtil.throwErr("Physical card id is out of range: "+physicalCardId);
+		}
+		return 1L << physicalCardId;
+	}
+
+	/** Whether the bit of the given physical card id is set in 'bits' */
+	public static boolean contains(long bits, int physicalCardId) {
+		return (bits & bit(physicalCardId)) != 0;
+	}
+
+	public final boolean contains(int physicalCardId) {
+		return (bits & bit(physicalCardId)) != 0;
+	}
+
+	/** This set, plus the given card (this instance, if it is already in the set) */
+	public final CardSet with(int physicalCardId) {
+		long b = bit(physicalCardId);
+		if((bits & b) != 0) {
+			return this;
+		}
+		return new CardSet(bits | b, zobristHash ^ ZobristHash.card(physicalCardId));
+	}
+
+	/** This set, minus the given card (this instance, if it is not in the set) */
+	public final CardSet without(int physicalCardId) {
+		long b = bit(physicalCardId);
+		if((bits & b) == 0) {
+			return this;
+		}
+		return new CardSet(bits & ~b, zobristHash ^ ZobristHash.card(physicalCardId));
+	}
+
+	public final long getBits() {
+		return bits;
+	}
+
+	public final long getZobristHash() {
+		return zobristHash;
+	}
+
+	/** The number of cards in the set */
+	public final int size() {
+		return Long.bitCount(bits);
+	}
+
+	public final Map<Integer, Boolean> toMapForJson() {
+		Map<Integer, Boolean> result = new HashMap<>();
+
+		for(long remaining = bits; remaining != 0; remaining &= remaining-1) {
+			result.put((Integer)Long.numberOfTrailingZeros(remaining), true);
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof CardSet)) {
+			return false;
+		}
+		return ((CardSet)o).bits == bits;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(bits);
+	}
+}
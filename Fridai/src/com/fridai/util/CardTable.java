@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.List;
+
+import com.fridai.Ability;
+import com.fridai.Card;
+
+/**
+ * The global table of all of the (fighting, hazard and aging) cards of the game, indexed by physical card id. This
+ * allows card collections (ListCards, ImmutableGrowableListCards, CardSet) to store physical card ids (one byte
+ * per card) rather than Card references, and to look up the Card (and its attributes) when it is needed.
+ *
+ * The attributes that are read by the hot loops of the search (Main.score(...), and the 
+ * calculateRemainingHazardValue() methods) are also available as primitive arrays indexed by physical card id 
+ * (a 'struct of arrays'), so that those loops read small contiguous arrays rather than a Card object per card.
+ *
+ * The table is (re)built by the AllCards constructor: since physical card ids are only unique within a single
+ * CardReader, game states must only contain the cards of the most recently created AllCards (which is always
+ * FridayUtil.ALL_CARDS). Each table is an immutable array, which is replaced rather than modified: callers must not 
+ * modify the arrays that are returned by this class.
+ **/
+public final class CardTable {
+
+	/** Physical card ids are < 64 (and so also fit in a byte), see CardSet */
+	public static final int MAX_CARDS = 64;
+
+	/** The value of getAbilityOrdinals() for a card without an ability */
+	public static final byte NO_ABILITY = -1;
+
+	/** Physical card id -> card */
+	private static Card[] cards = new Card[MAX_CARDS];
+
+	/** Physical card id -> Card.getFightingValue() */
+	private static int[] fightingValues = new int[MAX_CARDS];
+
+	/** Physical card id -> Card.getAbility().ordinal(), or NO_ABILITY */
+	private static byte[] abilityOrdinals = new byte[MAX_CARDS];
+
+	/** Physical card id -> Card.getRatingSimple() */
+	private static int[] ratingsSimple = new int[MAX_CARDS];
+
+	/** Physical card id -> Card.getHazardValues() (hazard value by phase; null if the card is not a hazard card) */
+	private static int[][] hazardValuesByPhase = new int[MAX_CARDS][];
+
+	/** Ability ordinal -> the physical card ids of the cards with that ability, as CardSet bits */
+	private static long[] cardBitsByAbility = new long[Ability.values().length];
+
+	private CardTable() {
+	}
+
+	static void initialize(List<Card> agingCards, List<Card> fightingCards, List<Card> hazardCards) {
+		Card[] newCards = new Card[MAX_CARDS];
+
+		addCards(newCards, agingCards);
+		addCards(newCards, fightingCards);
+		addCards(newCards, hazardCards);
+
+		int[] newFightingValues = new int[MAX_CARDS];
+		byte[] newAbilityOrdinals = new byte[MAX_CARDS];
+		int[] newRatingsSimple = new int[MAX_CARDS];
+		int[][] newHazardValuesByPhase = new int[MAX_CARDS][];
+		long[] newCardBitsByAbility = new long[Ability.values().length];
+
+		for(int x = 0; x < MAX_CARDS; x++) {
+			Card c = newCards[x];
+			if(c == null) {
+				newAbilityOrdinals[x] = NO_ABILITY;
+				continue;
+			}
+
+			newFightingValues[x] = c.getFightingValue();
+			newAbilityOrdinals[x] = c.getAbility() != null ? (byte)c.getAbility().ordinal() : NO_ABILITY;
+			newRatingsSimple[x] = c.getRatingSimple();
+			newHazardValuesByPhase[x] = c.getHazardValues() != null ? c.getHazardValues().clone() : null;
+
+			if(c.getAbility() != null) {
+				newCardBitsByAbility[c.getAbility().ordinal()] |= CardSet.bit(x);
+			}
+		}
+
+		cards = newCards;
+		fightingValues = newFightingValues;
+		abilityOrdinals = newAbilityOrdinals;
+		ratingsSimple = newRatingsSimple;
+		hazardValuesByPhase = newHazardValuesByPhase;
+		cardBitsByAbility = newCardBitsByAbility;
+	}
+
+	private static void addCards(Card[] newCards, List<Card> list) {
+		for(Card c : list) {
+			int id = c.getPhysicalCardId();
+			if(id < 0 || id >= MAX_CARDS) { FridayUtil.throwErr("Physical card id is out of range: "+c); }
+			if(newCards[id] != null) { FridayUtil.throwErr("Duplicate physical card id: "+c); }
+
+			newCards[id] = c;
+		}
+	}
+
+	/** The card with the given physical card id */
+	public static Card get(int physicalCardId) {
+		return cards[physicalCardId];
+	}
+
+	/** Physical card id -> Card.getFightingValue() */
+	public static int[] getFightingValues() {
+		return fightingValues;
+	}
+
+	/** Physical card id -> Card.getAbility().ordinal(), or NO_ABILITY; compare with ordinal(Ability) */
+	public static byte[] getAbilityOrdinals() {
+		return abilityOrdinals;
+	}
+
+	/** Physical card id -> Card.getRatingSimple() */
+	public static int[] getRatingsSimple() {
+		return ratingsSimple;
+	}
+
+	/** Physical card id -> hazard value by phase (null if the card is not a hazard card) */
+	public static int[][] getHazardValuesByPhase() {
+		return hazardValuesByPhase;
+	}
+
+	/** The physical card ids of the cards with the given ability, as CardSet bits */
+	public static long getCardBits(Ability ability) {
+		return cardBitsByAbility[ability.ordinal()];
+	}
+
+	/** The value of getAbilityOrdinals() for the given ability */
+	public static byte ordinal(Ability ability) {
+		return (byte)ability.ordinal();
+	}
+
+}
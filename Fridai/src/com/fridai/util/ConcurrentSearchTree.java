@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fridai.GameStateContainer;
+
+/**
+ * A search tree arena with the same node layout as SearchTree, but which multiple threads may add nodes to at
+ * the same time: node indices are allocated from an atomic counter, and chunks are allocated (once) under a lock.
+ *
+ * The fields of a node must only be written by the thread that created the node, or by the thread that is
+ * expanding it (which adds its children); other threads must only read a node after it has been handed to them
+ * through a thread safe structure (for example, a MultiQueue). applyFinalScores() may only be called after all
+ * of the threads that add nodes have finished.
+ *
+ * As with SearchTree, a child always has a higher index than its parent, as a node is allocated before it
+ * is handed to the thread that expands it.
+ * 
+ * Unlike SearchTree, the order floor of a node (see PartialOrderReduction) is that of the game state that the node 
+ * was created with, and does not change once other threads can see the node (they compare it through the 
+ * transposition table); the fingerprint and order floor of the game state that the node was expanded from (the end
+ * of its forced move chain, see ForcedMoveChain) are held separately, see setExpanded(...).
+ **/
+public final class ConcurrentSearchTree {
+
+	public static final int NONE = SearchTree.NONE;
+
+	private static final int CHUNK_BITS = 16;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+
+	private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+
+	private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+	private final AtomicInteger size = new AtomicInteger(0);
+
+	private final Object chunkLock = new Object();
+
+	public ConcurrentSearchTree() {
+	}
+
+	/** Add a node with the given score, as a child of 'parent' (or as a root node, if parent is NONE), and
+	 * return its index. */
+	public int addNode(int parent, int score) {
+		int node = size.getAndIncrement();
+
+		Chunk chunk = chunks.get(node >>> CHUNK_BITS);
+		if(chunk == null) {
+			chunk = allocateChunk(node >>> CHUNK_BITS);
+		}
+
+		int offset = node & CHUNK_MASK;
+		chunk.scores[offset] = score;
+		chunk.parents[offset] = parent;
+		chunk.firstChildren[offset] = NONE;
+		chunk.nextSiblings[offset] = NONE;
+		chunk.transpositions[offset] = NONE;
+		chunk.orderFloors[offset] = NONE;
+		chunk.expandedFingerprints[offset] = 0;
+		chunk.expandedOrderFloors[offset] = NONE;
+
+		if(parent == NONE) {
+			chunk.depths[offset] = 0;
+		} else {
+			chunk.depths[offset] = getDepth(parent)+1;
+
+			Chunk parentChunk = chunks.get(parent >>> CHUNK_BITS);
+			chunk.nextSiblings[offset] = parentChunk.firstChildren[parent & CHUNK_MASK];
+			parentChunk.firstChildren[parent & CHUNK_MASK] = node;
+		}
+
+		return node;
+	}
+
+	public int getScore(int node) {
+		return chunks.get(node >>> CHUNK_BITS).scores[node & CHUNK_MASK];
+	}
+
+	public void setScore(int node, int score) {
+		chunks.get(node >>> CHUNK_BITS).scores[node & CHUNK_MASK] = score;
+	}
+
+	public int getDepth(int node) {
+		return chunks.get(node >>> CHUNK_BITS).depths[node & CHUNK_MASK];
+	}
+
+	public int getParent(int node) {
+		return chunks.get(node >>> CHUNK_BITS).parents[node & CHUNK_MASK];
+	}
+
+	public int getFirstChild(int node) {
+		return chunks.get(node >>> CHUNK_BITS).firstChildren[node & CHUNK_MASK];
+	}
+
+	public int getTransposition(int node) {
+		return chunks.get(node >>> CHUNK_BITS).transpositions[node & CHUNK_MASK];
+	}
+
+	public void setTransposition(int node, int transposition) {
+		chunks.get(node >>> CHUNK_BITS).transpositions[node & CHUNK_MASK] = transposition;
+	}
+
+	/** The order floor of the game state that the node was created with (see PartialOrderReduction) */
+	public int getOrderFloor(int node) {
+		return chunks.get(node >>> CHUNK_BITS).orderFloors[node & CHUNK_MASK];
+	}
+
+	/** Must only be called before the node is handed to other threads (see class description) */
+	public void setOrderFloor(int node, int orderFloor) {
+		chunks.get(node >>> CHUNK_BITS).orderFloors[node & CHUNK_MASK] = orderFloor;
+	}
+
+	/** Set the fingerprint (see GameStateContainer.getZobristHash()) and the order floor of the game state that the 
+	 * node was expanded from; called by the thread that expands the node, before it adds the node's children, so 
+	 * these may be read by the node's descendants (for example, to check for repetitions). */
+	public void setExpanded(int node, long fingerprint, int orderFloor) {
+		Chunk chunk = chunks.get(node >>> CHUNK_BITS);
+		chunk.expandedFingerprints[node & CHUNK_MASK] = fingerprint;
+		chunk.expandedOrderFloors[node & CHUNK_MASK] = orderFloor;
+	}
+
+	public long getExpandedFingerprint(int node) {
+		return chunks.get(node >>> CHUNK_BITS).expandedFingerprints[node & CHUNK_MASK];
+	}
+
+	public int getExpandedOrderFloor(int node) {
+		return chunks.get(node >>> CHUNK_BITS).expandedOrderFloors[node & CHUNK_MASK];
+	}
+
+	public GameStateContainer getState(int node) {
+		return chunks.get(node >>> CHUNK_BITS).states[node & CHUNK_MASK];
+	}
+
+	public void setState(int node, GameStateContainer gsc) {
+		chunks.get(node >>> CHUNK_BITS).states[node & CHUNK_MASK] = gsc;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	/** See SearchTree.applyFinalScores(); must only be called once all threads have stopped adding nodes. */
+	public void applyFinalScores() {
+
+		final int size = this.size.get();
+
+		int transpositionCount = 0;
+
+		for(int node = 0; node < size; node++) {
+			Chunk chunk = chunks.get(node >>> CHUNK_BITS);
+			int offset = node & CHUNK_MASK;
+
+			if(chunk.firstChildren[offset] != NONE) {
+				chunk.scores[offset] = Integer.MIN_VALUE;
+			} else if(chunk.transpositions[offset] != NONE) {
+				chunk.scores[offset] = Integer.MIN_VALUE;
+				transpositionCount++;
+			}
+		}
+
+		for(int node = size-1; node >= 0; node--) {
+			int parent = getParent(node);
+			int score = getScore(node);
+			if(parent != NONE && score > getScore(parent)) {
+				chunks.get(parent >>> CHUNK_BITS).scores[parent & CHUNK_MASK] = score;
+			}
+		}
+
+		if(transpositionCount == 0) { return; }
+
+		int[] transpositionNodes = new int[transpositionCount];
+		transpositionCount = 0;
+		for(int node = 0; node < size; node++) {
+			if(getTransposition(node) != NONE) {
+				transpositionNodes[transpositionCount++] = node;
+			}
+		}
+
+		boolean updated;
+		do {
+			updated = false;
+
+			for(int node : transpositionNodes) {
+				int score = getScore(getTransposition(node));
+				if(score <= getScore(node)) { continue; }
+
+				updated = true;
+
+				int curr = node;
+				do {
+					chunks.get(curr >>> CHUNK_BITS).scores[curr & CHUNK_MASK] = score;
+					curr = getParent(curr);
+				} while(curr != NONE && score > getScore(curr));
+			}
+
+		} while(updated);
+	}
+
+	private Chunk allocateChunk(int chunkIndex) {
+		synchronized(chunkLock) {
+			Chunk chunk = chunks.get(chunkIndex);
+			if(chunk == null) {
+				chunk = new Chunk();
+				chunks.set(chunkIndex, chunk);
+			}
+			return chunk;
+		}
+	}
+
+	/** The fields of CHUNK_SIZE consecutive nodes */
+	private static final class Chunk {
+		final int[] scores = new int[CHUNK_SIZE];
+		final int[] depths = new int[CHUNK_SIZE];
+		final int[] parents = new int[CHUNK_SIZE];
+		final int[] firstChildren = new int[CHUNK_SIZE];
+		final int[] nextSiblings = new int[CHUNK_SIZE];
+		final int[] transpositions = new int[CHUNK_SIZE];
+		final int[] orderFloors = new int[CHUNK_SIZE];
+		final long[] expandedFingerprints = new long[CHUNK_SIZE];
+		final int[] expandedOrderFloors = new int[CHUNK_SIZE];
+		final GameStateContainer[] states = new GameStateContainer[CHUNK_SIZE];
+	}
+}
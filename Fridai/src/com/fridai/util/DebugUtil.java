@@ -18,19 +18,15 @@
 package com.fridai.util;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 
 import com.fridai.Ability;
 import com.fridai.Card;
 import com.fridai.GameState;
 import com.fridai.GameState.State;
 import com.fridai.Main.DebugTreeEntry;
-import com.fridai.Main.TreeEntry;
 import com.fridai.PirateCard;
 import com.fridai.PirateCard.PirateCardAbility;
 import com.fridai.SlowGameState;
@@ -192,107 +188,44 @@ public class DebugUtil {
 	}
 	
 
-	public static void printTreeEntry(TreeEntry te, int depth) {
+	public static void printTreeEntry(SearchTree tree, int node, int depth) {
 		
-		if(te.getChildren().size() ==  0) { return; }
+		if(tree.getFirstChild(node) == SearchTree.NONE) { return; }
 		
 		String str = "";
 		while(str.length() < depth*2) {
 			str += " ";
 		}
 		
-		str = "["+depth+"] "+te; 
+		str = "["+depth+"] score: "+tree.getScore(node)+" depth:"+tree.getDepth(node); 
 		
 		System.out.println(str);
 		
-		for(TreeEntry child : te.getChildren()) {
+		for(int child = tree.getFirstChild(node); child != SearchTree.NONE; child = tree.getNextSibling(child)) {
 			
-			printTreeEntry(child, depth+1);
+			printTreeEntry(tree, child, depth+1);
 			
 		}
 		
 	}
 
-	public static void calculateTransitiveChildren(Collection<TreeEntry> rootActionToTreeEntry) {
+	/** Calculate the number of transitive children of each node in the tree, storing the result in the debug 
+	 * entry of the node (which is created if it does not exist in 'debugEntries'). */
+	public static void calculateTransitiveChildren(SearchTree tree, Map<Integer, DebugTreeEntry> debugEntries) {
 		
-		HashMap<TreeEntry, Long> depthMap = new HashMap<>();
-		
-		HashMap<Long, List<TreeEntry>> entriesAtDepthMap = new HashMap<>();
-		
-		HashMap<TreeEntry, TreeEntry> childToParentMap = new HashMap<>();
-		
-		long deepestTreeEntry = -1;
-		
-		{
-			final Queue<TreeEntry> remainingEntries = new LinkedList<TreeEntry>();
-			remainingEntries.addAll(rootActionToTreeEntry);
-			for(TreeEntry rootEntry : rootActionToTreeEntry) {
-				depthMap.put(rootEntry, 0l);
-			}
+		// Children have higher indices than their parents, so the reverse scan visits each node only after 
+		// all of its children.
+		for(int node = tree.size()-1; node >= 0; node--) {
 			
-			int processed = 0;
+			int parent = tree.getParent(node);
+			if(parent == SearchTree.NONE) { continue; }
 			
-			while(remainingEntries.size() > 0) {
-				
-				TreeEntry curr = remainingEntries.poll();
-				processed++;
-				
-				Long depth = depthMap.get(curr);
-				if(depth == null) { FridayUtil.throwErr("Depth not found for: "+curr); }
-
-				if(depth > deepestTreeEntry) {
-					deepestTreeEntry = depth;
-				}
-				
-				List<TreeEntry> edList = entriesAtDepthMap.get(depth);
-				if(edList == null) {
-					edList = new ArrayList<>();
-					entriesAtDepthMap.put(depth, edList);
-				}
-				edList.add(curr);				
-				
-				if(curr.getChildren() != null) {
-					
-					if(processed % 1000 == 0) {
-						System.out.println("ctc: "+remainingEntries.size()+" "+curr.getChildren().size()+" "+processed);
-					}
-				
-					curr.getChildren().forEach( child -> {
-						childToParentMap.put(child, curr);
-						
-						depthMap.put(child, depth+1);
-						remainingEntries.offer(child);
-					});
-				
-				}
-			}
-		}
-		
-		
-		
-		{
-			long currDepth = deepestTreeEntry;
+			DebugTreeEntry parentDte = debugEntries.computeIfAbsent(parent, e -> new DebugTreeEntry());
+			DebugTreeEntry teDte = debugEntries.computeIfAbsent(node, e -> new DebugTreeEntry());
 			
-			while(currDepth >= 0) {
-				
-				List<TreeEntry> list = entriesAtDepthMap.get(currDepth);
-				
-				for(TreeEntry te : list) {
-					
-					TreeEntry parent = childToParentMap.get(te);
-					
-					if(parent == null) { continue; }
-					DebugTreeEntry parentDte = parent.getOrCreateDebugEntry();
-					DebugTreeEntry teDte = te.getOrCreateDebugEntry();
-					
-					long newValue = parentDte.getDebug_transitive_children() + teDte.getDebug_transitive_children() + 1;
-					
-					parentDte.setDebug_transitive_children(newValue);
-					
-				}
+			long newValue = parentDte.getDebug_transitive_children() + teDte.getDebug_transitive_children() + 1;
 			
-				currDepth--;
-			}
+			parentDte.setDebug_transitive_children(newValue);
 			
 		}
 				
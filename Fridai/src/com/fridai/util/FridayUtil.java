@@ -42,6 +42,7 @@ import com.fridai.GameStateContainer;
 import com.fridai.Main;
 import com.fridai.PirateCard;
 import com.fridai.PirateGameState;
+import com.fridai.SlowGameState;
 import com.fridai.actions.Action;
 import com.fridai.actions.Action.ActionType;
 import com.fridai.actions.UseCardAbilityWithTargetAction;
@@ -55,6 +56,110 @@ public class FridayUtil {
 	
 	public static int QUEUE_TO_PROCESS = 200000;
 	
+	/** If greater than 0, the AI searches each decision until this wall-clock time (in nanoseconds) has elapsed, 
+	 * rather than for QUEUE_TO_PROCESS game states. See SearchBudget. */
+	public static long NANOS_PER_DECISION = 0;
+	
+	/** Whether the search should detect game states that are reached by more than one sequence of actions, and
+	 * only expand them once (see TranspositionTable) */
+	public static boolean USE_TRANSPOSITION_TABLE = true;
+	
+	/** Whether devMain should carry the searched subtree of the action that was taken over to the search of the 
+	 * next decision, rather than searching each decision from scratch. Requires USE_TRANSPOSITION_TABLE. */
+	public static boolean REUSE_SEARCH_TREE = true;
+	
+	/** The search algorithm that devMain uses to choose each action, see SearchEngine */
+	public static SearchEngineType SEARCH_ENGINE = SearchEngineType.BEST_FIRST;
+	
+	public static enum SearchEngineType {
+		/** See BestFirstSearchEngine */
+		BEST_FIRST,
+		/** See MctsSearchEngine */
+		MCTS,
+		/** See DeterminizedSearchEngine */
+		DETERMINIZED,
+		/** See IterativeDeepeningSearchEngine */
+		ITERATIVE_DEEPENING
+	};
+	
+	/** The number of determinizations of each decision that are searched by the DETERMINIZED search engine */
+	public static int DETERMINIZATION_SAMPLES = 8;
+	
+	/** Whether the best-first search skips game states that provably cannot improve on the best score found so far,
+	 * see Main.upperBoundScore(...). The pruning counts are reported by BenchmarkEntries. */
+	public static boolean BRANCH_AND_BOUND = false;
+	
+	/** Whether the best-first search generates commuting card ability activations (eg LIFE_ADD_1, LIFE_ADD_2) in 
+	 * only a single order, rather than in every order; see PartialOrderReduction. */
+	public static boolean PARTIAL_ORDER_REDUCTION = true;
+	
+	/** Whether the best-first search applies forced moves (the only action of a game state) as part of expanding
+	 * a game state, rather than adding each game state of the forced move chain to the search tree and frontier. 
+	 * Each forced move still counts as a game state against the search budget (QUEUE_TO_PROCESS). */
+	public static boolean CHAIN_FORCED_MOVES = true;
+	
+	/** Whether the per-decision search budget (of QUEUE_TO_PROCESS game states) adapts to how close the decision is, 
+	 * moving the game states saved on clear decisions to close decisions; see AdaptiveBudget. */
+	public static boolean ADAPTIVE_BUDGET = false;
+	
+	/** The number of ancestors of a new search tree node that are checked for a repeat of its game state (a cycle of
+	 * actions, eg COPY_1x + BELOW_THE_PILE_1x), see Main.isRepetition(...); 0 to disable. */
+	public static int REPETITION_CHECK_DEPTH = 16;
+	
+	/** Whether the best-first search queues the children of an expanded game state with an estimate of their score 
+	 * (see Main.estimateScore(...)), and only builds (and scores) the game state of a child when it is polled from the
+	 * queue. The children that are never polled are left as leaves with their estimated score. */
+	public static boolean LAZY_EXPANSION = false;
+	
+	/** Whether the best-first search holds the game states of its frontier and of its transposition table as compact
+	 * byte encodings (see PackedGameState) in a PackedStateArena, rather than as game state objects, and decodes a 
+	 * game state when it is polled from the frontier. This trades the decoding (and encoding) time for a much smaller
+	 * heap per game state. The search tree of the previous decision is not reused when this is enabled. */
+	public static boolean PACKED_SEARCH_STATES = false;
+	
+	/** Where the packed game states of PACKED_SEARCH_STATES are stored, see PackedStateArena */
+	public static PackedStateStorage PACKED_STATE_STORAGE = PackedStateStorage.HEAP;
+	
+	public static enum PackedStateStorage {
+		/** In byte[] chunks on the Java heap */
+		HEAP,
+		/** In direct ByteBuffers, outside of the Java heap (see -XX:MaxDirectMemorySize) */
+		DIRECT,
+		/** In a memory-mapped scratch file (in PACKED_STATE_DIRECTORY), which is deleted when the search ends */
+		MAPPED
+	};
+	
+	/** The directory of the scratch files of PackedStateStorage.MAPPED; null for the default temporary directory */
+	public static File PACKED_STATE_DIRECTORY = null;
+	
+	/** The number of slices of an adaptive budget: the search checks whether it has been decided after each slice */
+	public static int ADAPTIVE_BUDGET_SLICES = 8;
+	
+	/** The score (see Main.score(...)) by which the best root action of an adaptive budget search must lead the other
+	 * root actions for the decision to be considered decided; a single life point by default. */
+	public static int ADAPTIVE_BUDGET_MARGIN = BucketPriorityQueue.LIFE_POINT_SCORE;
+	
+	/** If greater than 0, the maximum number of unexpanded game states (the frontier) that a best-first search 
+	 * holds: when the frontier grows past this, the lowest scoring of them are dropped (down to 3/4 of the 
+	 * maximum) and kept only as leaves of the search tree. Bounds the memory of each search thread. */
+	public static int MAX_FRONTIER_SIZE = 0;
+	
+	/** If greater than 1, each decision in devMain (by the BEST_FIRST engine) is searched by this many threads, 
+	 * see PARALLEL_SEARCH_MODE. */
+	public static int SEARCH_THREADS = 1;
+	
+	/** How the search of a decision is split between threads, when SEARCH_THREADS is greater than 1 */
+	public static ParallelSearchMode PARALLEL_SEARCH_MODE = ParallelSearchMode.ROOT_SPLIT;
+	
+	public static enum ParallelSearchMode { 
+		/** Each thread searches the subtrees of a subset of the root actions, see ParallelRootSearch */
+		ROOT_SPLIT, 
+		/** All threads expand a single shared search tree, see MultiQueueSearch */
+		MULTI_QUEUE, 
+		/** Each thread owns the game states of a partition of the hash space, see HashDistributedSearch */
+		HASH_DISTRIBUTED 
+	};
+	
 	/** Whether or not to allow life points > 22, for debugging purposes */
 	public static final boolean ALLOW_LARGE_LIFE_POINTS = false; 
 	
@@ -254,19 +359,8 @@ public class FridayUtil {
 		return false;
 	}
 	
-	public static boolean areMapsEqual(MapCards one, MapCards two) {
-		if(one.size() != two.size()) {
-			return false;
-		}
-	
-		for(int x = 0; x < one.size(); x++) {
-			
-			if(one.get(x) != two.get(x)) {
-				return false;
-			}
-		}
-		
-		return true;
+	public static boolean areMapsEqual(CardSet one, CardSet two) {
+		return one.getBits() == two.getBits();
 	}
 	
 	public static boolean areMapsEqual(Map<?, ?> one, Map<?, ?> two) {
@@ -545,6 +639,148 @@ public class FridayUtil {
 		return true;
 	}
 
+	/** A strict, lossless equality check between two game states, used to confirm ZobristHash matches. Unlike 
+	 * compareGameState(...) (which compares by card contents, for JSON persistence verification), this 
+	 * method compares card instances, handles null maps, and does not allocate. */
+	public static boolean isSameGameState(GameStateContainer one, GameStateContainer two) {
+		if(one.isGameState() != two.isGameState()) { return false; }
+		
+		if(one.isGameState()) {
+			return isSameGameState(one.getGameState(), two.getGameState());
+		} else {
+			return isSameGameState(one.getPirateGameState(), two.getPirateGameState());
+		}
+	}
+	
+	public static boolean isSameGameState(GameState one, GameState two) {
+		if(one == two) { return true; }
+		
+		if(one.getZobristHash() != two.getZobristHash()) { return false; }
+		
+		if(one.getState() != two.getState()) { return false; }
+		
+		if(one.getLifePoints() != two.getLifePoints()) { return false; }
+		
+		if(one.getActiveHazardCard() != two.getActiveHazardCard()) { return false; }
+		
+		if(!isSameCards(one.getYourFightingCards(), two.getYourFightingCards())) { return false; }
+		
+		if(!isSameCards(one.getHazardCards(), two.getHazardCards())) { return false; }
+		
+		if(!isSameCards(one.getDiscardHazards(), two.getDiscardHazards())) { return false; }
+		
+		if(!isSameCards(one.getDiscardFightCards(), two.getDiscardFightCards())) { return false; }
+		
+		if(!isSameCards(one.getLhsFightCards(), two.getLhsFightCards())) { return false; }
+		
+		if(!isSameCards(one.getRhsFightCards(), two.getRhsFightCards())) { return false; }
+		
+		if(!isSameMap(one.getLhsOrRhsFightingCardUsed(), two.getLhsOrRhsFightingCardUsed())) { return false; }
+		
+		if(!isSameMap(one.getLhsOrRhsFightingCardDoubled(), two.getLhsOrRhsFightingCardDoubled())) { return false; }
+		
+		if(!isSameAbilityObject(one.getAbilityObject(), two.getAbilityObject())) { return false; }
+		
+		return isSameSlowGameState(one.getSlowGameState(), two.getSlowGameState());
+	}
+	
+	public static boolean isSameGameState(PirateGameState one, PirateGameState two) {
+		if(one == two) { return true; }
+		
+		if(one.getZobristHash() != two.getZobristHash()) { return false; }
+		
+		if(one.getState() != two.getState()) { return false; }
+		
+		if(one.getLifePoints() != two.getLifePoints()) { return false; }
+		
+		if(one.getActivePirateCard() != two.getActivePirateCard()) { return false; }
+		
+		if(!objectEquals(one.getPirateCardInfo(), two.getPirateCardInfo())) { return false; }
+		
+		if(!isSameCards(one.getYourFightingCards(), two.getYourFightingCards())) { return false; }
+		
+		if(!isSameCards(one.getDiscardFightCards(), two.getDiscardFightCards())) { return false; }
+		
+		if(!isSameCards(one.getLhsFightCards(), two.getLhsFightCards())) { return false; }
+		
+		if(!isSameCards(one.getRhsFightCards(), two.getRhsFightCards())) { return false; }
+		
+		if(!isSameMap(one.getLhsOrRhsFightingCardUsed(), two.getLhsOrRhsFightingCardUsed())) { return false; }
+		
+		if(!isSameMap(one.getLhsOrRhsFightingCardDoubled(), two.getLhsOrRhsFightingCardDoubled())) { return false; }
+		
+		if(!isSameAbilityObject(one.getAbilityObject(), two.getAbilityObject())) { return false; }
+		
+		return isSameSlowGameState(one.getSlowGameState(), two.getSlowGameState());
+	}
+	
+	public static boolean isSameSlowGameState(SlowGameState one, SlowGameState two) {
+		if(one == two) { return true; }
+		
+		if(one.getPhaseNumber() != two.getPhaseNumber() || one.getGameLevel() != two.getGameLevel()) { return false; }
+		
+		if(!isSameCards(one.getAgingCards(), two.getAgingCards())) { return false; }
+		
+		if(one.getActiveRoundCards() != two.getActiveRoundCards()) {
+			if(one.getActiveRoundCards() == null || two.getActiveRoundCards() == null) { return false; }
+			if(!isSameCards(one.getActiveRoundCards(), two.getActiveRoundCards())) { return false; }
+		}
+		
+		if(one.getActivePirates().length != two.getActivePirates().length) { return false; }
+		for(int x = 0; x < one.getActivePirates().length; x++) {
+			if(one.getActivePirates()[x] != two.getActivePirates()[x]) { return false; }
+		}
+		
+		return objectEquals(one.getWildCardPirate(), two.getWildCardPirate());
+	}
+	
+	private static boolean isSameAbilityObject(AbilityObject one, AbilityObject two) {
+		if(one == two) { return true; }
+		if(one == null || two == null) { return false; }
+		
+		if(one.getActiveCard() != two.getActiveCard() || one.getStage() != two.getStage() 
+				|| one.getNumberOfCardsDrawn() != two.getNumberOfCardsDrawn() || one.isCopied() != two.isCopied()) {
+			return false;
+		}
+		
+		List<Card> sortOne = one.getDrawnSortCards();
+		List<Card> sortTwo = two.getDrawnSortCards();
+		if(sortOne == sortTwo) { return true; }
+		if(sortOne == null || sortTwo == null || sortOne.size() != sortTwo.size()) { return false; }
+		
+		for(int x = 0; x < sortOne.size(); x++) {
+			if(sortOne.get(x) != sortTwo.get(x)) { return false; }
+		}
+		
+		return true;
+	}
+	
+	private static boolean isSameMap(CardSet one, CardSet two) {
+		if(one == two) { return true; }
+		if(one == null || two == null) { return false; }
+		
+		return areMapsEqual(one, two);
+	}
+	
+	private static boolean isSameCards(ListCards one, ListCards two) {
+		if(one == two) { return true; }
+		if(one.size() != two.size() || one.getZobristHash() != two.getZobristHash()) { return false; }
+		
+		for(int x = 0; x < one.size(); x++) {
+			if(one.get(x) != two.get(x)) { return false; }
+		}
+		return true;
+	}
+	
+	private static boolean isSameCards(ImmutableGrowableListCards one, ImmutableGrowableListCards two) {
+		if(one == two) { return true; }
+		if(one.size() != two.size() || one.getZobristHash() != two.getZobristHash()) { return false; }
+		
+		for(int x = 0; x < one.size(); x++) {
+			if(one.get(x) != two.get(x)) { return false; }
+		}
+		return true;
+	}
 	
 	public static String convertExceptionToString(Throwable t) {
 		StringWriter sw = new StringWriter();
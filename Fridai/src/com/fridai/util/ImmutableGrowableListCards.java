@@ -18,6 +18,7 @@
 package com.fridai.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.fridai.Ability;
@@ -25,52 +26,196 @@ import com.fridai.Card;
 
 /** 
  * This class maintains an immutable list of cards, but is performance optimized for both heap and CPU usage reduction 
- * by sharing the 'cards' data storage array with child objects created by mutate*(...) calls.
+ * by sharing the 'ids' data storage array with child objects created by mutate*(...) calls.
  * 
  * Thus, if a is an instance of this class, and a is called as follow:
  * 		`b = a.mutateAdd( someCard )`
  * The `b` object will be a new instance of the ImmutableGrowableListCards class, but it will 
- * share its internal array `cards` with `a`. Fortunately, since both instances are functionally 
+ * share its internal array `ids` with `a`. Fortunately, since both instances are functionally 
  * immutable, they can never step on each others toes.
  * 
+ * The list stores the physical card id of each card (one byte per card) rather than the Card itself; Cards are
+ * looked up in the CardTable by get(...). Unused slots of the array hold EMPTY.
+ * 
+ * Each list also carries a summary of the abilities of its cards (see abilitySummary), which is updated by each 
+ * mutate*(...) call, so that containsAbility(...) is a bit test, and findCardByAbility(...) of the TRACKED_ABILITIES
+ * is an array lookup. Likewise, the set of the physical card ids of the list, and the sum and the highest of the
+ * fighting values of its cards, are updated by each mutate*(...) call, so that the game states can calculate the 
+ * remaining hazard value without looking at each card.
+ * 
  * This class presents an immutable interface, and should be treated as immutable by callers. This class
  * is not thread safe.
  **/
 public final class ImmutableGrowableListCards {
 	
-	private final Card[] cards;
+	/** Physical card ids, or EMPTY */
+	private final byte[] ids;
+	
+	private static final byte EMPTY = -1;
 	
 	private final boolean allowDuplicates; // currently only used for 
 	
 	// The index of the last card in the array (-1 if array is empty)
 	private final int endPos;
+	
+	/** Zobrist hash of the cards in the list, see ZobristHash. Positions are counted from the front of the list,
+	 * so adding a card only requires adding the key of that card. */
+	private final long zobristHash;
+	
+	/** The abilities of the cards in the list: bit x (of the low 32 bits) is set if the list contains a card with the 
+	 * ability of ordinal x. The next 8 bits for each of the TRACKED_ABILITIES (in order) are the index of the first
+	 * card with that ability, if the list contains one (or FIRST_INDEX_UNKNOWN if the index is too large). */
+	private final long abilitySummary;
+	
+	/** The abilities whose first index is kept in abilitySummary: these are looked up by the search for each game 
+	 * state (STOP), or by calculateRemainingHazardValue() */
+	private static final Ability[] TRACKED_ABILITIES = new Ability[] { Ability.STOP, Ability.HIGHEST_CARD_IS_0, Ability.PHASE_MINUS_1 };
+	
+	/** Ability ordinal -> index in TRACKED_ABILITIES (or -1) */
+	private static final byte[] TRACKED_ABILITY_SLOTS = new byte[Ability.values().length];
+	
+	private static final int FIRST_INDEX_UNKNOWN = 0xFF;
+	
+	/** Bit x is set if the list contains the card with physical card id x, see CardSet */
+	private final long cardBits;
+	
+	/** The sum of the fighting values of the cards in the list */
+	private final int fightingValueSum;
+	
+	/** The highest fighting value of the cards in the list (Integer.MIN_VALUE if the list is empty) */
+	private final int highestFightingValue;
+	
+	static {
+		if(Ability.values().length > 32) { FridayUtil.throwErr("The ability mask of abilitySummary is 32 bits"); }
+		
+		Arrays.fill(TRACKED_ABILITY_SLOTS, (byte)-1);
+		for(int x = 0; x < TRACKED_ABILITIES.length; x++) {
+			TRACKED_ABILITY_SLOTS[TRACKED_ABILITIES[x].ordinal()] = (byte)x;
+		}
+	}
 
 	public ImmutableGrowableListCards(int maxSize) {
-		cards = new Card[maxSize];
+		ids = newIds(maxSize);
 		endPos = -1;
 		allowDuplicates = false;
+		zobristHash = 0;
+		abilitySummary = 0;
+		cardBits = 0;
+		fightingValueSum = 0;
+		highestFightingValue = Integer.MIN_VALUE;
+	}
+	
+	/** Create a list of the first 'size' physical card ids of 'ids' (which the list takes ownership of), with room for 
+	 * at least 'maxSize' cards. As with mutateAdd(...), the array always has room for at least one more card. */
+	public ImmutableGrowableListCards(int maxSize, byte[] ids, int size) {
+		this(ownIds(maxSize, ids, size), size-1, false, calculateZobristHash(ids, size), calculateAbilitySummary(ids, size),
+				calculateCardBits(ids, size), calculateFightingValueSum(ids, size), calculateHighestFightingValue(ids, size));
+	}
+	
+	private static byte[] ownIds(int maxSize, byte[] ids, int size) {
+		byte[] result = ids;
+		if(ids.length <= size || ids.length < maxSize) {
+			result = Arrays.copyOf(ids, Math.max(maxSize, size+1));
+		}
+		Arrays.fill(result, size, result.length, EMPTY);
+		return result;
+	}
+	
+	private static byte[] newIds(int size) {
+		byte[] result = new byte[size];
+		Arrays.fill(result, EMPTY);
+		return result;
+	}
+	
+	private static long calculateZobristHash(byte[] ids, int size) {
+		long result = 0;
+		for(int x = 0; x < size; x++) {
+			result ^= ZobristHash.cardAtPosition(ids[x], x);
+		}
+		return result;
+	}
+	
+	private static long calculateAbilitySummary(byte[] ids, int size) {
+		long result = 0;
+		for(int x = 0; x < size; x++) {
+			result = addToAbilitySummary(result, ids[x], x);
+		}
+		return result;
+	}
+	
+	private static long calculateCardBits(byte[] ids, int size) {
+		long result = 0;
+		for(int x = 0; x < size; x++) {
+			result |= CardSet.bit(ids[x]);
+		}
+		return result;
+	}
+	
+	private static int calculateFightingValueSum(byte[] ids, int size) {
+		final int[] fightingValues = CardTable.getFightingValues();
+		int result = 0;
+		for(int x = 0; x < size; x++) {
+			result += fightingValues[ids[x]];
+		}
+		return result;
+	}
+	
+	private static int calculateHighestFightingValue(byte[] ids, int size) {
+		final int[] fightingValues = CardTable.getFightingValues();
+		int result = Integer.MIN_VALUE;
+		for(int x = 0; x < size; x++) {
+			result = Math.max(result, fightingValues[ids[x]]);
+		}
+		return result;
 	}
 	
-	private ImmutableGrowableListCards(Card[] cards, int endPos, boolean allowDuplicates) {
-		this.cards = cards;
+	/** Return 'summary' (see abilitySummary) with the card 'id' at 'index' of the list added */
+	private static long addToAbilitySummary(long summary, int id, int index) {
+		int ordinal = CardTable.getAbilityOrdinals()[id];
+		if(ordinal == CardTable.NO_ABILITY) { return summary; }
+		
+		long bit = 1L << ordinal;
+		if((summary & bit) != 0) { return summary; }
+		
+		summary |= bit;
+		
+		int slot = TRACKED_ABILITY_SLOTS[ordinal];
+		if(slot != -1) {
+			summary |= ((long)Math.min(index, FIRST_INDEX_UNKNOWN)) << (32 + slot*8);
+		}
+		
+		return summary;
+	}
+	
+	private ImmutableGrowableListCards(byte[] ids, int endPos, boolean allowDuplicates, long zobristHash, long abilitySummary,
+			long cardBits, int fightingValueSum, int highestFightingValue) {
+		this.ids = ids;
 		this.endPos = endPos;
 		this.allowDuplicates = allowDuplicates;
+		this.zobristHash = zobristHash;
+		this.abilitySummary = abilitySummary;
+		this.cardBits = cardBits;
+		this.fightingValueSum = fightingValueSum;
+		this.highestFightingValue = highestFightingValue;
 		
 		if(FridayUtil.RUNTIME_CHECK) {
-			if(cards == null) { FridayUtil.throwErr("Cards is null"); }
+			if(ids == null) { FridayUtil.throwErr("Ids is null"); }
+			
+			if(abilitySummary != calculateAbilitySummary(ids, endPos+1)) { FridayUtil.throwErr("Ability summary mismatch"); }
+			if(cardBits != calculateCardBits(ids, endPos+1)) { FridayUtil.throwErr("Card bits mismatch"); }
+			if(fightingValueSum != calculateFightingValueSum(ids, endPos+1)) { FridayUtil.throwErr("Fighting value sum mismatch"); }
+			if(highestFightingValue != calculateHighestFightingValue(ids, endPos+1)) { FridayUtil.throwErr("Highest fighting value mismatch"); }
 			
 			for(int x = 0; x <= endPos; x++ ) {
-				if(cards[x] == null) {
-					FridayUtil.throwErr("Card array contains a null at "+x);
+				if(ids[x] == EMPTY || CardTable.get(ids[x]) == null) {
+					FridayUtil.throwErr("Card array contains an invalid card at "+x);
 				}
 			}
 
 			if(!allowDuplicates) {
 				for(int x = 0; x <= endPos; x++) {
 					for(int y = x+1; y <= endPos; y++) {
-						Card cx = cards[x];
-						Card cy = cards[y];
-						if(cx == cy) {
+						if(ids[x] == ids[y]) {
 							
 							FridayUtil.throwErr("Matching cards at indices "+x+" "+y);
 						}
@@ -86,7 +231,15 @@ public final class ImmutableGrowableListCards {
 		if(x > endPos) {
 			throw new ArrayIndexOutOfBoundsException();
 		}
-		return cards[x];
+		return CardTable.get(ids[x]);
+	}
+	
+	/** The physical card id of the card at 'x', equivalent to get(x).getPhysicalCardId() */
+	public final int getPhysicalCardId(int x) {
+		if(x > endPos) {
+			throw new ArrayIndexOutOfBoundsException();
+		}
+		return ids[x];
 	}
 	
 	public final int size() {
@@ -97,7 +250,7 @@ public final class ImmutableGrowableListCards {
 		List<Card> result = new ArrayList<>();
 		
 		for(int x = 0; x <= endPos; x++) {
-			result.add(cards[x]);
+			result.add(CardTable.get(ids[x]));
 		}
 		return result;
 	}
@@ -115,11 +268,30 @@ public final class ImmutableGrowableListCards {
 		
 	}
 	
+	/** Whether the list contains a card with the given ability */
+	public final boolean containsAbility(Ability ability) {
+		return (abilitySummary & (1L << ability.ordinal())) != 0;
+	}
+	
+	/** Return the first card of the list with the given ability, or null if there is none */
 	public final Card findCardByAbility(Ability ability) {
 		
-		for(Card c : getAsList()) {
-			if(c.getAbility() == ability) {
-				return c;
+		if(!containsAbility(ability)) {
+			return null;
+		}
+		
+		int slot = TRACKED_ABILITY_SLOTS[ability.ordinal()];
+		if(slot != -1) {
+			int index = (int)(abilitySummary >>> (32 + slot*8)) & 0xFF;
+			if(index != FIRST_INDEX_UNKNOWN) {
+				return CardTable.get(ids[index]);
+			}
+		}
+		
+		final byte[] abilityOrdinals = CardTable.getAbilityOrdinals();
+		for(int x = 0; x <= endPos; x++) {
+			if(abilityOrdinals[ids[x]] == ability.ordinal()) {
+				return CardTable.get(ids[x]);
 			}
 		}
 		
@@ -181,9 +353,8 @@ public final class ImmutableGrowableListCards {
 		
 		ImmutableGrowableListCards result = this;
 		
-		for(int x = 0; x < listParam.size(); x++) {
-			Card c = listParam.get(x);
-			result = result.mutateAdd(c);
+		for(int x = 0; x <= listParam.endPos; x++) {
+			result = result.mutateAdd(listParam.ids[x], false);
 		}
 		
 		return result;
@@ -224,12 +395,7 @@ public final class ImmutableGrowableListCards {
 	}
 
 	public final boolean containsPhysicalId(int id) {
-		for(int x = 0; x <= endPos; x++) {
-			if(cards[x].getPhysicalCardId() == id) {
-				return true;
-			}
-		}
-		return false;
+		return CardSet.contains(cardBits, id);
 	}
 	
 	@SuppressWarnings("unused")
@@ -237,11 +403,24 @@ public final class ImmutableGrowableListCards {
 		
 		boolean match = false;
 		
-		List<Card> list = new ArrayList<>();
-		for(int x = 0; x < size(); x++) {
-			Card curr = get(x);
-			if(curr.getPhysicalCardId() != physicalCardId) {
-				list.add(curr);
+		byte[] result = newIds(ids.length);
+		long newHash = 0;
+		long newAbilitySummary = 0;
+		int newSize = 0;
+		
+		final int[] fightingValues = CardTable.getFightingValues();
+		int newFightingValueSum = 0;
+		int newHighestFightingValue = Integer.MIN_VALUE;
+		
+		for(int x = 0; x <= endPos; x++) {
+			byte curr = ids[x];
+			if(curr != physicalCardId) {
+				result[newSize] = curr;
+				newHash ^= ZobristHash.cardAtPosition(curr, newSize);
+				newAbilitySummary = addToAbilitySummary(newAbilitySummary, curr, newSize);
+				newFightingValueSum += fightingValues[curr];
+				newHighestFightingValue = Math.max(newHighestFightingValue, fightingValues[curr]);
+				newSize++;
 			} else {
 				if(FridayUtil.RUNTIME_CHECK && match) {
 					FridayUtil.throwErr("Multiple matches found.");
@@ -255,49 +434,45 @@ public final class ImmutableGrowableListCards {
 			FridayUtil.throwErr("Could not find card with id "+physicalCardId+" in list.");
 		}
 		
-		Card[] result = new Card[cards.length];
-		
-		int x = 0;
-		for(Card c : list) {
-			result[x] = c;
-			x++;
-		}
-				
-		return new ImmutableGrowableListCards( result, list.size()-1, allowDuplicates);
+		return new ImmutableGrowableListCards( result, newSize-1, allowDuplicates, newHash, newAbilitySummary, 
+				cardBits & ~CardSet.bit(physicalCardId), newFightingValueSum, newHighestFightingValue);
 		
 	}
 
 	
 	public final ImmutableGrowableListCards mutateAdd_allowDuplicates(Card c) {
-		return mutateAdd(c, true);
+		return mutateAdd((byte)c.getPhysicalCardId(), true);
 	}
 
-	private final ImmutableGrowableListCards mutateAdd(Card c, boolean allowDuplicates) {
+	private final ImmutableGrowableListCards mutateAdd(byte id, boolean allowDuplicates) {
 		
-		Card[] newCards = cards;
+		byte[] newIds = ids;
 
-		if(cards.length == endPos+2) {
-			newCards = new Card[cards.length*2];
-			System.arraycopy(cards, 0, newCards, 0, cards.length);
+		if(ids.length == endPos+2) {
+			// Grow if necessary
+			newIds = newIds(ids.length*2);
+			System.arraycopy(ids, 0, newIds, 0, ids.length);
 			printGrowMessage();
 			
-		} else if(cards[endPos+1] != null)  {
-			
-			newCards = new Card[cards.length];
-			System.arraycopy(cards, 0, newCards, 0, cards.length);
+		} else if(ids[endPos+1] != EMPTY)  {
+			// The next slot is used by another list that shares the array
+			newIds = Arrays.copyOf(ids, ids.length);
 		}
 		
-		newCards[(endPos+1)] = c;
+		newIds[(endPos+1)] = id;
+		
+		int fightingValue = CardTable.getFightingValues()[id];
 
-		// Grow if necessary
-		return new ImmutableGrowableListCards(newCards, endPos+1, allowDuplicates);
+		return new ImmutableGrowableListCards(newIds, endPos+1, allowDuplicates, zobristHash ^ ZobristHash.cardAtPosition(id, endPos+1), 
+				addToAbilitySummary(abilitySummary, id, endPos+1), cardBits | CardSet.bit(id), fightingValueSum + fightingValue,
+				Math.max(highestFightingValue, fightingValue));
 		
 	}
 
 	
 	public final ImmutableGrowableListCards mutateAdd(Card c) {
 		
-		return mutateAdd(c, false);
+		return mutateAdd((byte)c.getPhysicalCardId(), false);
 
 		// Previous (IIRC) broken attempt at doing this in bulk, preserved in case
 		// I want to tackle this again for speed improvements:
@@ -324,13 +499,33 @@ public final class ImmutableGrowableListCards {
 	
 	public final ImmutableGrowableListCards fullClone(int newSize) {
 		
-		Card[] newCards = new Card[newSize];
-		System.arraycopy(cards, 0, newCards, 0, cards.length);
+		byte[] newIds = newIds(newSize);
+		System.arraycopy(ids, 0, newIds, 0, ids.length);
 		
-		return new ImmutableGrowableListCards(newCards, endPos, allowDuplicates);
+		return new ImmutableGrowableListCards(newIds, endPos, allowDuplicates, zobristHash, abilitySummary, cardBits,
+				fightingValueSum, highestFightingValue);
 		
 	} 
 	
+	public final long getZobristHash() {
+		return zobristHash;
+	}
+	
+	/** Bit x is set if the list contains the card with physical card id x, see CardSet */
+	public final long getCardBits() {
+		return cardBits;
+	}
+	
+	/** The sum of the fighting values of the cards in the list */
+	public final int getFightingValueSum() {
+		return fightingValueSum;
+	}
+	
+	/** The highest fighting value of the cards in the list (Integer.MIN_VALUE if the list is empty) */
+	public final int getHighestFightingValue() {
+		return highestFightingValue;
+	}
+	
 	@Override
 	public String toString() {
 		String result = "size:"+size()+": \n";
@@ -343,11 +538,10 @@ public final class ImmutableGrowableListCards {
 	}
 	
 	public int[] asIntArray() {
-		List<Card> list = getAsList();
-		int[] result = new int[list.size()];
+		int[] result = new int[size()];
 		
-		for(int x = 0; x < list.size(); x++) {
-			result[x] = list.get(x).getPhysicalCardId();
+		for(int x = 0; x < result.length; x++) {
+			result[x] = ids[x];
 		}
 		
 		return result;
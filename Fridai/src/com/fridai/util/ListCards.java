@@ -18,13 +18,17 @@
 package com.fridai.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.fridai.Card;
 
 /** This class maintains an immutable list of cards. This class is designed to reduce the memory/cpu 
- * cost of removing objects, by sharing the `cards` array with child objects, and using the `index`
+ * cost of removing objects, by sharing the `ids` array with child objects, and using the `index`
  * variable to determine where in the array to retrieve cards from.
+ * 
+ * The list stores the physical card id of each card (one byte per card) rather than the Card itself; Cards are 
+ * looked up in the CardTable by get(...).
  *  
  * Thus removing a card from an array involves only incrementing a variable and storing 
  * that variable (along with the backing array) in a child object. 
@@ -36,26 +40,39 @@ import com.fridai.Card;
  **/
 public final class ListCards {
 
-	private final Card[] cards;
+	/** Physical card ids */
+	private final byte[] ids;
 	
 	// The index of the first valid element in the array 
 	private int index;
 	
+	/** Zobrist hash of the cards in the list, see ZobristHash. Positions are counted from the bottom of the 
+	 * list, so that removing from the front only requires removing the keys of the removed cards. */
+	private final long zobristHash;
+	
 	public ListCards(Card[] cards, int index) {
-		this.cards = cards;
+		this(toIds(cards), index);
+	}
+	
+	/** Create a list of the physical card ids of 'ids' (which the list takes ownership of), from 'index' */
+	public ListCards(byte[] ids, int index) {
+		this(ids, index, calculateZobristHash(ids, index));
+	}
+	
+	private ListCards(byte[] ids, int index, long zobristHash) {
+		this.ids = ids;
 		this.index = index;
+		this.zobristHash = zobristHash;
 		
 		if(FridayUtil.RUNTIME_CHECK) {		
 			
-			for(Card c : cards) {
-				if(c == null) { FridayUtil.throwErr("One of the cards is null in "+c); }
+			for(byte id : ids) {
+				if(id < 0 || CardTable.get(id) == null) { FridayUtil.throwErr("One of the cards is not in the card table: "+id); }
 			}
 
-			for(int x = index; x < cards.length; x++) {
-				for(int y = x+1; y < cards.length; y++) {
-					Card cx = cards[x];
-					Card cy = cards[y];
-					if(cx == cy) {
+			for(int x = index; x < ids.length; x++) {
+				for(int y = x+1; y < ids.length; y++) {
+					if(ids[x] == ids[y]) {
 						FridayUtil.throwErr("Matching cards at indices "+x+" "+y);
 					}
 					
@@ -65,41 +82,70 @@ public final class ListCards {
 		}
 	}
 	
+	private static byte[] toIds(Card[] cards) {
+		byte[] result = new byte[cards.length];
+		for(int x = 0; x < cards.length; x++) {
+			result[x] = (byte)cards[x].getPhysicalCardId();
+		}
+		return result;
+	}
+	
 	public int size() {
-		return cards.length-index;
+		return ids.length-index;
 	}
 	
 	public Card get(int x) {
 		// no point in bound checking: JVM will do it for us
-		return cards[x+index];
+		return CardTable.get(ids[x+index]);
+	}
+	
+	/** The physical card id of the card at 'x', equivalent to get(x).getPhysicalCardId() */
+	public int getPhysicalCardId(int x) {
+		return ids[x+index];
 	}
 	
 	public ListCards mutateRemoveFromFront(int cardsToRemove) {
 		int newIndex = index+cardsToRemove;
-		if(newIndex > this.cards.length) {
+		if(newIndex > this.ids.length) {
 			throw new ArrayIndexOutOfBoundsException();
 		}
-		return new ListCards(cards, newIndex);
+		
+		long newHash = zobristHash;
+		for(int x = index; x < newIndex; x++) {
+			newHash ^= ZobristHash.cardAtPosition(ids[x], ids.length-1-x);
+		}
+		
+		return new ListCards(ids, newIndex, newHash);
 	}
 	
 	public ListCards mutateAddToBottom(Card c) {
-		List<Card> newList = asList();
-		newList.add(c);
-		return new ListCards(newList.toArray(new Card[newList.size()]), 0);
+		byte[] newIds = new byte[size()+1];
+		System.arraycopy(ids, index, newIds, 0, size());
+		newIds[newIds.length-1] = (byte)c.getPhysicalCardId();
+		return new ListCards(newIds, 0);
 	}
 	
 	public ListCards fullClone() {
-		Card[] newArray = new Card[cards.length];
-		System.arraycopy(cards, 0, newArray, 0, cards.length);
-		
-		return new ListCards(newArray, index);
+		return new ListCards(Arrays.copyOf(ids, ids.length), index, zobristHash);
 		
 	}
 	
+	public long getZobristHash() {
+		return zobristHash;
+	}
+	
+	private static long calculateZobristHash(byte[] ids, int index) {
+		long result = 0;
+		for(int x = index; x < ids.length; x++) {
+			result ^= ZobristHash.cardAtPosition(ids[x], ids.length-1-x);
+		}
+		return result;
+	}
+	
 	public List<Card> asList() {
 		List<Card> result = new ArrayList<>();
-		for(int x = index; x < cards.length; x++) {
-			result.add(cards[x]);
+		for(int x = index; x < ids.length; x++) {
+			result.add(CardTable.get(ids[x]));
 		}
 		
 		return result;
@@ -118,11 +164,10 @@ public final class ListCards {
 	}
 	
 	public int[] asIntArray() {
-		List<Card> list = asList();
-		int[] result = new int[list.size()];
+		int[] result = new int[size()];
 		
-		for(int x = 0; x < list.size(); x++) {
-			result[x] = list.get(x).getPhysicalCardId();
+		for(int x = 0; x < result.length; x++) {
+			result[x] = ids[x+index];
 		}
 		
 		return result;
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A relaxed concurrent max priority queue (a 'MultiQueue'): a set of independent BucketPriorityQueues, each with
+ * its own lock. An offer adds to a random queue, and a poll looks at the highest score of two random queues, and
+ * polls from the better of the two. Threads thus rarely contend for the same lock, at the cost of only
+ * approximately polling in score order: a poll returns one of the highest scoring entries, rather than
+ * the highest scoring entry.
+ *
+ * The random choices use ThreadLocalRandom, so that they do not advance the game's random number stream.
+ *
+ * This class is thread safe.
+ **/
+public final class MultiQueue {
+
+	/** Returned by poll() when the queue is empty */
+	public static final int EMPTY = -1;
+
+	private static final int EMPTY_SCORE = Integer.MIN_VALUE;
+
+	private final BucketPriorityQueue[] queues;
+
+	private final ReentrantLock[] locks;
+
+	/** The highest score of each queue (EMPTY_SCORE if empty), readable without acquiring the queue's lock */
+	private final AtomicIntegerArray topScores;
+
+	private final AtomicLong size = new AtomicLong(0);
+
+	public MultiQueue(int numQueues) {
+		queues = new BucketPriorityQueue[numQueues];
+		locks = new ReentrantLock[numQueues];
+		topScores = new AtomicIntegerArray(numQueues);
+
+		for(int x = 0; x < numQueues; x++) {
+			queues[x] = new BucketPriorityQueue();
+			locks[x] = new ReentrantLock();
+			topScores.set(x, EMPTY_SCORE);
+		}
+	}
+
+	public void offer(int entry, int score) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		while(true) {
+			int x = random.nextInt(queues.length);
+
+			ReentrantLock lock = locks[x];
+			if(!lock.tryLock()) { continue; }
+
+			try {
+				BucketPriorityQueue queue = queues[x];
+				queue.offer(entry, score);
+				topScores.set(x, queue.peekScore());
+				size.incrementAndGet();
+				return;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/** Remove and return one of the highest scoring entries, or EMPTY if the queue is (or appears to be) empty */
+	public int poll() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		while(size.get() > 0) {
+
+			int x = random.nextInt(queues.length);
+			int y = random.nextInt(queues.length);
+
+			int best = topScores.get(x) >= topScores.get(y) ? x : y;
+			if(topScores.get(best) == EMPTY_SCORE) { continue; }
+
+			ReentrantLock lock = locks[best];
+			if(!lock.tryLock()) { continue; }
+
+			try {
+				BucketPriorityQueue queue = queues[best];
+				if(queue.size() == 0) { continue; }
+
+				int result = queue.poll();
+				topScores.set(best, queue.size() > 0 ? queue.peekScore() : EMPTY_SCORE);
+				size.decrementAndGet();
+				return result;
+
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		return EMPTY;
+	}
+
+	/** The number of entries in the queue; this may already be out of date when it is returned. */
+	public long size() {
+		return size.get();
+	}
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.fridai.util.FridayUtil.PackedStateStorage;
+
+/**
+ * An append-only store of byte encoded game states (see PackedGameState), held in large fixed size chunks rather 
+ * than as one object graph per game state. Each entry is addressed by an int handle (the chunk index and the offset
+ * of the entry in that chunk), and is stored as a length byte followed by the encoded bytes; an entry never spans 
+ * two chunks.
+ * 
+ * The chunks are ByteBuffers, which are either on the Java heap, direct (off-heap) buffers, or mapped from a 
+ * scratch file (see PackedStateStorage): in the latter two cases, the garbage collector only sees one small 
+ * ByteBuffer object per chunk, regardless of the number of game states, and the operating system may page out
+ * the chunks of a mapped file that are not in use.
+ *
+ * Entries are never removed: the arena lives for a single search, after which it is close()d (which deletes the
+ * scratch file, so the owner must close it even if the search fails).
+ *
+ * This class is not thread safe.
+ **/
+public final class PackedStateArena {
+
+	/** Returned in place of a handle when there is no entry */
+	public static final int NONE = -1;
+
+	/** The maximum length of an entry */
+	public static final int MAX_ENTRY_LENGTH = 255;
+
+	private static final int CHUNK_BITS = 20;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+
+	/** Handles are non-negative ints, which limits the number of chunks */
+	private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+
+	private final PackedStateStorage storage;
+	
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+
+	/** The index of the chunk that entries are currently appended to (-1 if there are no chunks) */
+	private int currChunk = -1;
+
+	/** The position in the current chunk of the next entry */
+	private int currPos = CHUNK_SIZE;
+
+	private long bytesUsed = 0;
+	
+	/** The scratch file of PackedStateStorage.MAPPED, otherwise null */
+	private File file = null;
+	
+	private RandomAccessFile fileAccess = null;
+
+	/** An arena on the Java heap */
+	public PackedStateArena() {
+		this(PackedStateStorage.HEAP, null);
+	}
+	
+	/** An arena with the given storage; 'directory' is the directory of the scratch file of PackedStateStorage.MAPPED 
+	 * (null for the default temporary directory). */
+	public PackedStateArena(PackedStateStorage storage, File directory) {
+		this.storage = storage;
+		
+		if(storage == PackedStateStorage.MAPPED) {
+			try {
+				file = File.createTempFile("fridai-states", ".bin", directory);
+				fileAccess = new RandomAccessFile(file, "rw");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/** Append the first 'length' bytes of 'src' as a new entry, and return the handle of the entry. */
+	public int add(byte[] src, int length) {
+		if(length > MAX_ENTRY_LENGTH) { FridayUtil.throwErr("Entry is too long: "+length); }
+
+		if(currPos + length + 1 > CHUNK_SIZE) {
+			nextChunk();
+		}
+
+		ByteBuffer chunk = chunks[currChunk];
+		int handle = (currChunk << CHUNK_BITS) | currPos;
+
+		chunk.put(currPos, (byte)length);
+		chunk.position(currPos+1);
+		chunk.put(src, 0, length);
+
+		currPos += length+1;
+		bytesUsed += length+1;
+
+		return handle;
+	}
+
+	/** Whether the entry of 'handle' is equal to the first 'length' bytes of 'src' */
+	public boolean equals(int handle, byte[] src, int length) {
+		ByteBuffer chunk = chunks[handle >>> CHUNK_BITS];
+		int pos = handle & CHUNK_MASK;
+
+		if((chunk.get(pos) & 0xFF) != length) { return false; }
+
+		pos++;
+		for(int x = 0; x < length; x++) {
+			if(chunk.get(pos+x) != src[x]) { return false; }
+		}
+
+		return true;
+	}
+
+	/** Copy the entry of 'handle' to the start of 'dest', and return its length */
+	public int read(int handle, byte[] dest) {
+		ByteBuffer chunk = chunks[handle >>> CHUNK_BITS];
+		int pos = handle & CHUNK_MASK;
+		
+		int length = chunk.get(pos) & 0xFF;
+		chunk.position(pos+1);
+		chunk.get(dest, 0, length);
+		
+		return length;
+	}
+
+	/** The number of bytes used by all of the entries of the arena */
+	public long getBytesUsed() {
+		return bytesUsed;
+	}
+	
+	public PackedStateStorage getStorage() {
+		return storage;
+	}
+
+	/** Release the chunks, and delete the scratch file (if any). The arena may not be used afterwards. */
+	public void close() {
+		chunks = new ByteBuffer[0];
+		currChunk = -1;
+		
+		if(fileAccess != null) {
+			try {
+				fileAccess.close();
+			} catch (IOException e) {
+				// Ignore: the file is deleted below
+			}
+			fileAccess = null;
+			
+			// On some platforms a file cannot be deleted until its mappings have been garbage collected: only then
+			// is its deletion left until the JVM exits
+			if(!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	private void nextChunk() {
+		currChunk++;
+		currPos = 0;
+
+		if(currChunk >= MAX_CHUNKS) { FridayUtil.throwErr("Arena is full"); }
+
+		ByteBuffer[] newChunks = new ByteBuffer[currChunk+1];
+		System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+		newChunks[currChunk] = allocateChunk(currChunk);
+		chunks = newChunks;
+	}
+	
+	private ByteBuffer allocateChunk(int chunk) {
+		switch(storage) {
+		case DIRECT:
+			return ByteBuffer.allocateDirect(CHUNK_SIZE);
+		case MAPPED:
+			try {
+				return fileAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, (long)chunk * CHUNK_SIZE, CHUNK_SIZE);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		default:
+			return ByteBuffer.allocate(CHUNK_SIZE);
+		}
+	}
+
+}
@@ -0,0 +1,411 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.Arrays;
+
+import com.fridai.GameStateContainer;
+import com.fridai.actions.Action;
+
+/**
+ * The search tree of Main.evaluateBestAction(...), stored as a struct-of-arrays arena: each node is an int index, and
+ * the score, depth, parent, first child, next sibling and transposition of a node are stored in primitive int arrays
+ * (rather than in a TreeEntry object with an ArrayList of children, plus a QueueEntry object in the frontier).
+ *
+ * The arrays grow in fixed size chunks (so growing never copies existing nodes), and are reused between searches:
+ * each thread has a single instance, see getThreadInstance().
+ *
+ * Nodes are only ever added as children of existing nodes, so a child always has a higher index than its
+ * parent; this allows the final scores to be calculated with a single reverse scan of the arena (see
+ * applyFinalScores()), rather than with a child-to-parent map.
+ *
+ * This class is not thread safe.
+ **/
+public final class SearchTree {
+
+	/** Index used for 'no node' (no parent, no child, no transposition, etc) */
+	public static final int NONE = -1;
+
+	private static final int CHUNK_BITS = 16;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+
+	private static final ThreadLocal<SearchTree> THREAD_INSTANCE = ThreadLocal.withInitial( () -> new SearchTree());
+
+	private int[][] scores = new int[0][];
+
+	private int[][] depths = new int[0][];
+
+	private int[][] parents = new int[0][];
+
+	private int[][] firstChildren = new int[0][];
+
+	private int[][] nextSiblings = new int[0][];
+
+	/** If not NONE, the game state of the node is equal to the game state of the given (earlier) node; the node is
+	 * never expanded, and instead takes the final score of that node. */
+	private int[][] transpositions = new int[0][];
+
+	/** The partial-order reduction floor of the node, see PartialOrderReduction; NONE if unused */
+	private int[][] orderFloors = new int[0][];
+
+	/** The Zobrist hash of the game state of the node (0 for win nodes), kept after the game state itself is released */
+	private long[][] fingerprints = new long[0][];
+
+	/** The game state of nodes that are in the search frontier (not yet expanded), otherwise null */
+	private GameStateContainer[][] states = new GameStateContainer[0][];
+
+	/** If not null, the node has not yet been built (see FridayUtil.LAZY_EXPANSION): its game state is the game state
+	 * of its parent, to which this action has still to be applied. */
+	private Action[][] pendingActions = new Action[0][];
+
+	/** The PackedStateArena handle of the game state of nodes that are in the search frontier, when the search holds
+	 * packed game states (see FridayUtil.PACKED_SEARCH_STATES); otherwise NONE */
+	private int[][] packedStates = new int[0][];
+
+	private int size = 0;
+
+	/** Incremented whenever existing node indices are invalidated (by clear() or retainSubtrees(...)) */
+	private long generation = 0;
+
+	private SearchTree() {
+	}
+
+	/** Return the search tree of the calling thread; callers should clear() it before use. */
+	public static SearchTree getThreadInstance() {
+		return THREAD_INSTANCE.get();
+	}
+
+	/** Add a node with the given score, as a child of 'parent' (or as a root node, if parent is NONE), and 
+	 * return its index. */
+	public int addNode(int parent, int score) {
+		int node = size;
+
+		int chunk = node >>> CHUNK_BITS;
+		if(chunk == scores.length) {
+			grow();
+		}
+
+		int offset = node & CHUNK_MASK;
+		scores[chunk][offset] = score;
+		parents[chunk][offset] = parent;
+		firstChildren[chunk][offset] = NONE;
+		nextSiblings[chunk][offset] = NONE;
+		transpositions[chunk][offset] = NONE;
+		orderFloors[chunk][offset] = NONE;
+		fingerprints[chunk][offset] = 0;
+		packedStates[chunk][offset] = NONE;
+
+		if(parent == NONE) {
+			depths[chunk][offset] = 0;
+		} else {
+			depths[chunk][offset] = getDepth(parent)+1;
+
+			// Push onto the front of the parent's child list: the order of children does not matter to the search
+			nextSiblings[chunk][offset] = getFirstChild(parent);
+			firstChildren[parent >>> CHUNK_BITS][parent & CHUNK_MASK] = node;
+		}
+
+		size++;
+
+		return node;
+	}
+
+	public int getScore(int node) {
+		return scores[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setScore(int node, int score) {
+		scores[node >>> CHUNK_BITS][node & CHUNK_MASK] = score;
+	}
+
+	public int getDepth(int node) {
+		return depths[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getParent(int node) {
+		return parents[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getFirstChild(int node) {
+		return firstChildren[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getNextSibling(int node) {
+		return nextSiblings[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getTransposition(int node) {
+		return transpositions[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setTransposition(int node, int transposition) {
+		transpositions[node >>> CHUNK_BITS][node & CHUNK_MASK] = transposition;
+	}
+
+	public int getOrderFloor(int node) {
+		return orderFloors[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setOrderFloor(int node, int orderFloor) {
+		orderFloors[node >>> CHUNK_BITS][node & CHUNK_MASK] = orderFloor;
+	}
+
+	public long getFingerprint(int node) {
+		return fingerprints[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setFingerprint(int node, long fingerprint) {
+		fingerprints[node >>> CHUNK_BITS][node & CHUNK_MASK] = fingerprint;
+	}
+
+	public GameStateContainer getState(int node) {
+		return states[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setState(int node, GameStateContainer gsc) {
+		states[node >>> CHUNK_BITS][node & CHUNK_MASK] = gsc;
+	}
+
+	public Action getPendingAction(int node) {
+		return pendingActions[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setPendingAction(int node, Action action) {
+		pendingActions[node >>> CHUNK_BITS][node & CHUNK_MASK] = action;
+	}
+
+	public int getPackedState(int node) {
+		return packedStates[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public void setPackedState(int node, int handle) {
+		packedStates[node >>> CHUNK_BITS][node & CHUNK_MASK] = handle;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	/** Remove all nodes (but keep the allocated chunks, for use by the next search) */
+	public void clear() {
+		for(int x = 0; x < size; x += CHUNK_SIZE) {
+			Arrays.fill(states[x >>> CHUNK_BITS], null);
+			Arrays.fill(pendingActions[x >>> CHUNK_BITS], null);
+		}
+		size = 0;
+		generation++;
+	}
+
+	/**
+	 * The score of a node is the best score of a child, if a child exists, otherwise it is the score the node was
+	 * created with (eg from life points). The score of a transposition node is the score of the node it duplicates.
+	 */
+	public void applyFinalScores() {
+
+		int transpositionCount = 0;
+
+		// Reset the score of all non-leaf nodes (and transposition nodes) to the lowest value.
+		for(int node = 0; node < size; node++) {
+			if(getFirstChild(node) != NONE) {
+				setScore(node, Integer.MIN_VALUE);
+			} else if(getTransposition(node) != NONE) {
+				setScore(node, Integer.MIN_VALUE);
+				transpositionCount++;
+			}
+		}
+
+		// Children have higher indices than their parents, so by the time a node is reached by the reverse
+		// scan, the scores of all of its descendants have been propagated to it.
+		for(int node = size-1; node >= 0; node--) {
+			int parent = getParent(node);
+			if(parent != NONE && getScore(node) > getScore(parent)) {
+				setScore(parent, getScore(node));
+			}
+		}
+
+		if(transpositionCount == 0) { return; }
+
+		int[] transpositionNodes = new int[transpositionCount];
+		transpositionCount = 0;
+		for(int node = 0; node < size; node++) {
+			if(getTransposition(node) != NONE) {
+				transpositionNodes[transpositionCount++] = node;
+			}
+		}
+
+		// A transposition node may (transitively) duplicate an ancestor, or another transposition node, so
+		// repeat until no scores change. Scores only ever increase, so this is guaranteed to terminate.
+		boolean updated;
+		do {
+			updated = false;
+
+			for(int node : transpositionNodes) {
+				int score = getScore(getTransposition(node));
+				if(score <= getScore(node)) { continue; }
+
+				setScore(node, score);
+				updated = true;
+
+				int parent = getParent(node);
+				while(parent != NONE && score > getScore(parent)) {
+					setScore(parent, score);
+					parent = getParent(parent);
+				}
+			}
+
+		} while(updated);
+
+	}
+
+	/** Return the depth of the deepest node in the tree */
+	public int getMaxDepth() {
+		int result = 0;
+		for(int node = 0; node < size; node++) {
+			result = Math.max(result, getDepth(node));
+		}
+		return result;
+	}
+
+	/**
+	 * Remove all nodes except those in the subtrees of the given nodes (including the subtrees of any nodes that
+	 * those subtrees contain transpositions of). The given nodes become root nodes (with depth 0), unless they are
+	 * contained in the subtree of another given node.
+	 *
+	 * Nodes are compacted in place, in index order; returns an array that maps each previous node index to its new
+	 * index, or to NONE if the node was removed.
+	 */
+	public int[] retainSubtrees(int[] roots) {
+
+		final int oldSize = size;
+
+		int[] remap = new int[oldSize];
+		Arrays.fill(remap, NONE);
+
+		// Mark the retained nodes (with a placeholder value)
+		int[] stack = new int[64];
+		int stackSize = 0;
+		for(int root : roots) {
+			if(root == NONE) { continue; }
+			if(stackSize == stack.length) { stack = Arrays.copyOf(stack, stackSize*2); }
+			stack[stackSize++] = root;
+		}
+
+		while(stackSize > 0) {
+			int node = stack[--stackSize];
+			if(remap[node] != NONE) { continue; }
+			remap[node] = 0;
+
+			int transposition = getTransposition(node);
+			if(transposition != NONE && remap[transposition] == NONE) {
+				if(stackSize == stack.length) { stack = Arrays.copyOf(stack, stackSize*2); }
+				stack[stackSize++] = transposition;
+			}
+
+			for(int child = getFirstChild(node); child != NONE; child = getNextSibling(child)) {
+				if(stackSize == stack.length) { stack = Arrays.copyOf(stack, stackSize*2); }
+				stack[stackSize++] = child;
+			}
+		}
+
+		int newSize = 0;
+		for(int node = 0; node < oldSize; node++) {
+			if(remap[node] != NONE) {
+				remap[node] = newSize++;
+			}
+		}
+
+		// Move each retained node down to its new index; since new indices are never greater than old indices,
+		// and nodes are processed in index order, a node is never overwritten before it has been moved.
+		for(int node = 0; node < oldSize; node++) {
+			int newNode = remap[node];
+			if(newNode == NONE) { continue; }
+
+			int parent = getParent(node);
+			int newParent = parent != NONE ? remap[parent] : NONE;
+
+			int firstChild = getFirstChild(node);
+			int transposition = getTransposition(node);
+			int orderFloor = getOrderFloor(node);
+			long fingerprint = getFingerprint(node);
+
+			// If the parent was not retained, then neither were the siblings (as all children of a retained node are retained)
+			int nextSibling = newParent != NONE ? getNextSibling(node) : NONE;
+
+			int chunk = newNode >>> CHUNK_BITS;
+			int offset = newNode & CHUNK_MASK;
+
+			scores[chunk][offset] = getScore(node);
+			states[chunk][offset] = getState(node);
+			pendingActions[chunk][offset] = getPendingAction(node);
+			parents[chunk][offset] = newParent;
+			depths[chunk][offset] = newParent != NONE ? getDepth(newParent)+1 : 0;
+			firstChildren[chunk][offset] = firstChild != NONE ? remap[firstChild] : NONE;
+			nextSiblings[chunk][offset] = nextSibling != NONE ? remap[nextSibling] : NONE;
+			transpositions[chunk][offset] = transposition != NONE ? remap[transposition] : NONE;
+			orderFloors[chunk][offset] = orderFloor;
+			fingerprints[chunk][offset] = fingerprint;
+			packedStates[chunk][offset] = NONE;
+		}
+
+		for(int node = newSize; node < oldSize; node++) {
+			states[node >>> CHUNK_BITS][node & CHUNK_MASK] = null;
+			pendingActions[node >>> CHUNK_BITS][node & CHUNK_MASK] = null;
+		}
+
+		size = newSize;
+		generation++;
+
+		return remap;
+	}
+
+	private void grow() {
+		int chunks = scores.length+1;
+
+		scores = Arrays.copyOf(scores, chunks);
+		depths = Arrays.copyOf(depths, chunks);
+		parents = Arrays.copyOf(parents, chunks);
+		firstChildren = Arrays.copyOf(firstChildren, chunks);
+		nextSiblings = Arrays.copyOf(nextSiblings, chunks);
+		transpositions = Arrays.copyOf(transpositions, chunks);
+		orderFloors = Arrays.copyOf(orderFloors, chunks);
+		fingerprints = Arrays.copyOf(fingerprints, chunks);
+		states = Arrays.copyOf(states, chunks);
+		pendingActions = Arrays.copyOf(pendingActions, chunks);
+		packedStates = Arrays.copyOf(packedStates, chunks);
+
+		int chunk = chunks-1;
+		scores[chunk] = new int[CHUNK_SIZE];
+		depths[chunk] = new int[CHUNK_SIZE];
+		parents[chunk] = new int[CHUNK_SIZE];
+		firstChildren[chunk] = new int[CHUNK_SIZE];
+		nextSiblings[chunk] = new int[CHUNK_SIZE];
+		transpositions[chunk] = new int[CHUNK_SIZE];
+		orderFloors[chunk] = new int[CHUNK_SIZE];
+		fingerprints[chunk] = new long[CHUNK_SIZE];
+		states[chunk] = new GameStateContainer[CHUNK_SIZE];
+		pendingActions[chunk] = new Action[CHUNK_SIZE];
+		packedStates[chunk] = new int[CHUNK_SIZE];
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fridai.GameStateContainer;
+
+/**
+ * A bounded, lock-free, single producer/single consumer queue of search messages: a game state, the index of the
+ * root action that it descends from, its score, and its order floor (see PartialOrderReduction). Used to send game states between the threads of
+ * HashDistributedSearch.
+ *
+ * The producer writes a message into the slot at 'tail' and then publishes it by advancing 'tail'; the consumer
+ * reads messages up to the published 'tail' and then frees their slots by advancing 'head'. Exactly one thread
+ * may call offer(...), and exactly one (other) thread may call drainTo(...).
+ **/
+public final class SpscMailbox {
+
+	private final int[] roots;
+
+	private final int[] scores;
+
+	private final int[] orderFloors;
+
+	private final GameStateContainer[] states;
+
+	private final int mask;
+
+	/** Next slot to be read by the consumer; only written by the consumer */
+	private final AtomicLong head = new AtomicLong(0);
+
+	/** Next slot to be written by the producer; only written by the producer */
+	private final AtomicLong tail = new AtomicLong(0);
+
+	/** The producer's cached copy of 'head', to avoid reading the consumer's counter on every offer */
+	private long cachedHead = 0;
+
+	/** Capacity must be a power of 2 */
+	public SpscMailbox(int capacity) {
+		if(Integer.bitCount(capacity) != 1) { FridayUtil.throwErr("Capacity must be a power of 2: "+capacity); }
+
+		roots = new int[capacity];
+		scores = new int[capacity];
+		orderFloors = new int[capacity];
+		states = new GameStateContainer[capacity];
+		mask = capacity-1;
+	}
+
+	/** Producer only: add a message, or return false if the mailbox is full. */
+	public boolean offer(int root, int score, int orderFloor, GameStateContainer gsc) {
+		long currTail = tail.get();
+
+		if(currTail - cachedHead == states.length) {
+			cachedHead = head.get();
+			if(currTail - cachedHead == states.length) {
+				return false;
+			}
+		}
+
+		int slot = (int)currTail & mask;
+		roots[slot] = root;
+		scores[slot] = score;
+		orderFloors[slot] = orderFloor;
+		states[slot] = gsc;
+
+		// Publish the message (the slot writes above happen-before any read of the new tail value)
+		tail.lazySet(currTail+1);
+
+		return true;
+	}
+
+	/** Consumer only: pass every published message to the handler, and return the number of messages. */
+	public int drainTo(MessageHandler handler) {
+		long currHead = head.get();
+		long currTail = tail.get();
+
+		if(currHead == currTail) { return 0; }
+
+		for(long x = currHead; x < currTail; x++) {
+			int slot = (int)x & mask;
+			GameStateContainer gsc = states[slot];
+			states[slot] = null;
+			handler.handle(roots[slot], scores[slot], orderFloors[slot], gsc);
+		}
+
+		head.lazySet(currTail);
+
+		return (int)(currTail - currHead);
+	}
+
+	/** Receives the messages of a mailbox, see drainTo(...) */
+	public interface MessageHandler {
+		void handle(int root, int score, int orderFloor, GameStateContainer gsc);
+	}
+}
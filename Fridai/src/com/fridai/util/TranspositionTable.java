@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import java.util.Arrays;
+
+import com.fridai.GameStateContainer;
+import com.fridai.PackedGameState;
+
+/** 
+ * A map of game states to search tree nodes (see SearchTree), used by the search to detect when the same game state is 
+ * reached via multiple action sequences (a transposition), so that the state is only expanded once.
+ * 
+ * This is an open addressing (linear probing) hash table keyed on the 64-bit Zobrist hash of the game state
+ * (see ZobristHash), which avoids the boxing and entry allocation of a HashMap<Long, ...>. Since different game 
+ * states may share a hash, a hash match is always confirmed with a lossless comparison of the two game states
+ * (FridayUtil.isSameGameState(...)); hash collisions are thus resolved by probing, and never cause two different
+ * game states to be treated as the same state.
+ * 
+ * If the table is created with a PackedGameState, then it holds the packed encoding of each game state (see
+ * FridayUtil.PACKED_SEARCH_STATES) rather than the game state object, and a hash match is instead confirmed by 
+ * comparing encodings.
+ * 
+ * This class is not thread safe.
+ **/
+public final class TranspositionTable {
+
+	/** Returned when the table does not contain a game state */
+	public static final int NOT_FOUND = -1;
+	
+	private long[] keys;
+	
+	/** The game state of each slot (null if the slot is empty); null if the table holds packed game states */
+	private GameStateContainer[] states;
+	
+	/** The PackedStateArena handle of the game state of each slot (PackedStateArena.NONE if the slot is empty); 
+	 * null if the table holds game state objects */
+	private int[] handles;
+	
+	private int[] values;
+	
+	/** Non-null if the table holds packed game states */
+	private final PackedGameState packed;
+	
+	private int mask;
+	
+	private int size = 0;
+	
+	public TranspositionTable(int initialCapacity) {
+		this(initialCapacity, null);
+	}
+	
+	/** Create a table that holds the packed encodings of its game states, in the arena of 'packed' */
+	public TranspositionTable(int initialCapacity, PackedGameState packed) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+		
+		this.packed = packed;
+		
+		allocate(capacity);
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		if(packed != null) {
+			handles = new int[capacity];
+			Arrays.fill(handles, PackedStateArena.NONE);
+		} else {
+			states = new GameStateContainer[capacity];
+		}
+		values = new int[capacity];
+		mask = capacity-1;
+	}
+	
+	/** If a game state equal to 'gsc' is already in the table, return the value of that game state. Otherwise,
+	 * add the game state and value to the table, and return NOT_FOUND. */
+	public int putIfAbsent(GameStateContainer gsc, int value) {
+		
+		final long hash = gsc.getZobristHash();
+		
+		int slot = (int)hash & mask;
+		
+		while(isOccupied(slot)) {
+			if(keys[slot] == hash && isSameGameState(slot, gsc)) {
+				return values[slot];
+			}
+			slot = (slot+1) & mask;
+		}
+		
+		keys[slot] = hash;
+		if(packed != null) {
+			handles[slot] = packed.add(gsc);
+		} else {
+			states[slot] = gsc;
+		}
+		values[slot] = value;
+		size++;
+		
+		// Keep the load factor at or below 0.5 
+		if(size*2 > keys.length) {
+			grow();
+		}
+		
+		return NOT_FOUND;
+	}
+	
+	/** Return the value of the game state in the table that is equal to 'gsc', or NOT_FOUND if there is none. */
+	public int get(GameStateContainer gsc) {
+		
+		final long hash = gsc.getZobristHash();
+		
+		int slot = (int)hash & mask;
+		
+		while(isOccupied(slot)) {
+			if(keys[slot] == hash && isSameGameState(slot, gsc)) {
+				return values[slot];
+			}
+			slot = (slot+1) & mask;
+		}
+		
+		return NOT_FOUND;
+	}
+	
+	/** Remove the game state in the table that is equal to 'gsc', and return its value (or NOT_FOUND if there is 
+	 * none). */
+	public int remove(GameStateContainer gsc) {
+		
+		final long hash = gsc.getZobristHash();
+		
+		int slot = (int)hash & mask;
+		
+		while(isOccupied(slot)) {
+			if(keys[slot] == hash && isSameGameState(slot, gsc)) {
+				int value = values[slot];
+				
+				// Move back the entries that follow in the probe sequence, so that no entry is separated from 
+				// its home slot by the now empty slot
+				int empty = slot;
+				int next = (slot+1) & mask;
+				while(isOccupied(next)) {
+					int home = (int)keys[next] & mask;
+					if(((next - home) & mask) >= ((next - empty) & mask)) {
+						keys[empty] = keys[next];
+						if(packed != null) {
+							handles[empty] = handles[next];
+						} else {
+							states[empty] = states[next];
+						}
+						values[empty] = values[next];
+						empty = next;
+					}
+					next = (next+1) & mask;
+				}
+				
+				if(packed != null) {
+					handles[empty] = PackedStateArena.NONE;
+				} else {
+					states[empty] = null;
+				}
+				size--;
+				
+				return value;
+			}
+			slot = (slot+1) & mask;
+		}
+		
+		return NOT_FOUND;
+	}
+	
+	/** Pass each entry of the table to 'consumer'; if the table holds packed game states, each game state is 
+	 * decoded. */
+	public void forEach(EntryConsumer consumer) {
+		for(int x = 0; x < keys.length; x++) {
+			if(isOccupied(x)) {
+				consumer.accept(packed != null ? packed.get(handles[x]) : states[x], values[x]);
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	private boolean isOccupied(int slot) {
+		return packed != null ? handles[slot] != PackedStateArena.NONE : states[slot] != null;
+	}
+	
+	private boolean isSameGameState(int slot, GameStateContainer gsc) {
+		return packed != null ? packed.matches(handles[slot], gsc) : FridayUtil.isSameGameState(states[slot], gsc);
+	}
+	
+	private void grow() {
+		long[] oldKeys = keys;
+		GameStateContainer[] oldStates = states;
+		int[] oldHandles = handles;
+		int[] oldValues = values;
+		
+		allocate(oldKeys.length*2);
+		
+		for(int x = 0; x < oldKeys.length; x++) {
+			if(packed != null ? oldHandles[x] == PackedStateArena.NONE : oldStates[x] == null) { continue; }
+			
+			int slot = (int)oldKeys[x] & mask;
+			while(isOccupied(slot)) {
+				slot = (slot+1) & mask;
+			}
+			
+			keys[slot] = oldKeys[x];
+			if(packed != null) {
+				handles[slot] = oldHandles[x];
+			} else {
+				states[slot] = oldStates[x];
+			}
+			values[slot] = oldValues[x];
+		}
+	}
+	
+	/** Receives each (game state, value) entry of the table, see forEach(...) */
+	public interface EntryConsumer {
+		void accept(GameStateContainer gsc, int value);
+	}
+	
+}
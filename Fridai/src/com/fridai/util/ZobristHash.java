@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2019  Jonathan West
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.fridai.util;
+
+import com.fridai.Card;
+
+/**
+ * Fixed tables of random 64-bit keys used to compute Zobrist hashes of game states.
+ *
+ * Each card collection (ListCards, ImmutableGrowableListCards, CardSet) keeps a running XOR of the keys
+ * of the (card, position) pairs it contains, which it updates as part of each mutate*(...) call. GameState
+ * and PirateGameState then combine those running hashes into a single 64-bit state hash, by multiplying each
+ * one by the key of the zone (fight stack, discard pile, etc) it belongs to.
+ *
+ * The keys are generated from a fixed seed (and NOT from FridayUtil.UNIVERAL_RANDOM), so that hashing a
+ * game state never advances the game's random number stream, and so that hashes are identical between runs.
+ *
+ * A hash match is not proof of equality: callers must confirm matches with a lossless comparison
+ * (see FridayUtil.isSameGameState(...)).
+ **/
+public final class ZobristHash {
+
+	/** Physical card ids are < 64, see CardSet */
+	private static final int MAX_CARDS = 64;
+
+	/** Positions beyond this wrap around; this only increases the chance of a (harmless) hash collision. */
+	private static final int MAX_POSITIONS = 128;
+
+	// Zones: each card collection of a game state is hashed into a separate zone
+	public static final int ZONE_YOUR_FIGHTING_CARDS = 0;
+	public static final int ZONE_HAZARD_CARDS = 1;
+	public static final int ZONE_DISCARD_HAZARDS = 2;
+	public static final int ZONE_DISCARD_FIGHT_CARDS = 3;
+	public static final int ZONE_LHS_FIGHT_CARDS = 4;
+	public static final int ZONE_RHS_FIGHT_CARDS = 5;
+	public static final int ZONE_USED = 6;
+	public static final int ZONE_DOUBLED = 7;
+	public static final int ZONE_ACTIVE_CARD = 8;
+	public static final int ZONE_ABILITY_OBJECT = 9;
+	public static final int ZONE_SLOW_GAME_STATE = 10;
+	public static final int ZONE_AGING_CARDS = 11;
+	public static final int ZONE_ACTIVE_ROUND_CARDS = 12;
+	public static final int ZONE_STATE = 13;
+	public static final int ZONE_LIFE_POINTS = 14;
+	public static final int ZONE_PHASE = 15;
+	public static final int ZONE_MISC = 16;
+
+	private static final int NUM_ZONES = 17;
+
+	private static final long[] CARD_POSITION_KEYS = new long[MAX_CARDS*MAX_POSITIONS];
+
+	private static final long[] CARD_KEYS = new long[MAX_CARDS];
+
+	private static final long[] ZONE_KEYS = new long[NUM_ZONES];
+
+	static {
+		long seed = 0x2019FD4A7B3C1E55L;
+
+		for(int x = 0; x < CARD_POSITION_KEYS.length; x++) {
+			seed += 0x9E3779B97F4A7C15L;
+			CARD_POSITION_KEYS[x] = mix(seed);
+		}
+
+		for(int x = 0; x < CARD_KEYS.length; x++) {
+			seed += 0x9E3779B97F4A7C15L;
+			CARD_KEYS[x] = mix(seed);
+		}
+
+		for(int x = 0; x < ZONE_KEYS.length; x++) {
+			seed += 0x9E3779B97F4A7C15L;
+			// Zone keys are multipliers, so they must be odd (and thus invertible)
+			ZONE_KEYS[x] = mix(seed) | 1L;
+		}
+	}
+
+	private ZobristHash() {
+	}
+
+	/** Key for a card at a given position of an ordered collection (a list/stack) */
+	public static long cardAtPosition(Card c, int position) {
+		return cardAtPosition(c.getPhysicalCardId(), position);
+	}
+
+	/** Key for the card with the given physical card id at a position of an ordered collection */
+	public static long cardAtPosition(int physicalCardId, int position) {
+		return CARD_POSITION_KEYS[ ((physicalCardId & (MAX_CARDS-1)) * MAX_POSITIONS) + (position & (MAX_POSITIONS-1)) ];
+	}
+
+	/** Key for a card in an unordered collection (a set) */
+	public static long card(int physicalCardId) {
+		return CARD_KEYS[physicalCardId & (MAX_CARDS-1)];
+	}
+
+	/** Key for a nullable card that is not part of a collection (for example, the active hazard card) */
+	public static long card(Card c) {
+		if(c == null) { return 0; }
+		return CARD_KEYS[c.getPhysicalCardId() & (MAX_CARDS-1)];
+	}
+
+	/** Key for a scalar value (life points, phase, enum ordinal, etc) */
+	public static long value(long value) {
+		return mix(value + 0x632BE59BD9B4E019L);
+	}
+
+	/** Move the running hash of a collection into the given zone of a game state hash */
+	public static long zone(long hash, int zone) {
+		return hash * ZONE_KEYS[zone];
+	}
+
+	/** SplitMix64 finalizer */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}